@@ -1,347 +1,622 @@
-package voiceactivity.speechtekbot;
-
-/*
- *  Copyright 2014 Zoraida Callejas and Michael McTear
- * 
- *  This file is shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
- *  
- *  If you want to learn more about speech apps development in Android, take a look at our book:
- *  Voice Application Development for Android, Michael McTear and Zoraida Callejas, 
- *  PACKT Publishing 2013 <http://www.packtpub.com/voice-application-development-for-android/book>,
- *  <http://lsi.ugr.es/zoraida/androidspeechbook>
- *  
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
-
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
- *  GNU General Public License for more details.
-
- *  You should have received a copy of the GNU General Public License
- *   along with this program. If not, see <http://www.gnu.org/licenses/>. 
- */
+package voiceactivity.speechtekbot;
+
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ * 
+ *  This file is shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *  
+ *  If you want to learn more about speech apps development in Android, take a look at our book:
+ *  Voice Application Development for Android, Michael McTear and Zoraida Callejas, 
+ *  PACKT Publishing 2013 <http://www.packtpub.com/voice-application-development-for-android/book>,
+ *  <http://lsi.ugr.es/zoraida/androidspeechbook>
+ *  
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>. 
+ */
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import voiceactivity.lib.CommandRecognizer;
+import voiceactivity.lib.LexiconRescorer;
+import voiceactivity.lib.RecognitionLattice;
+import voiceactivity.lib.SentenceChunker;
+import voiceactivity.lib.UtteranceScheduler;
+import voiceactivity.lib.VoiceActivity;
+import voiceactivity.lib.WakeWordListener;
+import voiceactivity.lib.WakeWordSpotter;
+
+import android.content.Context;
+import android.content.pm.ApplicationInfo;
+import android.content.pm.PackageManager;
+import android.graphics.PorterDuff;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Bundle;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+
+import android.text.TextUtils;
+import android.util.Log;
+import android.view.View;
+import android.widget.Button;
+
+
+/**
+ * Chatbot/VPA that uses the technology of Pandorabots to understand the user queries and provide information
+ * 
+ * @author Michael McTear
+ * @author Zoraida Callejas
+ * @version 2.0, 07/20/14
+ *
+ */
+
+public class MainActivity extends VoiceActivity {
+
+    private static final String LOGTAG = "SpeechTEKBot";
+    private static Integer ID_PROMPT_QUERY = 0;	//Id chosen to identify the prompts that involve posing questions to the user
+    private static Integer ID_PROMPT_INFO = 1;	//Id chosen to identify the prompts that involve only informing the user
+    private static Integer ID_PROMPT_ENROLL = 2;	//Id chosen to identify the prompt after which the wake word is recorded
+    
+    /*
+     * Several recognition results are requested and reordered according to the commands that the bot 
+     * understands and the apps installed. If the best one has a confidence below CONFIDENCE_THRESHOLD, 
+     * the user is asked to confirm it before querying Pandorabots.
+     */
+    private static final int N_BEST = 5;
+    private static final float CONFIDENCE_THRESHOLD = 0.4f;
+    private static final String[] COMMANDS = {"battery level", "what is my battery level", "launch", "open", 
+    	"directions to", "how do I get to", "map of", "show me a map of", "where am I", "search for"};
+    private final LexiconRescorer rescorer = new LexiconRescorer();
+    private static final Pattern REMOVE_TAGS = Pattern.compile("<.+?>");	//Compiled once, see removeTags
+    private String pendingConfirmation = null;	//Recognized text that the user is being asked to confirm
+    private static final String[] YES_WORDS = {"yes", "yeah", "yep", "right", "correct"};
+    private static final String[] NO_WORDS = {"no", "nope", "wrong"};
+    private int[] yesTokens, noTokens;			//Ids of the words above in the recognition lattices
+    
+    //Confidence from which the result of the first recognizer (offline or network) is accepted without waiting for the other
+    private static final float RACE_CONFIDENCE_BAR = 0.7f;
+    
+    /*
+     * The replies of Pandorabots are spoken sentence by sentence, so that the first one starts playing while the rest are synthesized.
+     * The time from the reply to the first audio is measured by VoiceActivity, so it can be compared with CHUNK_REPLIES = false 
+     * (the whole reply at once).
+     */
+    private static final boolean CHUNK_REPLIES = true;
+    private final SentenceChunker chunker = new SentenceChunker();
+    
+    /*
+     * Hands-free mode: a long press of the button records the wake word (it can be done several times to add more 
+     * examples). From then on, saying the wake word has the same effect as pressing the button.
+     */
+    private static final long WAKE_WORD_RECORDING = 1500;	//ms
+    private final WakeWordSpotter spotter = new WakeWordSpotter();
+    
+    /*
+     * Battery and launch commands are learnt from the turns in which the cloud recognizer recognized them with a confidence
+     * of at least COMMAND_LEARNING_CONFIDENCE. From then on, they are recognized on the device when the recognizer provides 
+     * the audio, and carried out directly, without waiting for the cloud recognizer nor Pandorabots.
+     */
+    private static final String[] LOCAL_COMMANDS = {"battery level", "what is my battery level"};
+    private static final String[] LOCAL_COMMAND_PREFIXES = {"launch", "open"};
+    private static final float COMMAND_LEARNING_CONFIDENCE = 0.8f;
+    private static final int AUDIO_CAPTURE_SIZE = 16000 * 2 * 10;	//10 seconds of 16 kHz 16-bit audio
+    
+    //Fixed prompts, which are synthesized once and played from a cache afterwards
+    private static final long PROMPT_CACHE_SIZE = 2 * 1024 * 1024;
+    private static final String[] CACHED_PROMPTS = {"OK, please repeat your query", "No speech input", "No recognition result matched",
+    	"Network related error", "Say the wake word after this message", "Sorry, I could not hear the wake word"};
+    //Beginnings of the prompts that may follow the query, synthesized while the user speaks (see OOBProcessor and processAsrLowConfidence)
+    private static final String[] LIKELY_PROMPTS = {"Did you say", "Your battery level is", "Could not find the app"};
+	
+	/**
+	 * Sets up the activity initializing the GUI, the ASR and TTS
+	 */
+	@Override
+	protected void onCreate(Bundle savedInstanceState) 
+	{
+		super.onCreate(savedInstanceState);
+		
+		//Set layout
+		setContentView(R.layout.main);
+		
+		//All the prompts are synthesized in English
+		setTTSLocales(new Locale("EN"));
+		
+		//Initialize the speech recognizer and synthesizer
+		initSpeechInputOutput(getApplicationContext());	
+		
+		//Reorder the recognition results according to what the bot understands
+		setUpRescorer();
+		
+		//Race the offline and network recognizers, so that it is possible to listen without Internet connection
+		setRecognizerRace(true, RACE_CONFIDENCE_BAR);
+		
+		//Let the user interrupt the bot by speaking over it
+		setBargeInEnabled(true);
+		
+		//Recognize the most frequent commands on the device
+		setUpCommandRecognizer();
+		
+		//Play the fixed prompts without synthesizing them every time
+		setPromptCache(PROMPT_CACHE_SIZE);
+		addCachedPrompts(CACHED_PROMPTS);
+		
+		//Synthesize the beginning of the likely answers while the user speaks
+		setPresynthesis(LIKELY_PROMPTS.length);
+		setLikelyPrompts("EN", LIKELY_PROMPTS);
+		
+		//Set up the speech button
+		setSpeakButton();
+	}
+
+	/**
+	 * Initializes the search button and its listener. When the button is pressed, a feedback is shown to the user
+	 * and the recognition starts
+	 */
+	private void setSpeakButton() {
+		
+		// gain reference to speak button
+		Button speak = (Button) findViewById(R.id.speech_btn);
+		speak.setOnClickListener(new View.OnClickListener() {
+				@Override
+				public void onClick(View v) {
+					//If the user is running the app on a virtual device, they get a Toast
+					if("generic".equals(Build.BRAND.toLowerCase(Locale.US))){
+						Log.e(LOGTAG, "ASR attempt on virtual device");						
+					}
+					else {
+						//Show a feedback to the user indicating that the app has started to listen
+						indicateListening();  
+						startListening();
+					}
+				}
+			});
+		
+		speak.setOnLongClickListener(new View.OnLongClickListener() {
+				@Override
+				public boolean onLongClick(View v) {
+					enrollWakeWord();
+					return true;
+				}
+			});
+	}
+	
+	/**
+	 * Asks the user to say the wake word, which is recorded when the prompt finishes (see <code>onTTSDone</code>)
+	 */
+	private void enrollWakeWord() {
+		setWakeWordSpotter(null);	//The microphone is needed for the recording
+		try {
+			speak("Say the wake word after this message", "EN", ID_PROMPT_ENROLL);
+		} catch (Exception e) {
+			Log.e(LOGTAG, "TTS not accessible");
+		}
+	}
+	
+	/**
+	 * Records the wake word in a separate thread and adds it to the spotter, enabling the hands-free mode
+	 */
+	private void recordWakeWord() {
+		new Thread(new Runnable() {
+			public void run() {
+				short[] audio = WakeWordListener.record(WAKE_WORD_RECORDING);
+				final boolean added = audio!=null && spotter.addTemplate(audio, 0, audio.length);
+				runOnUiThread(new Runnable() {
+					public void run() {
+						if(spotter.getTemplateCount()>0)
+							setWakeWordSpotter(spotter);
+						try {
+							if(added)
+								speak("Wake word saved, say it whenever you want to talk to me", "EN", ID_PROMPT_INFO);
+							else
+								speak("Sorry, I could not hear the wake word", "EN", ID_PROMPT_INFO);
+						} catch (Exception e) {
+							Log.e(LOGTAG, "TTS not accessible");
+						}
+					}
+				});
+			}
+		}).start();
+	}
+	
+	/**
+	 * Invoked when the wake word is detected in the hands-free mode. It has the same effect as pressing the button.
+	 */
+	@Override
+	public void processWakeWord() {
+		indicateListening();
+		startListening();
+	}
+	
+	/**
+	 * Sets up the N-best rescoring with the commands understood by the bot and the names of the installed apps.
+	 * The names of the apps are added in a separate thread, as it may take a while to obtain them.
+	 */
+	private void setUpRescorer() {
+		rescorer.addPhrases(Arrays.asList(COMMANDS));
+		setAsrRescorer(rescorer, CONFIDENCE_THRESHOLD);
+		yesTokens = getTokenVocabulary().internPhrase(TextUtils.join(" ", YES_WORDS));
+		noTokens = getTokenVocabulary().internPhrase(TextUtils.join(" ", NO_WORDS));
+		
+		final PackageManager pm = getPackageManager();
+		new Thread(new Runnable() {
+			public void run() {
+				List<String> appNames = new ArrayList<String>();
+				for (ApplicationInfo packageInfo : pm.getInstalledApplications(0))
+					appNames.add(packageInfo.loadLabel(pm).toString());
+				rescorer.addPhrases(appNames);
+			}
+		}).start();
+	}
+	
+	/**
+	 * Sets up the on-device recognition of the battery and launch commands
+	 */
+	private void setUpCommandRecognizer() {
+		CommandRecognizer commands = new CommandRecognizer();
+		for(String command: LOCAL_COMMANDS)
+			commands.addCommand(command);
+		for(String prefix: LOCAL_COMMAND_PREFIXES)
+			commands.addCommandPrefix(prefix);
+		setAudioCapture(AUDIO_CAPTURE_SIZE);
+		setCommandRecognizer(commands, COMMAND_LEARNING_CONFIDENCE);
+	}
+	
+	/**
+	 * Carries out a command recognized on the device with the same OOB processing used for the responses of Pandorabots
+	 */
+	@Override
+	public void processLocalCommand(String command, float confidence) {
+		pendingConfirmation = null;
+		changeButtonAppearanceToDefault();
+		
+		OOBProcessor oob = new OOBProcessor(this, ID_PROMPT_INFO);
+		try {
+			String app = null;
+			for(String prefix: LOCAL_COMMAND_PREFIXES)
+				if(command.startsWith(prefix + " "))
+					app = command.substring(prefix.length() + 1);
+			
+			if(app!=null)
+				oob.processOobContent("<launch>" + app + "</launch>", "Launching " + app);
+			else
+				oob.processOobContent("<battery></battery>", "");
+		} catch (Exception e) {
+			Log.e(LOGTAG, "The command '" + command + "' could not be carried out");
+		}
+	}
+	
+	/**
+	 * Starts listening for any user input.
+	 * When it recognizes something, the <code>processAsrResult</code> method is invoked. 
+	 * If there is any error, the <code>processAsrError</code> method is invoked.
+	 * Without Internet connection, only the offline recognizer is used.
+	 */
+	private void startListening(){
+		
+		if(deviceConnectedToInternet() || getRecognizerRace()!=null){
+			try {
+				
+				/*Start listening, with the following default parameters:
+					* Recognition model = Free form, 
+					* Number of results = N_BEST (they are reordered and we will use the best one to perform the search)
+					*/
+				listen(Locale.ENGLISH, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM, N_BEST); //Start listening
+			} catch (Exception e) {
+				Log.e(LOGTAG, e.getMessage());
+			}	
+		} else {
+				Log.e(LOGTAG, "Device not connected to Internet");	
+		}
+	}
+
+	/**
+	 * Provides feedback to the user to show that the app is listening:
+	 * 		* It changes the color and the message of the speech button
+	 *      * It synthesizes a voice message
+	 */
+	private void indicateListening() {
+		Button button = (Button) findViewById(R.id.speech_btn); //Obtains a reference to the button
+		button.setText(getResources().getString(R.string.speechbtn_listening)); //Changes the button's message to the text obtained from the resources folder
+		button.getBackground().setColorFilter(getResources().getColor(R.color.speechbtn_listening),PorterDuff.Mode.MULTIPLY); //Changes the button's background to the color obtained from the resources folder
+	}
+	
+	/**
+	 * Provides feedback to the user to show that the app is idle:
+	 * 		* It changes the color and the message of the speech button
+	 */	
+	private void changeButtonAppearanceToDefault(){
+		Button button = (Button) findViewById(R.id.speech_btn); //Obtains a reference to the button
+		button.setText(getResources().getString(R.string.speechbtn_default)); //Changes the button's message to the text obtained from the resources folder
+		button.getBackground().setColorFilter(getResources().getColor(R.color.speechbtn_default),PorterDuff.Mode.MULTIPLY);	//Changes the button's background to the color obtained from the resources folder		
+	}
+	
+	/**
+	 * Provides feedback to the user when the ASR encounters an error
+	 */
+	@Override
+	public void processAsrError(int errorCode) {
+		changeButtonAppearanceToDefault();
+		pendingConfirmation = null;
+		
+		String errorMessage;
+		switch (errorCode) 
+        {
+	        case SpeechRecognizer.ERROR_AUDIO: 
+	        	errorMessage = "Audio recording error"; 
+	            break;
+	        case SpeechRecognizer.ERROR_CLIENT: 
+	        	errorMessage = "Client side error"; 
+	            break;
+	        case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS: 
+	        	errorMessage = "Insufficient permissions" ; 
+	            break;
+	        case SpeechRecognizer.ERROR_NETWORK: 
+	        	errorMessage = "Network related error" ;
+	            break;
+	        case SpeechRecognizer.ERROR_NETWORK_TIMEOUT:                
+	            errorMessage = "Network operation timeout"; 
+	            break;
+	        case SpeechRecognizer.ERROR_NO_MATCH: 
+	        	errorMessage = "No recognition result matched" ; 
+	        	break;
+	        case SpeechRecognizer.ERROR_RECOGNIZER_BUSY: 
+	        	errorMessage = "RecognitionServiceBusy" ; 
+	            break;
+	        case SpeechRecognizer.ERROR_SERVER: 
+	        	errorMessage = "Server sends error status"; 
+	            break;
+	        case SpeechRecognizer.ERROR_SPEECH_TIMEOUT: 
+	        	errorMessage = "No speech input" ; 
+	            break;
+	        default:
+	        	errorMessage = "ASR error";
+	        	break;
+        }
+		
+        Log.e(LOGTAG, "Error when attempting to listen: "+ errorMessage);
+		
+		try {
+			speak(errorMessage,"EN", ID_PROMPT_INFO, UtteranceScheduler.PRIORITY_INFO, null);	//A newer error replaces the ones not played yet
+		} catch (Exception e) {
+			Log.e(LOGTAG, "English not available for TTS, default language used instead");
+		}
+
+	}
+
+	@Override
+	public void processAsrReadyForSpeech() { }
+
+	/**
+	 * Processes the results as a lattice (see below)
+	 */
+	@Override
+	public void processAsrResults(ArrayList<String> nBestList, float[] nBestConfidences) {
+		processAsrResults(buildLattice(nBestList, nBestConfidences));
+	}
+
+	/**
+	 * Initiates interaction with Pandorabots with the results of the recognition
+	 */
+	@Override
+	public void processAsrResults(RecognitionLattice lattice) {
+		
+		if(lattice!=null){
+			if(lattice.size()>0){
+				String bestResult = lattice.getText(0); //We will use the best result
+				Log.d(LOGTAG, "Speech input: " + bestResult);
+				changeButtonAppearanceToDefault();
+				
+				//If the user was asked to confirm the previous input, this is the answer
+				if(pendingConfirmation!=null) {
+					String confirmed = pendingConfirmation;
+					pendingConfirmation = null;
+					if(startsWithAny(lattice, yesTokens))
+						bestResult = confirmed;
+					else if(startsWithAny(lattice, noTokens)) {
+						try {
+							speak("OK, please repeat your query", "EN", ID_PROMPT_QUERY);
+						} catch (Exception e) {
+							Log.e(LOGTAG, "English not available for TTS, default language used instead");
+						}
+						return;
+					}
+					//Otherwise the answer is taken as a new query
+				}
+				
+				/**
+				 * EXERCISE 1: comment out the following section for exercises 2 onwards
+				 */
+				
+				
+				try {
+					speak(bestResult,"EN",ID_PROMPT_INFO);
+				} catch (Exception e) {
+					Log.e(LOGTAG, "The message '"+bestResult+"' could not be synthesized");
+				}
+				
+				
+				/**
+				 * EXERCISE 2: uncomment the following section for exercises 2 onwards
+				 */
+				/*		
+				// insert %20 for spaces in query
+				bestResult = bestResult.replaceAll(" ", "%20");
+				new DoRequest(this).execute(bestResult);	//Initiates the query to Pandora bots, the result is processed in the "processBotResults" method
+				*/
+			}
+		}
+	}
+	
+	/**
+	 * Checks whether the best result starts with one of the words indicated
+	 * @param tokens ids of the words in the vocabulary of the lattice
+	 */
+	private boolean startsWithAny(RecognitionLattice lattice, int[] tokens) {
+		if(lattice.getTokenCount(0)==0)
+			return false;
+		for(int token: tokens)
+			if(lattice.getToken(0, 0)==token)
+				return true;
+		return false;
+	}
+	
+	/**
+	 * Asks the user to confirm the best recognition result when its confidence is low, instead of
+	 * querying Pandorabots with a text that is likely to be a misrecognition
+	 */
+	@Override
+	public void processAsrLowConfidence(RecognitionLattice lattice) {
+		if(pendingConfirmation!=null || lattice.getTokenCount(0)==0) {
+			processAsrResults(lattice);	//The answers to the confirmation are not confirmed
+			return;
+		}
+		
+		Log.d(LOGTAG, "Low confidence ("+lattice.getConfidence(0)+") for: " + lattice.getText(0));
+		changeButtonAppearanceToDefault();
+		pendingConfirmation = lattice.getText(0);
+		try {
+			speak("Did you say "+pendingConfirmation+"?", "EN", ID_PROMPT_QUERY);	//The answer is processed in processAsrResults
+		} catch (Exception e) {
+			Log.e(LOGTAG, "English not available for TTS, default language used instead");
+		}
+	}
+	
+	/**
+	 * Processes the response from Pandorabots ALICE2v. This response can be a simple text with simple HTML tags, or a more complex
+	 * text with <oob> tags that must be further processed.
+	 * 
+	 * @param result response from Pandorabots
+	 */
+	public void processBotResults(String result){
+		
+		OOBProcessor oob=new OOBProcessor(this, ID_PROMPT_INFO);
+		Log.d(LOGTAG, "Response, contents of that: "+result);
+
+		// Send responses with <oob> for further processing
+		if(result.contains("<oob>")){
+			try {
+				oob.processOobOutput(result);
+			} catch (Exception e) {
+				Log.d(LOGTAG, e.getMessage());
+			}
+		}
+		// Speak out simple text from Pandorabots after removing any HTML content
+		else{
+		
+				result = removeTags(result);
+				try {
+					speakReply(result,"EN",ID_PROMPT_INFO, CHUNK_REPLIES ? chunker : null);
+				} catch (Exception e) {
+					Log.e(LOGTAG, "The message '"+result+"' could not be synthesized");
+				}
+		}
+		}
+	
+	
+	/**
+	 * Removes HTML tags from a string
+	 * 
+	 * @author http://stackoverflow.com/questions/240546/removing-html-from-a-java-string
+	 * @param string text with html tags
+	 * @return text without html tags
+	 */
+	private String removeTags(String string) {
+
+	    if (string == null || string.length() == 0) {
+	        return string;
+	    }
+
+	    Matcher m = REMOVE_TAGS.matcher(string);
+	    return m.replaceAll("");
+	}
+	
+	
+	/**
+	 * Checks whether the device is connected to Internet (returns true) or not (returns false)
+	 * 
+	 * @author http://developer.android.com/training/monitoring-device-state/connectivity-monitoring.html
+	 */
+	public boolean deviceConnectedToInternet() {
+		ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);  
+	    NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+	    return (activeNetwork != null && activeNetwork.isConnectedOrConnecting());
+	}
+	
+	/**
+	 * Shuts down the TTS engine when finished
+	 */   
+	@Override
+	public void onDestroy() {
+		super.onDestroy();
+		shutdown();
+	}
+
+	/**
+	 * Invoked when the TTS has finished synthesizing.
+	 * 
+	 * In this case, it starts recognizing if the message that has just been synthesized corresponds to a question (its id is ID_PROMPT_QUERY),
+	 * unless the user has already started speaking. If it is the prompt that asks for the wake word (its id is ID_PROMPT_ENROLL),
+	 * it records the wake word. It does nothing otherwise.
+	 * 
+	 * @param uttId identifier of the prompt that has just been synthesized (the id is indicated in the speak method when the text is sent
+	 * to the TTS engine)
+	 */
+	@Override
+	public void onTTSDone(String uttId) {
+		if(uttId.equals(ID_PROMPT_QUERY.toString()) && !isListening())	//If the user interrupted the prompt, they are already being listened to
+			startListening();
+		else if(uttId.equals(ID_PROMPT_ENROLL.toString()))
+			recordWakeWord();
+		
+	}
+
+	/**
+	 * Invoked when the user speaks over the bot. The bot has already stopped speaking, so
+	 * the button is changed to show that the app is listening.
+	 */
+	@Override
+	public void processBargeIn() {
+		indicateListening();
+	}
+
+	/**
+	 * Invoked when the TTS encounters an error.
+	 * 
+	 * In this case it just writes in the log.
+	 */
+	@Override
+	public void onTTSError(String uttId) {
+		Log.e(LOGTAG, "TTS error");
+	}
+
+	/**
+	 * Invoked when the TTS starts synthesizing
+	 * 
+	 * In this case it just writes in the log, with the time to the first audio of the replies of Pandorabots.
+	 */
+	@Override
+	public void onTTSStart(String uttId) {
+		Log.e(LOGTAG, "TTS starts speaking");
+		if(uttId.equals(ID_PROMPT_INFO.toString()) && getReplyCount(CHUNK_REPLIES)>0)
+			Log.d(LOGTAG, "Replies started on average " + getFirstAudioAverage(CHUNK_REPLIES) + " ms after they arrived (" 
+					+ getReplyCount(CHUNK_REPLIES) + (CHUNK_REPLIES ? " by sentences" : " whole") + ")");
+	}
+} 
 
-import java.util.ArrayList;
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
-import voiceactivity.lib.VoiceActivity;
-
-import android.content.Context;
-import android.graphics.PorterDuff;
-import android.net.ConnectivityManager;
-import android.net.NetworkInfo;
-import android.os.Build;
-import android.os.Bundle;
-import android.speech.RecognizerIntent;
-import android.speech.SpeechRecognizer;
-
-import android.util.Log;
-import android.view.View;
-import android.widget.Button;
-
-
-/**
- * Chatbot/VPA that uses the technology of Pandorabots to understand the user queries and provide information
- * 
- * @author Michael McTear
- * @author Zoraida Callejas
- * @version 2.0, 07/20/14
- *
- */
-
-public class MainActivity extends VoiceActivity {
-
-    private static final String LOGTAG = "SpeechTEKBot";
-    private static Integer ID_PROMPT_QUERY = 0;	//Id chosen to identify the prompts that involve posing questions to the user
-    private static Integer ID_PROMPT_INFO = 1;	//Id chosen to identify the prompts that involve only informing the user
-	
-	/**
-	 * Sets up the activity initializing the GUI, the ASR and TTS
-	 */
-	@Override
-	protected void onCreate(Bundle savedInstanceState) 
-	{
-		super.onCreate(savedInstanceState);
-		
-		//Set layout
-		setContentView(R.layout.main);
-		
-		//Initialize the speech recognizer and synthesizer
-		initSpeechInputOutput(getApplicationContext());	
-		
-		//Set up the speech button
-		setSpeakButton();
-	}
-
-	/**
-	 * Initializes the search button and its listener. When the button is pressed, a feedback is shown to the user
-	 * and the recognition starts
-	 */
-	private void setSpeakButton() {
-		
-		// gain reference to speak button
-		Button speak = (Button) findViewById(R.id.speech_btn);
-		speak.setOnClickListener(new View.OnClickListener() {
-				@Override
-				public void onClick(View v) {
-					//If the user is running the app on a virtual device, they get a Toast
-					if("generic".equals(Build.BRAND.toLowerCase(Locale.US))){
-						Log.e(LOGTAG, "ASR attempt on virtual device");						
-					}
-					else {
-						//Show a feedback to the user indicating that the app has started to listen
-						indicateListening();  
-						startListening();
-					}
-				}
-			});
-	}
-	
-	/**
-	 * Starts listening for any user input.
-	 * When it recognizes something, the <code>processAsrResult</code> method is invoked. 
-	 * If there is any error, the <code>processAsrError</code> method is invoked.
-	 */
-	private void startListening(){
-		
-		if(deviceConnectedToInternet()){
-			try {
-				
-				/*Start listening, with the following default parameters:
-					* Recognition model = Free form, 
-					* Number of results = 1 (we will use the best result to perform the search)
-					*/
-				listen(Locale.ENGLISH, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM, 1); //Start listening
-			} catch (Exception e) {
-				Log.e(LOGTAG, e.getMessage());
-			}	
-		} else {
-				Log.e(LOGTAG, "Device not connected to Internet");	
-		}
-	}
-
-	/**
-	 * Provides feedback to the user to show that the app is listening:
-	 * 		* It changes the color and the message of the speech button
-	 *      * It synthesizes a voice message
-	 */
-	private void indicateListening() {
-		Button button = (Button) findViewById(R.id.speech_btn); //Obtains a reference to the button
-		button.setText(getResources().getString(R.string.speechbtn_listening)); //Changes the button's message to the text obtained from the resources folder
-		button.getBackground().setColorFilter(getResources().getColor(R.color.speechbtn_listening),PorterDuff.Mode.MULTIPLY); //Changes the button's background to the color obtained from the resources folder
-	}
-	
-	/**
-	 * Provides feedback to the user to show that the app is idle:
-	 * 		* It changes the color and the message of the speech button
-	 */	
-	private void changeButtonAppearanceToDefault(){
-		Button button = (Button) findViewById(R.id.speech_btn); //Obtains a reference to the button
-		button.setText(getResources().getString(R.string.speechbtn_default)); //Changes the button's message to the text obtained from the resources folder
-		button.getBackground().setColorFilter(getResources().getColor(R.color.speechbtn_default),PorterDuff.Mode.MULTIPLY);	//Changes the button's background to the color obtained from the resources folder		
-	}
-	
-	/**
-	 * Provides feedback to the user when the ASR encounters an error
-	 */
-	@Override
-	public void processAsrError(int errorCode) {
-		changeButtonAppearanceToDefault();
-		
-		String errorMessage;
-		switch (errorCode) 
-        {
-	        case SpeechRecognizer.ERROR_AUDIO: 
-	        	errorMessage = "Audio recording error"; 
-	            break;
-	        case SpeechRecognizer.ERROR_CLIENT: 
-	        	errorMessage = "Client side error"; 
-	            break;
-	        case SpeechRecognizer.ERROR_INSUFFICIENT_PERMISSIONS: 
-	        	errorMessage = "Insufficient permissions" ; 
-	            break;
-	        case SpeechRecognizer.ERROR_NETWORK: 
-	        	errorMessage = "Network related error" ;
-	            break;
-	        case SpeechRecognizer.ERROR_NETWORK_TIMEOUT:                
-	            errorMessage = "Network operation timeout"; 
-	            break;
-	        case SpeechRecognizer.ERROR_NO_MATCH: 
-	        	errorMessage = "No recognition result matched" ; 
-	        	break;
-	        case SpeechRecognizer.ERROR_RECOGNIZER_BUSY: 
-	        	errorMessage = "RecognitionServiceBusy" ; 
-	            break;
-	        case SpeechRecognizer.ERROR_SERVER: 
-	        	errorMessage = "Server sends error status"; 
-	            break;
-	        case SpeechRecognizer.ERROR_SPEECH_TIMEOUT: 
-	        	errorMessage = "No speech input" ; 
-	            break;
-	        default:
-	        	errorMessage = "ASR error";
-	        	break;
-        }
-		
-        Log.e(LOGTAG, "Error when attempting to listen: "+ errorMessage);
-		
-		try {
-			speak(errorMessage,"EN", ID_PROMPT_INFO);
-		} catch (Exception e) {
-			Log.e(LOGTAG, "English not available for TTS, default language used instead");
-		}
-
-	}
-
-	@Override
-	public void processAsrReadyForSpeech() { }
-
-	/**
-	 * Initiates interaction with Pandorabots with the results of the recognition
-	 */
-	@Override
-	public void processAsrResults(ArrayList<String> nBestList, float[] nBestConfidences) {
-		
-		if(nBestList!=null){
-			if(nBestList.size()>0){
-				String bestResult = nBestList.get(0); //We will use the best result
-				Log.d(LOGTAG, "Speech input: " + bestResult);
-				changeButtonAppearanceToDefault();
-				
-				/**
-				 * EXERCISE 1: comment out the following section for exercises 2 onwards
-				 */
-				
-				
-				try {
-					speak(bestResult,"EN",ID_PROMPT_INFO);
-				} catch (Exception e) {
-					Log.e(LOGTAG, "The message '"+bestResult+"' could not be synthesized");
-				}
-				
-				
-				/**
-				 * EXERCISE 2: uncomment the following section for exercises 2 onwards
-				 */
-				/*		
-				// insert %20 for spaces in query
-				bestResult = bestResult.replaceAll(" ", "%20");
-				new DoRequest(this).execute(bestResult);	//Initiates the query to Pandora bots, the result is processed in the "processBotResults" method
-				*/
-			}
-		}
-	}
-	
-	/**
-	 * Processes the response from Pandorabots ALICE2v. This response can be a simple text with simple HTML tags, or a more complex
-	 * text with <oob> tags that must be further processed.
-	 * 
-	 * @param result response from Pandorabots
-	 */
-	public void processBotResults(String result){
-		
-		OOBProcessor oob=new OOBProcessor(this, ID_PROMPT_INFO);
-		Log.d(LOGTAG, "Response, contents of that: "+result);
-
-		// Send responses with <oob> for further processing
-		if(result.contains("<oob>")){
-			try {
-				oob.processOobOutput(result);
-			} catch (Exception e) {
-				Log.d(LOGTAG, e.getMessage());
-			}
-		}
-		// Speak out simple text from Pandorabots after removing any HTML content
-		else{
-		
-				result = removeTags(result);
-				try {
-					speak(result,"EN",ID_PROMPT_INFO);
-				} catch (Exception e) {
-					Log.e(LOGTAG, "The message '"+result+"' could not be synthesized");
-				}
-		}
-		}
-	
-	
-	/**
-	 * Removes HTML tags from a string
-	 * 
-	 * @author http://stackoverflow.com/questions/240546/removing-html-from-a-java-string
-	 * @param string text with html tags
-	 * @return text without html tags
-	 */
-	private String removeTags(String string) {
-		Pattern REMOVE_TAGS = Pattern.compile("<.+?>");
-
-	    if (string == null || string.length() == 0) {
-	        return string;
-	    }
-
-	    Matcher m = REMOVE_TAGS.matcher(string);
-	    return m.replaceAll("");
-	}
-	
-	
-	/**
-	 * Checks whether the device is connected to Internet (returns true) or not (returns false)
-	 * 
-	 * @author http://developer.android.com/training/monitoring-device-state/connectivity-monitoring.html
-	 */
-	public boolean deviceConnectedToInternet() {
-		ConnectivityManager cm = (ConnectivityManager) getSystemService(Context.CONNECTIVITY_SERVICE);  
-	    NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
-	    return (activeNetwork != null && activeNetwork.isConnectedOrConnecting());
-	}
-	
-	/**
-	 * Shuts down the TTS engine when finished
-	 */   
-	@Override
-	public void onDestroy() {
-		super.onDestroy();
-		shutdown();
-	}
-
-	/**
-	 * Invoked when the TTS has finished synthesizing.
-	 * 
-	 * In this case, it starts recognizing if the message that has just been synthesized corresponds to a question (its id is ID_PROMPT_QUERY),
-	 * and does nothing otherwise.
-	 * 
-	 * @param uttId identifier of the prompt that has just been synthesized (the id is indicated in the speak method when the text is sent
-	 * to the TTS engine)
-	 */
-	@Override
-	public void onTTSDone(String uttId) {
-		if(uttId.equals(ID_PROMPT_QUERY.toString()))
-			startListening();
-		
-	}
-
-	/**
-	 * Invoked when the TTS encounters an error.
-	 * 
-	 * In this case it just writes in the log.
-	 */
-	@Override
-	public void onTTSError(String uttId) {
-		Log.e(LOGTAG, "TTS error");
-	}
-
-	/**
-	 * Invoked when the TTS starts synthesizing
-	 * 
-	 * In this case it just writes in the log.
-	 */
-	@Override
-	public void onTTSStart(String uttId) {
-		Log.e(LOGTAG, "TTS starts speaking");
-	}
-} 
-
@@ -0,0 +1,40 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Stage that reorders the N-best recognition results before they are processed, e.g. taking into
+ * account what the user is likely to say in the domain of the application.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setAsrRescorer(AsrRescorer, float)
+ * @see LexiconRescorer.java
+ */
+public interface AsrRescorer
+{
+	/**
+	 * Sets the new confidences of the recognition results and reorders them, from the best to the worst
+	 * @param lattice recognition results, with the confidences provided by the recognizer (if any)
+	 */
+	public void rescore(RecognitionLattice lattice);
+}
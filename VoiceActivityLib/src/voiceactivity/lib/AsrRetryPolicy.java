@@ -0,0 +1,157 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.util.Random;
+
+import android.speech.SpeechRecognizer;
+
+/**
+ * Decides whether a recognition that failed with a recoverable error (<code>ERROR_RECOGNIZER_BUSY</code>,
+ * <code>ERROR_NETWORK_TIMEOUT</code> or <code>ERROR_CLIENT</code>) must be started again, and how long to wait.
+ *
+ * The wait grows exponentially with each retry up to a maximum, and a random part is added so that several
+ * clients do not retry at the same time. The retries of a turn stop when their number or the time spent
+ * since the turn started exceed the limits.
+ *
+ * It keeps the number of retries and the time spent recovering from the errors.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setAsrRetryPolicy(AsrRetryPolicy)
+ */
+public class AsrRetryPolicy {
+
+	private int maxRetries = 3;			//Maximum number of retries in a turn
+	private long baseDelay = 250;		//ms to wait before the first retry
+	private long maxDelay = 2000;		//Maximum ms to wait before a retry
+	private long turnBudget = 5000;		//Maximum ms from the start of the turn to the last retry
+
+	private final Random random = new Random();
+
+	private int retries = 0;
+	private int recoveries = 0;
+	private int giveUps = 0;
+	private long recoveryTime = 0;
+
+	/**
+	 * Sets the limits of the retries
+	 * @param maxRetries maximum number of retries in a turn
+	 * @param baseDelay ms to wait before the first retry (it is doubled in each retry)
+	 * @param maxDelay maximum ms to wait before a retry
+	 * @param turnBudget maximum ms from the start of the turn, no retry is started after it
+	 */
+	public void setLimits(int maxRetries, long baseDelay, long maxDelay, long turnBudget) {
+		this.maxRetries = maxRetries;
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.turnBudget = turnBudget;
+	}
+
+	/**
+	 * @return true if the error is worth retrying, as it is usually transient
+	 */
+	public static boolean isRecoverable(int errorCode) {
+		return errorCode==SpeechRecognizer.ERROR_RECOGNIZER_BUSY || errorCode==SpeechRecognizer.ERROR_NETWORK_TIMEOUT
+				|| errorCode==SpeechRecognizer.ERROR_CLIENT;
+	}
+
+	/**
+	 * Computes the wait before a retry: half of the exponential backoff plus a random part of up to the other half
+	 * @param retry number of retries already done in the turn
+	 * @return ms to wait
+	 */
+	public long getDelay(int retry) {
+		long backoff = maxDelay;
+		if(retry<30)
+			backoff = Math.min(maxDelay, baseDelay << retry);
+		long half = backoff / 2;
+		return half + (long) (random.nextDouble() * (backoff - half));
+	}
+
+	/**
+	 * @param retry number of retries already done in the turn
+	 * @param elapsed ms since the start of the turn
+	 * @param delay ms that will be waited before the retry
+	 * @return true if there can be another retry in the turn
+	 */
+	public boolean canRetry(int retry, long elapsed, long delay) {
+		return retry<maxRetries && elapsed + delay <= turnBudget;
+	}
+
+	/**
+	 * Records that a retry has been scheduled
+	 */
+	void recordRetry() {
+		retries++;
+	}
+
+	/**
+	 * Records that the recognizer works again after one or more retries
+	 * @param time ms since the first error of the turn
+	 */
+	void recordRecovery(long time) {
+		recoveries++;
+		recoveryTime += time;
+	}
+
+	/**
+	 * Records that the retries have been abandoned and the error is passed on
+	 */
+	void recordGiveUp() {
+		giveUps++;
+	}
+
+	/**
+	 * @return number of retries done
+	 */
+	public int getRetries() {
+		return retries;
+	}
+
+	/**
+	 * @return number of turns in which the recognizer worked again after retrying
+	 */
+	public int getRecoveries() {
+		return recoveries;
+	}
+
+	/**
+	 * @return number of turns in which the retries were abandoned
+	 */
+	public int getGiveUps() {
+		return giveUps;
+	}
+
+	/**
+	 * @return average time (ms) from the first error to the recovery of the recognizer
+	 */
+	public long getAverageRecoveryTime() {
+		return recoveries==0 ? 0 : recoveryTime / recoveries;
+	}
+
+	@Override
+	public String toString() {
+		return retries + " retries, " + recoveries + " recoveries (" + getAverageRecoveryTime() + " ms on average), " + giveUps + " give ups";
+	}
+}
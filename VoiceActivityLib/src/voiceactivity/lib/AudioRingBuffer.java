@@ -0,0 +1,225 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.nio.ByteBuffer;
+
+/**
+ * Fixed-size circular buffer that keeps the most recent audio received from the recognizer.
+ *
+ * The audio is stored in a direct <code>ByteBuffer</code> allocated once, so the memory used does not
+ * depend on how long the user speaks, and writing does not allocate. There must be a single writer
+ * (the thread that receives the audio), but there can be many readers, each with its own position.
+ *
+ * Positions are absolute: they count the bytes written since the buffer was created, so a position
+ * remains valid until the writer has written <code>capacity</code> bytes more after it.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class AudioRingBuffer {
+
+	private final ByteBuffer buffer;
+	private final ByteBuffer writeView;	//View used only by the writer, so that its position does not interfere with readers
+	private final int capacity;
+	private volatile long writePosition = 0;
+
+	/**
+	 * Creates the buffer
+	 * @param capacity maximum number of bytes of audio kept (e.g. 16000 Hz * 2 bytes * 10 s)
+	 */
+	public AudioRingBuffer(int capacity) {
+		if(capacity<=0)
+			throw new IllegalArgumentException("The capacity of the audio buffer must be positive");
+		this.capacity = capacity;
+		this.buffer = ByteBuffer.allocateDirect(capacity);
+		this.writeView = buffer.duplicate();
+	}
+
+	/**
+	 * Appends audio to the buffer, overwriting the oldest audio if it is full. It must always be
+	 * invoked from the same thread.
+	 * @param data audio received
+	 */
+	public void write(byte[] data) {
+		write(data, 0, data.length);
+	}
+
+	/**
+	 * Appends audio to the buffer, overwriting the oldest audio if it is full. It must always be
+	 * invoked from the same thread.
+	 * @param data array that contains the audio
+	 * @param offset position of the first byte of audio in the array
+	 * @param length number of bytes of audio
+	 */
+	public void write(byte[] data, int offset, int length) {
+		long position = writePosition;
+
+		//If there is more audio than room, only the most recent audio is kept
+		if(length>capacity) {
+			offset += length - capacity;
+			position += length - capacity;
+			length = capacity;
+		}
+
+		int index = (int) (position % capacity);
+		int first = Math.min(length, capacity - index);
+		writeView.position(index);
+		writeView.put(data, offset, first);
+		if(first<length) {
+			writeView.position(0);
+			writeView.put(data, offset + first, length - first);
+		}
+
+		writePosition = position + length;	//Volatile write: publishes the audio to the readers
+	}
+
+	/**
+	 * @return the maximum number of bytes kept
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return the position after the last byte written
+	 */
+	public long getWritePosition() {
+		return writePosition;
+	}
+
+	/**
+	 * @return the position of the oldest byte that is still in the buffer
+	 */
+	public long getOldestPosition() {
+		return Math.max(0, writePosition - capacity);
+	}
+
+	/**
+	 * Checks whether the audio at a position is still in the buffer
+	 */
+	public boolean isAvailable(long position) {
+		long end = writePosition;
+		return position>=0 && position<end && position>=end-capacity;
+	}
+
+	/**
+	 * Reads a byte in place, without copying the audio. The result is only valid if
+	 * {@link #isAvailable(long)} is still true for the position after reading it.
+	 * @param position absolute position of the byte
+	 */
+	public byte get(long position) {
+		return buffer.get((int) (position % capacity));
+	}
+
+	/**
+	 * Reads in place a 16-bit little-endian PCM sample, which is the encoding used by the recognizer.
+	 * The result is only valid if {@link #isAvailable(long)} is still true for the position after reading it.
+	 * @param position absolute position of the first byte of the sample
+	 */
+	public short getSample(long position) {
+		return (short) ((buffer.get((int) (position % capacity)) & 0xff) | (buffer.get((int) ((position + 1) % capacity)) << 8));
+	}
+
+	/**
+	 * Creates a reader that starts at the oldest audio available. Each consumer must use
+	 * its own reader, which is intended to be created once and reused.
+	 */
+	public Reader newReader() {
+		return new Reader();
+	}
+
+	/**
+	 * Sequential reader with its own position in the buffer
+	 */
+	public class Reader {
+		private final ByteBuffer readView = buffer.duplicate();
+		private long position = getOldestPosition();
+		private int overruns = 0;
+
+		/**
+		 * @return the position of the next byte to be read
+		 */
+		public long getPosition() {
+			return position;
+		}
+
+		/**
+		 * Moves the reader to a position. If the audio at that position is no longer
+		 * in the buffer, the next read starts at the oldest audio available.
+		 */
+		public void seek(long newPosition) {
+			position = newPosition;
+		}
+
+		/**
+		 * @return number of bytes available to be read
+		 */
+		public int available() {
+			return (int) (writePosition - Math.max(position, getOldestPosition()));
+		}
+
+		/**
+		 * @return number of times that the writer overwrote audio before this reader read it
+		 */
+		public int getOverruns() {
+			return overruns;
+		}
+
+		/**
+		 * Copies the next bytes of audio
+		 * @param dst array where the audio is copied
+		 * @param offset position in the array where the audio is copied
+		 * @param length maximum number of bytes to be copied
+		 * @return number of bytes copied
+		 */
+		public int read(byte[] dst, int offset, int length) {
+			long end = writePosition;
+			if(position<end-capacity) {	//The writer has overwritten audio that had not been read
+				position = end - capacity;
+				overruns++;
+			}
+
+			int count = (int) Math.min(length, end - position);
+			if(count<=0)
+				return 0;
+
+			int index = (int) (position % capacity);
+			int first = Math.min(count, capacity - index);
+			readView.position(index);
+			readView.get(dst, offset, first);
+			if(first<count) {
+				readView.position(0);
+				readView.get(dst, offset + first, count - first);
+			}
+
+			//If the writer overwrote part of the audio while it was being copied, the copy is discarded
+			if(position<writePosition-capacity) {
+				overruns++;
+				position = writePosition - capacity;
+				return 0;
+			}
+
+			position += count;
+			return count;
+		}
+	}
+}
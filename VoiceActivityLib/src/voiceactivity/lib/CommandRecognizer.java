@@ -0,0 +1,352 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Small on-device recognizer for a closed grammar of frequent commands (e.g. "battery level" or "launch maps"),
+ * so that they can be carried out without waiting for the cloud recognizer.
+ *
+ * The grammar is made of complete phrases and of prefixes (e.g. "launch ") that accept any phrase that starts
+ * with them. Each phrase is recognized by comparing the cepstral coefficients of the audio with recordings of the
+ * phrase (templates) using dynamic time warping. The templates can be added explicitly or learnt from the turns in
+ * which the cloud recognizer recognized a phrase of the grammar with high confidence (see {@link #learn(String, short[], int, int)}).
+ *
+ * A result is confident when the audio is close to a template of the best phrase and clearly farther from the
+ * templates of the other phrases; otherwise the cloud result should be used. While there are templates of only
+ * one phrase, there is nothing to compare with, so no result is confident.
+ *
+ * It does not depend on Android, so it can be evaluated off the device with {@link #evaluate(CommandRecognizer, Map)}
+ * on WAV recordings read with {@link WavReader}.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setCommandRecognizer(CommandRecognizer)
+ */
+public class CommandRecognizer {
+
+	private static final int NUM_CEPS = FeatureExtractor.DEFAULT_NUM_CEPS;
+	private static final float INFINITE = Float.MAX_VALUE / 4;
+
+	private final List<String> phrases = new ArrayList<String>();
+	private final List<String> prefixes = new ArrayList<String>();
+	private final Map<String, List<float[]>> templates = new LinkedHashMap<String, List<float[]>>();
+
+	private int maxTemplates = 3;			//Templates kept per phrase, the oldest learnt is replaced
+	private float maxDistance = 15f;		//Maximum average distance to the closest template of a confident result
+	private float minMargin = 0.15f;		//Minimum relative difference with the second best phrase of a confident result
+	private float speechMargin = 6f;		//dB above the quietest frame considered speech
+
+	/**
+	 * Sets when a result is confident
+	 * @param maxDistance maximum average distance between the frames of the audio and of the closest template (15 by default)
+	 * @param minMargin minimum relative difference between the distances of the best and the second best phrases (0.15 by default)
+	 */
+	public void setThresholds(float maxDistance, float minMargin) {
+		this.maxDistance = maxDistance;
+		this.minMargin = minMargin;
+	}
+
+	/**
+	 * @param maxTemplates number of templates kept per phrase (3 by default)
+	 */
+	public void setMaxTemplates(int maxTemplates) {
+		this.maxTemplates = maxTemplates;
+	}
+
+	/**
+	 * Adds a complete phrase to the grammar
+	 */
+	public synchronized void addCommand(String phrase) {
+		phrases.add(normalize(phrase));
+	}
+
+	/**
+	 * Adds a prefix to the grammar, which accepts any phrase that starts with it (e.g. "launch ")
+	 */
+	public synchronized void addCommandPrefix(String prefix) {
+		prefixes.add(normalize(prefix) + " ");
+	}
+
+	/**
+	 * @return true if the text is a phrase of the grammar
+	 */
+	public synchronized boolean accepts(String text) {
+		String phrase = normalize(text);
+		if(phrases.contains(phrase))
+			return true;
+		for(String prefix: prefixes)
+			if(phrase.startsWith(prefix) && phrase.length()>prefix.length())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Adds a recording of a phrase of the grammar. The silence before and after it is removed.
+	 * @param phrase phrase said in the recording
+	 * @param samples 16 kHz 16-bit mono audio
+	 * @return false if the phrase is not in the grammar or no speech has been found in the recording
+	 */
+	public boolean learn(String phrase, short[] samples, int offset, int length) {
+		if(!accepts(phrase))
+			return false;
+		float[] features = new FeatureExtractor().speechMfcc(samples, offset, length, speechMargin);
+		if(features==null)
+			return false;
+
+		synchronized(this) {
+			String key = normalize(phrase);
+			List<float[]> phraseTemplates = templates.get(key);
+			if(phraseTemplates==null) {
+				phraseTemplates = new ArrayList<float[]>();
+				templates.put(key, phraseTemplates);
+			}
+			if(phraseTemplates.size()>=maxTemplates)
+				phraseTemplates.remove(0);
+			phraseTemplates.add(features);
+		}
+		return true;
+	}
+
+	/**
+	 * @return phrases for which there are templates
+	 */
+	public synchronized List<String> getKnownCommands() {
+		return new ArrayList<String>(templates.keySet());
+	}
+
+	/**
+	 * Recognizes a recording
+	 * @param samples 16 kHz 16-bit mono audio
+	 * @return the best phrase and how confident the result is, or null if there is no speech or no templates
+	 */
+	public Result recognize(short[] samples, int offset, int length) {
+		long start = System.nanoTime();
+		float[] features = new FeatureExtractor().speechMfcc(samples, offset, length, speechMargin);
+		if(features==null)
+			return null;
+
+		Map<String, List<float[]>> current;
+		synchronized(this) {
+			current = new HashMap<String, List<float[]>>();
+			for(Map.Entry<String, List<float[]>> entry: templates.entrySet())
+				current.put(entry.getKey(), new ArrayList<float[]>(entry.getValue()));
+		}
+
+		String best = null;
+		float bestDistance = INFINITE;
+		float secondDistance = INFINITE;
+		float[] scratch = new float[2 * (features.length / NUM_CEPS + 1)];
+		for(Map.Entry<String, List<float[]>> entry: current.entrySet()) {
+			float distance = INFINITE;
+			for(float[] template: entry.getValue())
+				distance = Math.min(distance, dtw(features, template, scratch));
+			if(distance<bestDistance) {
+				secondDistance = bestDistance;
+				bestDistance = distance;
+				best = entry.getKey();
+			}
+			else if(distance<secondDistance)
+				secondDistance = distance;
+		}
+		if(best==null)	//No templates, or none of a similar duration
+			return null;
+
+		//Without other phrases the margin cannot be known; if they are all too different in duration, it is the largest
+		float margin;
+		if(current.size()<2)
+			margin = 0;
+		else
+			margin = secondDistance>=INFINITE ? 1 : (secondDistance - bestDistance) / secondDistance;
+		return new Result(best, bestDistance, margin, bestDistance<=maxDistance && margin>=minMargin, System.nanoTime() - start);
+	}
+
+	/**
+	 * Average distance of the best alignment of two sequences of frames, which must match from beginning to end
+	 * @param scratch array with room for two columns of the audio
+	 */
+	private static float dtw(float[] audio, float[] template, float[] scratch) {
+		int n = audio.length / NUM_CEPS;
+		int m = template.length / NUM_CEPS;
+		if(n > 2 * m || m > 2 * n)	//Too different in duration to be the same phrase
+			return INFINITE;
+
+		//Accumulated distance of the best path to each frame of the audio, for the previous and current frames of the template.
+		//Diagonal steps count twice, so that all the paths are normalized by n + m.
+		int previous = 0, current = n + 1;
+		scratch[previous] = 0;
+		for(int i=1; i<=n; i++)
+			scratch[previous + i] = INFINITE;
+
+		for(int j=1; j<=m; j++) {
+			scratch[current] = INFINITE;
+			for(int i=1; i<=n; i++) {
+				float d = distance(audio, (i - 1) * NUM_CEPS, template, (j - 1) * NUM_CEPS);
+				float best = scratch[previous + i - 1] + 2 * d;
+				best = Math.min(best, scratch[previous + i] + d);
+				best = Math.min(best, scratch[current + i - 1] + d);
+				scratch[current + i] = best;
+			}
+			int swap = previous;
+			previous = current;
+			current = swap;
+		}
+		return scratch[previous + n] / (n + m);
+	}
+
+	private static float distance(float[] a, int aOffset, float[] b, int bOffset) {
+		float sum = 0;
+		for(int c=0; c<NUM_CEPS; c++) {
+			float diff = a[aOffset + c] - b[bOffset + c];
+			sum += diff * diff;
+		}
+		return (float) Math.sqrt(sum);
+	}
+
+	private static String normalize(String text) {
+		return text==null ? "" : text.toLowerCase(Locale.US).trim().replaceAll("\\s+", " ");
+	}
+
+	/**
+	 * Result of the recognition of a recording
+	 */
+	public static class Result {
+		private final String command;
+		private final float distance;
+		private final float margin;
+		private final boolean confident;
+		private final long processingTime;
+
+		Result(String command, float distance, float margin, boolean confident, long processingTime) {
+			this.command = command;
+			this.distance = distance;
+			this.margin = margin;
+			this.confident = confident;
+			this.processingTime = processingTime;
+		}
+
+		/**
+		 * @return the phrase of the grammar closest to the recording
+		 */
+		public String getCommand() {
+			return command;
+		}
+
+		/**
+		 * @return average distance to the closest template of the phrase
+		 */
+		public float getDistance() {
+			return distance;
+		}
+
+		/**
+		 * @return confidence between 0 and 1, the relative difference with the distance of the second best phrase
+		 */
+		public float getConfidence() {
+			return margin;
+		}
+
+		/**
+		 * @return true if the result can be used instead of the cloud recognition
+		 */
+		public boolean isConfident() {
+			return confident;
+		}
+
+		/**
+		 * @return time (ms) spent recognizing
+		 */
+		public long getProcessingTime() {
+			return processingTime / 1000000;
+		}
+	}
+
+	/**
+	 * Recognizes recordings of the phrases of the grammar, e.g. read from WAV files with {@link WavReader}
+	 * @param recognizer recognizer with the templates of the phrases
+	 * @param recordings recordings of each phrase
+	 * @return the proportion of confident results, their accuracy and the processing time
+	 */
+	public static Evaluation evaluate(CommandRecognizer recognizer, Map<String, List<short[]>> recordings) {
+		Evaluation evaluation = new Evaluation();
+		for(Map.Entry<String, List<short[]>> entry: recordings.entrySet()) {
+			String expected = normalize(entry.getKey());
+			for(short[] audio: entry.getValue()) {
+				Result result = recognizer.recognize(audio, 0, audio.length);
+				evaluation.recordings++;
+				if(result!=null) {
+					evaluation.processingTime += result.processingTime;
+					if(result.isConfident()) {
+						evaluation.confident++;
+						if(result.getCommand().equals(expected))
+							evaluation.correct++;
+					}
+				}
+			}
+		}
+		return evaluation;
+	}
+
+	/**
+	 * Results of the evaluation of the recognizer
+	 */
+	public static class Evaluation {
+		private int recordings = 0;
+		private int confident = 0;
+		private int correct = 0;
+		private long processingTime = 0;	//ns
+
+		/**
+		 * @return proportion of the recordings recognized locally (the rest would go to the cloud recognizer)
+		 */
+		public float getLocalRate() {
+			return recordings==0 ? 0 : (float) confident / recordings;
+		}
+
+		/**
+		 * @return proportion of the confident results that were correct
+		 */
+		public float getAccuracy() {
+			return confident==0 ? 0 : (float) correct / confident;
+		}
+
+		/**
+		 * @return average time (ms) spent recognizing a recording
+		 */
+		public float getAverageProcessingTime() {
+			return recordings==0 ? 0 : processingTime / 1000000f / recordings;
+		}
+
+		@Override
+		public String toString() {
+			return confident + "/" + recordings + " recognized locally, " + correct + " correct, " 
+					+ getAverageProcessingTime() + " ms per recording";
+		}
+	}
+}
@@ -0,0 +1,413 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.nio.ShortBuffer;
+
+/**
+ * Computes the features used by the on-device audio processing (endpointing, keyword spotting, command recognition,
+ * noise estimation...): the log energy, the log mel filterbank energies and the mel-frequency cepstral coefficients
+ * (MFCC) of frames of audio.
+ *
+ * Each frame is pre-emphasized, windowed with a Hamming window and transformed with a real FFT computed as a complex
+ * FFT of half the size. The audio can be given as <code>float[]</code> (values between -1 and 1) or as 16-bit PCM in
+ * a <code>short[]</code> or a <code>ShortBuffer</code> (e.g. a view of a direct buffer).
+ *
+ * All the tables and scratch arrays are created in the constructor, so processing a frame does not allocate any
+ * memory. The inner loops work on contiguous primitive arrays without branches or method calls, with several
+ * accumulators in the reductions, so that the JIT can vectorize them; the Vector API is not available on Android,
+ * so there is no other implementation. An instance must only be used from one thread.
+ *
+ * It does not depend on Android, so it can be used off the device; its speed on the device can be measured with
+ * {@link FeatureExtractorBenchmark}.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class FeatureExtractor {
+
+	public static final int DEFAULT_SAMPLE_RATE = 16000;
+	public static final int DEFAULT_FRAME_LENGTH = 400;		//25 ms at 16 kHz
+	public static final int DEFAULT_FRAME_SHIFT = 160;		//10 ms at 16 kHz
+	public static final int DEFAULT_FFT_SIZE = 512;
+	public static final int DEFAULT_NUM_FILTERS = 24;
+	public static final int DEFAULT_NUM_CEPS = 12;			//Coefficients c1 to c12 (c0 depends on the loudness, so it is left out)
+
+	private static final float PREEMPHASIS = 0.97f;
+	private static final float LOW_FREQ = 100;
+
+	private final int sampleRate;
+	private final int frameLength;
+	private final int frameShift;
+	private final int fftSize;
+	private final int numFilters;
+	private final int numCeps;
+
+	private final float[] input;			//Frame converted from 16-bit PCM
+	private final float[] window;
+	private final float[] re;				//Complex FFT of half the size, of the even (re) and odd (im) samples
+	private final float[] im;
+	private final float[] stageCos;			//Twiddle factors of the half size FFT
+	private final float[] stageSin;
+	private final float[] splitCos;			//Twiddle factors to obtain the real FFT from the half size FFT
+	private final float[] splitSin;
+	private final int[] bitReverse;
+	private final float[] power;
+
+	private final int[] filterFirstBin;
+	private final int[] filterOffset;		//Position of the weights of each filter in filterWeights
+	private final float[] filterWeights;
+	private final float[] melEnergies;
+	private final float[] dct;
+
+	/**
+	 * Creates an extractor for frames of 25 ms of 16 kHz audio taken every 10 ms, with 24 mel filters and 12 cepstral coefficients
+	 */
+	public FeatureExtractor() {
+		this(DEFAULT_SAMPLE_RATE, DEFAULT_FRAME_LENGTH, DEFAULT_FRAME_SHIFT, DEFAULT_FFT_SIZE, DEFAULT_NUM_FILTERS, DEFAULT_NUM_CEPS);
+	}
+
+	/**
+	 * @param sampleRate sample rate of the audio (Hz)
+	 * @param frameLength samples per frame
+	 * @param frameShift samples between the start of consecutive frames
+	 * @param fftSize size of the FFT, a power of 2 not smaller than the frame length
+	 * @param numFilters number of mel filters
+	 * @param numCeps number of cepstral coefficients, from c1
+	 */
+	public FeatureExtractor(int sampleRate, int frameLength, int frameShift, int fftSize, int numFilters, int numCeps) {
+		if(Integer.bitCount(fftSize)!=1 || fftSize<frameLength || fftSize<4)
+			throw new IllegalArgumentException("The FFT size must be a power of 2 not smaller than the frame length");
+		this.sampleRate = sampleRate;
+		this.frameLength = frameLength;
+		this.frameShift = frameShift;
+		this.fftSize = fftSize;
+		this.numFilters = numFilters;
+		this.numCeps = numCeps;
+
+		input = new float[frameLength];
+		window = new float[frameLength];
+		for(int i=0; i<frameLength; i++)
+			window[i] = (float) (0.54 - 0.46 * Math.cos(2 * Math.PI * i / (frameLength - 1)));	//Hamming
+
+		int half = fftSize / 2;
+		re = new float[half];
+		im = new float[half];
+		bitReverse = new int[half];
+		int bits = Integer.numberOfTrailingZeros(half);
+		for(int i=0; i<half; i++)
+			bitReverse[i] = bits==0 ? 0 : Integer.reverse(i) >>> (32 - bits);
+
+		//Twiddle factors stored stage after stage, so that the butterflies of a stage read them sequentially
+		stageCos = new float[Math.max(1, half - 1)];
+		stageSin = new float[Math.max(1, half - 1)];
+		int position = 0;
+		for(int size=2; size<=half; size<<=1) {
+			for(int k=0; k<size/2; k++) {
+				stageCos[position] = (float) Math.cos(-2 * Math.PI * k / size);
+				stageSin[position] = (float) Math.sin(-2 * Math.PI * k / size);
+				position++;
+			}
+		}
+		splitCos = new float[half];
+		splitSin = new float[half];
+		for(int k=0; k<half; k++) {
+			splitCos[k] = (float) Math.cos(-2 * Math.PI * k / fftSize);
+			splitSin[k] = (float) Math.sin(-2 * Math.PI * k / fftSize);
+		}
+		power = new float[half + 1];
+
+		//Triangular filters equally spaced in the mel scale
+		int[] edges = new int[numFilters + 2];
+		double lowMel = mel(LOW_FREQ);
+		double highMel = mel(sampleRate * 0.475);
+		for(int i=0; i<edges.length; i++) {
+			double freq = 700 * (Math.exp((lowMel + (highMel - lowMel) * i / (numFilters + 1)) / 1127.0) - 1);
+			edges[i] = Math.min(half, (int) Math.round(freq * fftSize / sampleRate));
+		}
+		filterFirstBin = new int[numFilters];
+		filterOffset = new int[numFilters + 1];
+		int total = 0;
+		for(int f=0; f<numFilters; f++) {
+			filterFirstBin[f] = edges[f];
+			filterOffset[f] = total;
+			total += Math.max(1, edges[f+2] - edges[f]);
+		}
+		filterOffset[numFilters] = total;
+		filterWeights = new float[total];
+		for(int f=0; f<numFilters; f++) {
+			int lower = edges[f], center = edges[f+1], upper = edges[f+2];
+			for(int k=0; k<filterOffset[f+1] - filterOffset[f]; k++) {
+				int bin = lower + k;
+				float weight;
+				if(bin<=center)
+					weight = center==lower ? 1 : (float) (bin - lower) / (center - lower);
+				else
+					weight = (float) (upper - bin) / (upper - center);
+				filterWeights[filterOffset[f] + k] = weight;
+			}
+		}
+		melEnergies = new float[numFilters];
+
+		dct = new float[numCeps * numFilters];
+		for(int c=0; c<numCeps; c++)
+			for(int f=0; f<numFilters; f++)
+				dct[c * numFilters + f] = (float) Math.cos(Math.PI * (c + 1) * (f + 0.5) / numFilters);
+	}
+
+	private static double mel(double freq) {
+		return 1127.0 * Math.log(1 + freq / 700);
+	}
+
+	public int getSampleRate() {
+		return sampleRate;
+	}
+
+	public int getFrameLength() {
+		return frameLength;
+	}
+
+	public int getFrameShift() {
+		return frameShift;
+	}
+
+	public int getNumFilters() {
+		return numFilters;
+	}
+
+	public int getNumCeps() {
+		return numCeps;
+	}
+
+	/**
+	 * @return number of complete frames in a number of samples
+	 */
+	public int countFrames(int samples) {
+		return samples < frameLength ? 0 : 1 + (samples - frameLength) / frameShift;
+	}
+
+	/**
+	 * Computes the energy of a frame
+	 * @param frame samples between -1 and 1
+	 * @param offset position of the first sample of the frame
+	 * @return energy of the frame in dB
+	 */
+	public float logEnergy(float[] frame, int offset) {
+		float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int i = 0;
+		for(; i<=frameLength-4; i+=4) {
+			float x0 = frame[offset + i], x1 = frame[offset + i + 1], x2 = frame[offset + i + 2], x3 = frame[offset + i + 3];
+			s0 += x0 * x0;
+			s1 += x1 * x1;
+			s2 += x2 * x2;
+			s3 += x3 * x3;
+		}
+		for(; i<frameLength; i++)
+			s0 += frame[offset + i] * frame[offset + i];
+		return (float) (10 * Math.log10((s0 + s1 + s2 + s3) / frameLength + 1e-10));
+	}
+
+	/**
+	 * Computes the energy of a frame of 16-bit PCM audio
+	 * @param pcm audio
+	 * @param position position of the first sample of the frame (the position of the buffer is not changed)
+	 * @return energy of the frame in dB
+	 */
+	public float logEnergy(ShortBuffer pcm, int position) {
+		toFloat(pcm, position);
+		return logEnergy(input, 0);
+	}
+
+	/**
+	 * Computes the logarithm of the energies of the mel filters of a frame
+	 * @param frame samples between -1 and 1, they are not modified
+	 * @param offset position of the first sample of the frame
+	 * @param out array where the energies are written
+	 * @param outOffset position of out in which the first energy is written
+	 */
+	public void logMel(float[] frame, int offset, float[] out, int outOffset) {
+		powerSpectrum(frame, offset);
+		for(int f=0; f<numFilters; f++) {
+			float sum = 0;
+			int bin = filterFirstBin[f] - filterOffset[f];
+			for(int w=filterOffset[f]; w<filterOffset[f+1]; w++)
+				sum += filterWeights[w] * power[bin + w];
+			out[outOffset + f] = (float) Math.log(sum + 1e-10);
+		}
+	}
+
+	/**
+	 * Computes the cepstral coefficients of a frame
+	 * @param frame samples between -1 and 1, they are not modified
+	 * @param offset position of the first sample of the frame
+	 * @param out array where the coefficients are written
+	 * @param outOffset position of out in which the first coefficient is written
+	 */
+	public void mfcc(float[] frame, int offset, float[] out, int outOffset) {
+		logMel(frame, offset, melEnergies, 0);
+		for(int c=0; c<numCeps; c++) {
+			int base = c * numFilters;
+			float s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+			int f = 0;
+			for(; f<=numFilters-4; f+=4) {
+				s0 += dct[base + f] * melEnergies[f];
+				s1 += dct[base + f + 1] * melEnergies[f + 1];
+				s2 += dct[base + f + 2] * melEnergies[f + 2];
+				s3 += dct[base + f + 3] * melEnergies[f + 3];
+			}
+			for(; f<numFilters; f++)
+				s0 += dct[base + f] * melEnergies[f];
+			out[outOffset + c] = s0 + s1 + s2 + s3;
+		}
+	}
+
+	/**
+	 * Computes the cepstral coefficients of a frame of 16-bit PCM audio
+	 * @param pcm audio
+	 * @param position position of the first sample of the frame (the position of the buffer is not changed)
+	 * @param out array where the coefficients are written
+	 * @param outOffset position of out in which the first coefficient is written
+	 */
+	public void mfcc(ShortBuffer pcm, int position, float[] out, int outOffset) {
+		toFloat(pcm, position);
+		mfcc(input, 0, out, outOffset);
+	}
+
+	/**
+	 * Computes the cepstral coefficients of a frame of 16-bit PCM audio
+	 * @param pcm audio
+	 * @param position position of the first sample of the frame
+	 * @param out array where the coefficients are written
+	 * @param outOffset position of out in which the first coefficient is written
+	 */
+	public void mfcc(short[] pcm, int position, float[] out, int outOffset) {
+		toFloat(pcm, position, input, frameLength);
+		mfcc(input, 0, out, outOffset);
+	}
+
+	/**
+	 * Computes the cepstral coefficients of the speech in a recording, leaving out the silence before and after it.
+	 * It allocates the result, so it is intended for whole utterances (e.g. templates), not for streams.
+	 * @param samples 16-bit PCM audio
+	 * @param margin dB above the quietest frame from which a frame is considered speech
+	 * @return getNumCeps() coefficients per frame of speech, or null if there are less than 10 frames of speech
+	 */
+	public float[] speechMfcc(short[] samples, int offset, int length, float margin) {
+		int frames = countFrames(length);
+		if(frames==0)
+			return null;
+
+		float[] energies = new float[frames];
+		float minEnergy = Float.MAX_VALUE;
+		for(int f=0; f<frames; f++) {
+			toFloat(samples, offset + f * frameShift, input, frameLength);
+			energies[f] = logEnergy(input, 0);
+			minEnergy = Math.min(minEnergy, energies[f]);
+		}
+
+		int first = 0, last = frames - 1;
+		while(first<frames && energies[first] <= minEnergy + margin)
+			first++;
+		while(last>first && energies[last] <= minEnergy + margin)
+			last--;
+		if(last - first + 1 < 10)
+			return null;
+
+		float[] cepstra = new float[(last - first + 1) * numCeps];
+		for(int f=first; f<=last; f++)
+			mfcc(samples, offset + f * frameShift, cepstra, (f - first) * numCeps);
+		return cepstra;
+	}
+
+	/**
+	 * Converts 16-bit PCM samples to values between -1 and 1
+	 */
+	public static void toFloat(short[] samples, int offset, float[] out, int length) {
+		for(int i=0; i<length; i++)
+			out[i] = samples[offset + i] * (1f / 32768);
+	}
+
+	private void toFloat(ShortBuffer pcm, int position) {
+		for(int i=0; i<frameLength; i++)
+			input[i] = pcm.get(position + i) * (1f / 32768);
+	}
+
+	/**
+	 * Computes the power spectrum of a frame (bins 0 to fftSize/2) in power
+	 */
+	private void powerSpectrum(float[] frame, int offset) {
+		int half = fftSize / 2;
+
+		//Pre-emphasis and window. Even samples go to the real part and odd samples to the imaginary part, in bit-reversed order
+		float previous = frame[offset];
+		for(int n=0; n<half; n++) {
+			int i = 2 * n;
+			float even = 0, odd = 0;
+			if(i<frameLength) {
+				even = (frame[offset + i] - PREEMPHASIS * previous) * window[i];
+				previous = frame[offset + i];
+			}
+			if(i + 1<frameLength) {
+				odd = (frame[offset + i + 1] - PREEMPHASIS * previous) * window[i + 1];
+				previous = frame[offset + i + 1];
+			}
+			re[bitReverse[n]] = even;
+			im[bitReverse[n]] = odd;
+		}
+
+		//Radix-2 butterflies of the half size FFT
+		int twiddle = 0;
+		for(int size=2; size<=half; size<<=1) {
+			int span = size >> 1;
+			for(int start=0; start<half; start+=size) {
+				for(int k=0; k<span; k++) {
+					float wr = stageCos[twiddle + k];
+					float wi = stageSin[twiddle + k];
+					int a = start + k;
+					int b = a + span;
+					float tr = wr * re[b] - wi * im[b];
+					float ti = wr * im[b] + wi * re[b];
+					re[b] = re[a] - tr;
+					im[b] = im[a] - ti;
+					re[a] += tr;
+					im[a] += ti;
+				}
+			}
+			twiddle += span;
+		}
+
+		//Spectrum of the real frame from the half size FFT
+		power[0] = (re[0] + im[0]) * (re[0] + im[0]);
+		power[half] = (re[0] - im[0]) * (re[0] - im[0]);
+		for(int k=1; k<half; k++) {
+			float a = re[k], b = im[k];
+			float c = re[half - k], d = im[half - k];
+			float evenRe = 0.5f * (a + c);
+			float evenIm = 0.5f * (b - d);
+			float oddRe = 0.5f * (b + d);
+			float oddIm = -0.5f * (a - c);
+			float xr = evenRe + splitCos[k] * oddRe - splitSin[k] * oddIm;
+			float xi = evenIm + splitCos[k] * oddIm + splitSin[k] * oddRe;
+			power[k] = xr * xr + xi * xi;
+		}
+	}
+}
@@ -0,0 +1,92 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import android.os.Debug;
+
+/**
+ * Measures the speed of the extraction of cepstral coefficients of a {@link FeatureExtractor} on the device, and
+ * checks that it does not allocate memory. It uses the allocation counters of Android, so unlike
+ * <code>FeatureExtractor</code> it can only be run on the device.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class FeatureExtractorBenchmark {
+
+	private final int frames;
+	private final long nanos;
+	private final long bytes;
+
+	FeatureExtractorBenchmark(int frames, long nanos, long bytes) {
+		this.frames = frames;
+		this.nanos = nanos;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Measures the speed of the extraction of cepstral coefficients on the device, and checks that it does not allocate memory
+	 * @param extractor extractor to be measured
+	 * @param frames number of frames to be processed (the first tenth is used to warm up and is not measured)
+	 */
+	@SuppressWarnings("deprecation")
+	public static FeatureExtractorBenchmark run(FeatureExtractor extractor, int frames) {
+		int frameShift = extractor.getFrameShift();
+		float[] audio = new float[extractor.getFrameLength() + frameShift * 16];
+		for(int i=0; i<audio.length; i++)
+			audio[i] = (float) (0.3 * Math.sin(i * 0.05) + 0.01 * ((i * 7919) % 101 - 50) / 50.0);	//Tone and deterministic noise
+		float[] out = new float[extractor.getNumCeps()];
+
+		for(int f=0; f<frames/10; f++)
+			extractor.mfcc(audio, (f % 16) * frameShift, out, 0);
+
+		Debug.resetThreadAllocCount();
+		Debug.resetThreadAllocSize();
+		Debug.startAllocCounting();
+		long start = System.nanoTime();
+		for(int f=0; f<frames; f++)
+			extractor.mfcc(audio, (f % 16) * frameShift, out, 0);
+		long elapsed = System.nanoTime() - start;
+		Debug.stopAllocCounting();
+
+		return new FeatureExtractorBenchmark(frames, elapsed, Debug.getThreadAllocSize());
+	}
+
+	/**
+	 * @return frames processed per second
+	 */
+	public float getFramesPerSecond() {
+		return nanos==0 ? 0 : frames * 1e9f / nanos;
+	}
+
+	/**
+	 * @return bytes allocated per frame, it should be 0
+	 */
+	public float getBytesPerFrame() {
+		return frames==0 ? 0 : (float) bytes / frames;
+	}
+
+	@Override
+	public String toString() {
+		return getFramesPerSecond() + " frames/s, " + getBytesPerFrame() + " bytes allocated per frame";
+	}
+}
@@ -0,0 +1,308 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.os.Handler;
+import android.os.Looper;
+import android.speech.RecognizerIntent;
+import android.util.Log;
+
+/**
+ * Process-wide cache of the speech recognition language details.
+ *
+ * Asking the recognizer for its supported languages requires an ordered broadcast of
+ * <code>RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS</code>, which is a full IPC round trip.
+ * This cache does it once (when the speech input is initialized), persists the answer in the
+ * shared preferences so that it survives a cold start, and refreshes it in the background when
+ * it expires or when the system locale or the recognizer package change.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see LanguageDetailsChecker.java
+ */
+public class LanguageDetailsCache implements OnLanguageDetailsListener {
+
+	private static final String LIB_LOGTAG = "LANGUAGEDETAILSCACHE";
+
+	/** Default time to live of the language details: one day */
+	public static final long DEFAULT_TTL_MS = 24 * 60 * 60 * 1000L;
+
+	private static final String PREFS_NAME = "voiceactivity_language_details";
+	private static final String KEY_PREFERENCE = "preference";
+	private static final String KEY_LANGUAGES = "languages";
+	private static final String KEY_TIMESTAMP = "timestamp";
+	private static final String KEY_LOCALE = "locale";
+	private static final String KEY_RECOGNIZER = "recognizer";
+	private static final String SEPARATOR = "\n";
+
+	private static LanguageDetailsCache instance = null;
+
+	private final Context appCtx;
+	private final SharedPreferences prefs;
+
+	private volatile LanguageDetailsChecker details = null;
+	private volatile long timestamp = 0;			//Wall-clock time in which the details were obtained
+	private volatile long ttl = DEFAULT_TTL_MS;
+	private String locale;							//System locale when the details were obtained
+	private String recognizer;						//Recognizer packages (and versions) when the details were obtained
+	private boolean refreshing = false;
+
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final List<OnLanguageDetailsListener> pending = new ArrayList<OnLanguageDetailsListener>();
+
+	/**
+	 * Returns the process-wide instance of the cache, creating it (and restoring the persisted
+	 * language details) the first time it is invoked
+	 * @param ctx any context, only its application context is retained
+	 */
+	public static synchronized LanguageDetailsCache getInstance(Context ctx) {
+		if(instance==null)
+			instance = new LanguageDetailsCache(ctx.getApplicationContext());
+		return instance;
+	}
+
+	private LanguageDetailsCache(Context appCtx) {
+		this.appCtx = appCtx;
+		this.prefs = appCtx.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+		restore();
+		registerChangeReceiver();
+	}
+
+	/**
+	 * Sets the time during which the cached language details are considered valid.
+	 * Expired details are still served, but a refresh is started in the background.
+	 * @param ttlMillis time to live in milliseconds
+	 */
+	public void setTimeToLive(long ttlMillis) {
+		ttl = ttlMillis;
+	}
+
+	/**
+	 * Fills the cache if it is empty, expired or out of date with respect to the
+	 * current locale and recognizer. It does nothing otherwise.
+	 */
+	public void prefetch() {
+		if(details==null || isStale())
+			refresh();
+	}
+
+	/**
+	 * Provides the language details to the listener. If they are cached, the listener is
+	 * invoked immediately, otherwise it is invoked once the recognizer answers. It is always
+	 * invoked in the main thread, as the listeners usually start the recognizer.
+	 * @param listener object that receives the language details
+	 */
+	public void getDetails(final OnLanguageDetailsListener listener) {
+		final LanguageDetailsChecker current = details;
+		if(current!=null) {
+			if(isStale())
+				refresh();	//Stale details are used anyway while they are refreshed
+			if(Looper.myLooper()==Looper.getMainLooper())
+				listener.onLanguageDetailsReceived(current);
+			else
+				mainHandler.post(new Runnable() {	//e.g. listen() invoked from a TTS callback
+					public void run() {
+						listener.onLanguageDetailsReceived(current);
+					}
+				});
+		}
+		else {
+			synchronized(pending) {
+				pending.add(listener);
+			}
+			refresh();
+		}
+	}
+
+	/**
+	 * @return the cached language details, or null if they have not been obtained yet
+	 */
+	public LanguageDetailsChecker getCachedDetails() {
+		return details;
+	}
+
+	/**
+	 * Asks the recognizer for its language details. The answer is received asynchronously in
+	 * {@link #onLanguageDetailsReceived(LanguageDetailsChecker)}
+	 */
+	public synchronized void refresh() {
+		if(!refreshing) {
+			refreshing = true;
+			Intent detailsIntent = new Intent(RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS);
+			LanguageDetailsChecker checker = new LanguageDetailsChecker(this);
+			appCtx.sendOrderedBroadcast(detailsIntent, null, checker, null, Activity.RESULT_OK, null, null);
+		}
+	}
+
+	/**
+	 * Invoked when the recognizer answers the language details broadcast
+	 * @see OnLanguageDetailsListener#onLanguageDetailsReceived(LanguageDetailsChecker)
+	 */
+	@Override
+	public void onLanguageDetailsReceived(LanguageDetailsChecker data) {
+		List<OnLanguageDetailsListener> waiting;
+		synchronized(this) {
+			refreshing = false;
+			details = data;
+			timestamp = System.currentTimeMillis();
+			locale = Locale.getDefault().toString();
+			recognizer = getRecognizerSignature();
+		}
+		persist(data);
+
+		synchronized(pending) {
+			waiting = new ArrayList<OnLanguageDetailsListener>(pending);
+			pending.clear();
+		}
+		for(OnLanguageDetailsListener listener: waiting)
+			listener.onLanguageDetailsReceived(data);
+	}
+
+	/**
+	 * Checks whether the cached details have expired or were obtained with a different
+	 * system locale (recognizer changes are tracked by the change receiver)
+	 */
+	private synchronized boolean isStale() {
+		return System.currentTimeMillis() - timestamp > ttl
+				|| !Locale.getDefault().toString().equals(locale);
+	}
+
+	/**
+	 * Restores the language details persisted in a previous execution, discarding them if they
+	 * were obtained with a different recognizer
+	 */
+	private void restore() {
+		String languages = prefs.getString(KEY_LANGUAGES, null);
+		String savedRecognizer = prefs.getString(KEY_RECOGNIZER, null);
+
+		if(languages!=null && getRecognizerSignature().equals(savedRecognizer)) {
+			List<String> supported = new ArrayList<String>();
+			if(languages.length()>0)
+				Collections.addAll(supported, languages.split(SEPARATOR));
+			details = new LanguageDetailsChecker(prefs.getString(KEY_PREFERENCE, null), supported);
+			timestamp = prefs.getLong(KEY_TIMESTAMP, 0);
+			locale = prefs.getString(KEY_LOCALE, null);
+			recognizer = savedRecognizer;
+		}
+	}
+
+	/**
+	 * Saves the language details in the shared preferences. It is done in a separate thread
+	 * to avoid writing to disk in the main thread.
+	 */
+	private void persist(final LanguageDetailsChecker data) {
+		final long savedTimestamp = timestamp;
+		final String savedLocale = locale;
+		final String savedRecognizer = recognizer;
+
+		new Thread(new Runnable() {
+			public void run() {
+				StringBuilder languages = new StringBuilder();
+				for(String language: data.getSupportedLanguages()) {
+					if(languages.length()>0)
+						languages.append(SEPARATOR);
+					languages.append(language);
+				}
+
+				boolean saved = prefs.edit()
+					.putString(KEY_PREFERENCE, data.getLanguagePreference())
+					.putString(KEY_LANGUAGES, languages.toString())
+					.putLong(KEY_TIMESTAMP, savedTimestamp)
+					.putString(KEY_LOCALE, savedLocale)
+					.putString(KEY_RECOGNIZER, savedRecognizer)
+					.commit();
+				if(!saved)
+					Log.e(LIB_LOGTAG, "Language details could not be persisted");
+			}
+		}).start();
+	}
+
+	/**
+	 * Builds a string that identifies the installed recognizers and their versions, so that
+	 * it is possible to know whether they have changed since the details were obtained
+	 */
+	private String getRecognizerSignature() {
+		PackageManager packManager = appCtx.getPackageManager();
+		List<ResolveInfo> intActivities = packManager.queryIntentActivities(
+				new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH), 0);
+
+		List<String> packages = new ArrayList<String>();
+		for(ResolveInfo info: intActivities) {
+			String packageName = info.activityInfo.packageName;
+			try {
+				packages.add(packageName + ":" + packManager.getPackageInfo(packageName, 0).versionCode);
+			} catch (PackageManager.NameNotFoundException e) {
+				packages.add(packageName);
+			}
+		}
+		Collections.sort(packages);
+		return packages.toString();
+	}
+
+	/**
+	 * Registers a receiver that refreshes the language details when the system locale changes
+	 * or when a recognizer package is installed, updated or removed
+	 */
+	private void registerChangeReceiver() {
+		BroadcastReceiver changeReceiver = new BroadcastReceiver() {
+			@Override
+			public void onReceive(Context context, Intent intent) {
+				boolean changed;
+				if(Intent.ACTION_LOCALE_CHANGED.equals(intent.getAction()))
+					changed = true;
+				else {
+					synchronized(LanguageDetailsCache.this) {
+						changed = !getRecognizerSignature().equals(recognizer);
+					}
+				}
+
+				if(changed) {
+					Log.d(LIB_LOGTAG, "Refreshing language details after " + intent.getAction());
+					refresh();
+				}
+			}
+		};
+
+		appCtx.registerReceiver(changeReceiver, new IntentFilter(Intent.ACTION_LOCALE_CHANGED));
+
+		IntentFilter packageFilter = new IntentFilter();
+		packageFilter.addAction(Intent.ACTION_PACKAGE_ADDED);
+		packageFilter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+		packageFilter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+		packageFilter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+		packageFilter.addDataScheme("package");
+		appCtx.registerReceiver(changeReceiver, packageFilter);
+	}
+}
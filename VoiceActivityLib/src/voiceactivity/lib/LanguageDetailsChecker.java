@@ -1,128 +1,293 @@
-package voiceactivity.lib;
-
-
-//This file is part of the gast-lib project, and can be found here:
-//https://github.com/gast-lib/gast-lib/blob/master/library/src/root/gast/speech/
-	
-/*
-* Copyright 2011 Greg Milette and Adam Stroud
-*
-* Licensed under the Apache License, Version 2.0 (the "License");
-* you may not use this file except in compliance with the License.
-* You may obtain a copy of the License at
-*
-* http://www.apache.org/licenses/LICENSE-2.0
-*
-* Unless required by applicable law or agreed to in writing, software
-* distributed under the License is distributed on an "AS IS" BASIS,
-* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-* See the License for the specific language governing permissions and
-* limitations under the License.
-*/
-
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Locale;
-
-import android.content.BroadcastReceiver;
-import android.content.Context;
-import android.content.Intent;
-import android.os.Bundle;
-import android.speech.RecognizerIntent;
-import android.util.Log;
-
-/**
-* receives the speech recognition language details from
-* RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS and
-* then calls back to a {@link OnLanguageDetailsListener}
-* @author Greg Milette &#60;<a href="mailto:gregorym@gmail.com">gregorym@gmail.com</a>&#62;
-*/
-public class LanguageDetailsChecker extends BroadcastReceiver
-{
-    private static final String TAG = "LanguageDetailsChecker";
-
-    private List<String> supportedLanguages;
-
-    private String languagePreference;
-
-    private OnLanguageDetailsListener doAfterReceive;
-
-    public LanguageDetailsChecker(OnLanguageDetailsListener doAfterReceive)
-    {
-        supportedLanguages = new ArrayList<String>();
-        this.doAfterReceive = doAfterReceive;
-    }
-
-    @Override
-    public void onReceive(Context context, Intent intent)
-    {
-        Bundle results = getResultExtras(true);
-        if (results.containsKey(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE))
-        {
-            languagePreference =
-                    results.getString(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE);
-        }
-        if (results.containsKey(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES))
-        {
-            supportedLanguages =
-                    results.getStringArrayList(
-                            RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES);
-        }
-
-        if (doAfterReceive != null)
-        {
-            doAfterReceive.onLanguageDetailsReceived(this);
-        }
-    }
-
-    public String matchLanguage(Locale toCheck)
-    {
-        String matchedLanguage = null;
-        // modify the returned languages to look like the output from
-        // Locale.toString()
-        String targetLanguage = toCheck.toString().replace('_', '-');
-        for (String supportedLanguage : supportedLanguages)
-        {
-            // use contains, so that partial matches are possible
-            // for example, if the Locale is
-            // en-US-POSIX, it will still match en-US
-            // and that if the target language is en, it will match something
-            Log.d(TAG, targetLanguage + " contains " + supportedLanguage);
-            if ((targetLanguage.toLowerCase().contains(supportedLanguage.toLowerCase()))
-                    || supportedLanguage.toLowerCase().contains(targetLanguage.toLowerCase())) //WE have added the lowercase
-            {
-                matchedLanguage = supportedLanguage;
-            }
-        }
-        return matchedLanguage;
-    }
-
-    /**
-* @return the supportedLanguages
-*/
-    public List<String> getSupportedLanguages()
-    {
-        return supportedLanguages;
-    }
-
-    /**
-* @return the languagePreference
-*/
-    public String getLanguagePreference()
-    {
-        return languagePreference;
-    }
-
-    public String toString()
-    {
-        StringBuilder sb = new StringBuilder();
-        sb.append("Language Preference: ").append(getLanguagePreference())
-                .append("\n");
-        sb.append("languages supported: ").append("\n");
-        for (String lang : getSupportedLanguages())
-        {
-            sb.append(" ").append(lang).append("\n");
-        }
-        return sb.toString();
-    }
-}
+package voiceactivity.lib;
+
+
+//This file is part of the gast-lib project, and can be found here:
+//https://github.com/gast-lib/gast-lib/blob/master/library/src/root/gast/speech/
+	
+/*
+* Copyright 2011 Greg Milette and Adam Stroud
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.speech.RecognizerIntent;
+
+/**
+* receives the speech recognition language details from
+* RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS and
+* then calls back to a {@link OnLanguageDetailsListener}
+* @author Greg Milette &#60;<a href="mailto:gregorym@gmail.com">gregorym@gmail.com</a>&#62;
+*/
+public class LanguageDetailsChecker extends BroadcastReceiver
+{
+    // memoized value for the locales that do not match any supported language
+    private static final String NO_MATCH = "";
+
+    private List<String> supportedLanguages;
+
+    private String languagePreference;
+
+    private OnLanguageDetailsListener doAfterReceive;
+
+    // index of the supported languages, built once when the details are received
+    // lowercase BCP-47 tag -> supported language
+    private Map<String, String> exactIndex = new HashMap<String, String>();
+    // lowercase language-region (without script) -> supported language
+    private Map<String, String> regionIndex = new HashMap<String, String>();
+    // lowercase language -> preferred supported language for it
+    private Map<String, String> languageIndex = new HashMap<String, String>();
+    // best match found for each locale checked
+    private final Map<Locale, String> matches = new ConcurrentHashMap<Locale, String>();
+
+    public LanguageDetailsChecker(OnLanguageDetailsListener doAfterReceive)
+    {
+        supportedLanguages = new ArrayList<String>();
+        this.doAfterReceive = doAfterReceive;
+    }
+
+    /**
+     * Creates a checker from language details obtained previously (e.g. restored
+     * from {@link LanguageDetailsCache}), so that no broadcast is needed
+     */
+    LanguageDetailsChecker(String languagePreference, List<String> supportedLanguages)
+    {
+        this.languagePreference = languagePreference;
+        this.supportedLanguages = supportedLanguages;
+        buildIndex();
+    }
+
+    @Override
+    public void onReceive(Context context, Intent intent)
+    {
+        Bundle results = getResultExtras(true);
+        if (results.containsKey(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE))
+        {
+            languagePreference =
+                    results.getString(RecognizerIntent.EXTRA_LANGUAGE_PREFERENCE);
+        }
+        if (results.containsKey(RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES))
+        {
+            supportedLanguages =
+                    results.getStringArrayList(
+                            RecognizerIntent.EXTRA_SUPPORTED_LANGUAGES);
+        }
+        buildIndex();
+
+        if (doAfterReceive != null)
+        {
+            doAfterReceive.onLanguageDetailsReceived(this);
+        }
+    }
+
+    /**
+     * Finds the supported language that best matches a locale. Candidates are ranked
+     * deterministically: first the exact tag (e.g. en-US for en_US), then the same
+     * language and region ignoring variant and script (e.g. en-US for en_US_POSIX, or
+     * zh-Hant-TW for zh_TW), and finally the preferred tag for the language alone
+     * (e.g. en-US for en). The result for each locale is memoized, so repeated
+     * lookups do not allocate.
+     *
+     * @param toCheck locale to be matched
+     * @return the supported language that matches the locale, or null if there is none
+     */
+    public String matchLanguage(Locale toCheck)
+    {
+        String matchedLanguage = matches.get(toCheck);
+        if (matchedLanguage == null)
+        {
+            matchedLanguage = findMatch(toCheck);
+            matches.put(toCheck, matchedLanguage == null ? NO_MATCH : matchedLanguage);
+        }
+        return matchedLanguage == NO_MATCH ? null : matchedLanguage;
+    }
+
+    private String findMatch(Locale toCheck)
+    {
+        String language = toCheck.getLanguage().toLowerCase(Locale.US);
+        String region = toCheck.getCountry().toLowerCase(Locale.US);
+        String variant = toCheck.getVariant().toLowerCase(Locale.US);
+
+        if (language.length() == 0)
+        {
+            return null;
+        }
+        String languageRegion = region.length() == 0 ? language : language + "-" + region;
+
+        // exact tag
+        String match = exactIndex.get(variant.length() == 0 ? languageRegion
+                : languageRegion + "-" + variant.replace('_', '-'));
+
+        // same language and region
+        if (match == null && region.length() > 0)
+        {
+            match = exactIndex.get(languageRegion);
+            if (match == null)
+            {
+                match = regionIndex.get(languageRegion);
+            }
+        }
+
+        // same language
+        if (match == null)
+        {
+            match = exactIndex.get(language);
+            if (match == null)
+            {
+                match = languageIndex.get(language);
+            }
+        }
+        return match;
+    }
+
+    /**
+     * Builds the lookup tables used by {@link #matchLanguage(Locale)} from the list of
+     * supported languages
+     */
+    private void buildIndex()
+    {
+        Map<String, String> exact = new HashMap<String, String>();
+        Map<String, String> byRegion = new HashMap<String, String>();
+        Map<String, String> byLanguage = new HashMap<String, String>();
+
+        if (supportedLanguages != null)
+        {
+            for (String supportedLanguage : supportedLanguages)
+            {
+                String tag = normalize(supportedLanguage);
+                String[] subtags = tag.split("-");
+                String language = subtags[0];
+                String script = null;
+                String region = null;
+                int next = 1;
+                if (next < subtags.length && subtags[next].length() == 4)
+                {
+                    script = subtags[next++];
+                }
+                if (next < subtags.length && (subtags[next].length() == 2 || subtags[next].length() == 3))
+                {
+                    region = subtags[next];
+                }
+
+                if (!exact.containsKey(tag))
+                {
+                    exact.put(tag, supportedLanguage);
+                }
+                if (region != null)
+                {
+                    String key = language + "-" + region;
+                    if (isPreferred(supportedLanguage, script, byRegion.get(key)))
+                    {
+                        byRegion.put(key, supportedLanguage);
+                    }
+                }
+                if (isPreferred(supportedLanguage, script, byLanguage.get(language)))
+                {
+                    byLanguage.put(language, supportedLanguage);
+                }
+            }
+        }
+
+        exactIndex = exact;
+        regionIndex = byRegion;
+        languageIndex = byLanguage;
+        matches.clear();
+    }
+
+    /**
+     * Decides whether a supported language is a better fallback than the current one:
+     * the language preference of the recognizer is preferred, then tags without script,
+     * then tags in which the region is the same as the language (e.g. es-ES for es),
+     * and then the alphabetical order
+     */
+    private boolean isPreferred(String candidate, String script, String current)
+    {
+        if (current == null)
+        {
+            return true;
+        }
+        if (languagePreference != null)
+        {
+            if (normalize(languagePreference).equals(normalize(current)))
+            {
+                return false;
+            }
+            if (normalize(languagePreference).equals(normalize(candidate)))
+            {
+                return true;
+            }
+        }
+        String[] currentSubtags = normalize(current).split("-");
+        boolean currentScript = currentSubtags.length > 1 && currentSubtags[1].length() == 4;
+        if (currentScript != (script != null))
+        {
+            return script == null;
+        }
+        String[] candidateSubtags = normalize(candidate).split("-");
+        boolean currentHome = currentSubtags.length > 1 && currentSubtags[currentSubtags.length - 1].equals(currentSubtags[0]);
+        boolean candidateHome = candidateSubtags.length > 1 && candidateSubtags[candidateSubtags.length - 1].equals(candidateSubtags[0]);
+        if (currentHome != candidateHome)
+        {
+            return candidateHome;
+        }
+        return normalize(candidate).compareTo(normalize(current)) < 0;
+    }
+
+    /**
+     * Turns a language as returned by the recognizer, or by Locale.toString(),
+     * into a lowercase BCP-47 tag
+     */
+    private static String normalize(String language)
+    {
+        return language.trim().replace('_', '-').toLowerCase(Locale.US);
+    }
+
+    /**
+* @return the supportedLanguages
+*/
+    public List<String> getSupportedLanguages()
+    {
+        return supportedLanguages;
+    }
+
+    /**
+* @return the languagePreference
+*/
+    public String getLanguagePreference()
+    {
+        return languagePreference;
+    }
+
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Language Preference: ").append(getLanguagePreference())
+                .append("\n");
+        sb.append("languages supported: ").append("\n");
+        for (String lang : getSupportedLanguages())
+        {
+            sb.append(" ").append(lang).append("\n");
+        }
+        return sb.toString();
+    }
+}
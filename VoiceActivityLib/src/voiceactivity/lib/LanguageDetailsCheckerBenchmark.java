@@ -0,0 +1,120 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Measures how long a {@link LanguageDetailsChecker} takes to index a list of supported languages and to match
+ * locales against it, before and after the matches are memoized. It is kept apart from <code>LanguageDetailsChecker</code>,
+ * which comes from the gast-lib project.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class LanguageDetailsCheckerBenchmark {
+
+	private final int tags;
+	private final long indexNanos;
+	private final int firstLookups;
+	private final long firstNanos;
+	private final int lookups;
+	private final long memoizedNanos;
+
+	LanguageDetailsCheckerBenchmark(int tags, long indexNanos, int firstLookups, long firstNanos, int lookups, long memoizedNanos) {
+		this.tags = tags;
+		this.indexNanos = indexNanos;
+		this.firstLookups = firstLookups;
+		this.firstNanos = firstNanos;
+		this.lookups = lookups;
+		this.memoizedNanos = memoizedNanos;
+	}
+
+	/**
+	 * Indexes a list of supported languages and matches the locales of the platform against it
+	 * @param tags number of supported languages (at least 200 are recommended, as returned by recognizers with many languages installed)
+	 * @param lookups number of lookups measured once the matches are memoized
+	 */
+	public static LanguageDetailsCheckerBenchmark run(int tags, int lookups) {
+		Locale[] available = Locale.getAvailableLocales();
+		List<String> supported = new ArrayList<String>();
+		for(int i=0; supported.size()<tags; i++) {
+			if(i<available.length) {
+				Locale locale = available[i];
+				if(locale.getLanguage().length()>0 && locale.getCountry().length()>0)
+					supported.add(locale.getLanguage() + "-" + locale.getCountry());
+			}
+			else	//Not enough locales in the platform, made up tags are added
+				supported.add("x" + (char) ('a' + i % 26) + "-" + (char) ('A' + i / 26 % 26) + (char) ('A' + i % 26));
+		}
+		Locale[] toCheck = new Locale[Math.min(available.length, 2 * tags) + 3];
+		System.arraycopy(available, 0, toCheck, 0, toCheck.length - 3);
+		toCheck[toCheck.length - 3] = new Locale("en", "US", "POSIX");
+		toCheck[toCheck.length - 2] = new Locale("zh", "TW");
+		toCheck[toCheck.length - 1] = new Locale("xx");
+
+		long start = System.nanoTime();
+		LanguageDetailsChecker checker = new LanguageDetailsChecker("en-US", supported);
+		long indexNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(Locale locale: toCheck)
+			checker.matchLanguage(locale);
+		long firstNanos = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int i=0; i<lookups; i++)
+			checker.matchLanguage(toCheck[i % toCheck.length]);
+		long memoizedNanos = System.nanoTime() - start;
+
+		return new LanguageDetailsCheckerBenchmark(supported.size(), indexNanos, toCheck.length, firstNanos, lookups, memoizedNanos);
+	}
+
+	/**
+	 * @return time (ms) taken to index the supported languages
+	 */
+	public float getIndexMs() {
+		return indexNanos / 1e6f;
+	}
+
+	/**
+	 * @return average time (us) of the first lookup of a locale
+	 */
+	public float getFirstLookupUs() {
+		return firstLookups==0 ? 0 : firstNanos / 1e3f / firstLookups;
+	}
+
+	/**
+	 * @return average time (us) of a lookup once it is memoized
+	 */
+	public float getMemoizedLookupUs() {
+		return lookups==0 ? 0 : memoizedNanos / 1e3f / lookups;
+	}
+
+	@Override
+	public String toString() {
+		return tags + " tags indexed in " + getIndexMs() + " ms, " + getFirstLookupUs() + " us per first lookup, " 
+				+ getMemoizedLookupUs() + " us per memoized lookup";
+	}
+}
@@ -0,0 +1,165 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import android.annotation.SuppressLint;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.view.Choreographer;
+
+/**
+ * Publishes the sound level to the UI at most once per display frame, however often it is reported.
+ *
+ * The recognizer may report the level (<code>onRmsChanged</code>) dozens of times per second. Instead of posting
+ * a <code>Runnable</code> to the main thread for each report, the level is kept in a lock-free slot that only holds
+ * the latest value, and a single delivery is scheduled for the next frame (with <code>Choreographer</code> from
+ * API level 16, or a <code>Handler</code> at a frame interval otherwise). The reports received before that frame
+ * replace each other, so the work in the UI does not depend on how often the level is reported.
+ *
+ * It must be created in the main thread; the level can be published from any thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setLevelListener(LevelMeter.Listener)
+ */
+public class LevelMeter {
+
+	/**
+	 * Receives the level in the main thread, once per frame at most
+	 */
+	public interface Listener {
+		public void onLevel(float rmsdB);
+	}
+
+	private static final long FRAME_INTERVAL = 16;	//ms, used when Choreographer is not available
+
+	private final Listener listener;
+	private final AtomicInteger latest = new AtomicInteger();			//Bits of the last level published
+	private final AtomicBoolean scheduled = new AtomicBoolean(false);	//A delivery is waiting for the next frame
+	private final Handler handler = new Handler(Looper.getMainLooper());
+	private final FrameScheduler frameScheduler;
+	private long lastDelivery = 0;
+
+	private volatile int published = 0;
+	private int delivered = 0;
+
+	private final Runnable deliver = new Runnable() {
+		@Override
+		public void run() {
+			deliver();
+		}
+	};
+
+	/**
+	 * @param listener object that receives the level in the main thread
+	 */
+	public LevelMeter(Listener listener) {
+		this.listener = listener;
+		frameScheduler = Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN ? new FrameScheduler() : null;
+	}
+
+	/**
+	 * Publishes a new level, replacing the one waiting to be delivered (if any). It can be invoked from any thread.
+	 * @param rmsdB sound level
+	 */
+	public void publish(float rmsdB) {
+		latest.set(Float.floatToIntBits(rmsdB));
+		published++;	//Only an approximate count if it is invoked from several threads
+		if(scheduled.compareAndSet(false, true)) {
+			if(frameScheduler!=null)
+				frameScheduler.schedule();
+			else {
+				long delay = lastDelivery + FRAME_INTERVAL - SystemClock.uptimeMillis();
+				handler.postDelayed(deliver, Math.max(0, delay));
+			}
+		}
+	}
+
+	/**
+	 * Discards the level waiting to be delivered (if any)
+	 */
+	public void cancel() {
+		handler.removeCallbacks(deliver);
+		if(frameScheduler!=null)
+			frameScheduler.cancel();
+		scheduled.set(false);
+	}
+
+	/**
+	 * @return the last level published
+	 */
+	public float getLevel() {
+		return Float.intBitsToFloat(latest.get());
+	}
+
+	/**
+	 * @return number of levels published
+	 */
+	public int getPublishedCount() {
+		return published;
+	}
+
+	/**
+	 * @return number of levels delivered to the listener (one per frame at most)
+	 */
+	public int getDeliveredCount() {
+		return delivered;
+	}
+
+	/**
+	 * Delivers the latest level in the main thread
+	 */
+	private void deliver() {
+		scheduled.set(false);	//Before reading the slot, so that a later level schedules another delivery
+		lastDelivery = SystemClock.uptimeMillis();
+		delivered++;
+		listener.onLevel(getLevel());
+	}
+
+	/**
+	 * Delivers the level in the next display frame. It is in a separate class so that Choreographer
+	 * is not loaded in versions in which it does not exist.
+	 */
+	@SuppressLint("NewApi")
+	private class FrameScheduler implements Choreographer.FrameCallback {
+		private final Choreographer choreographer = Choreographer.getInstance();	//The one of the main thread
+
+		void schedule() {
+			choreographer.postFrameCallback(this);
+		}
+
+		void cancel() {
+			choreographer.removeFrameCallback(this);
+		}
+
+		@Override
+		public void doFrame(long frameTimeNanos) {
+			deliver();
+		}
+	}
+}
@@ -0,0 +1,139 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Rescorer that favours the recognition results that contain phrases of a domain lexicon, such as
+ * the commands understood by the application or the names of the installed apps.
+ *
+ * The new confidence of each result is its confidence according to the recognizer (or a value derived
+ * from its position if the recognizer does not provide confidences) plus a bonus for the words that
+ * belong to the lexicon and another for each complete phrase of the lexicon found in it.
+ *
+ * The lexicon is converted to the word ids of the vocabulary of the results the first time that it is used
+ * after a change, so rescoring only compares ids and does not allocate memory per result.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class LexiconRescorer implements AsrRescorer {
+
+	private final Set<String> phrases = new HashSet<String>();
+	private float wordWeight = 0.2f;
+	private float phraseWeight = 0.2f;
+
+	private TokenVocabulary compiledVocabulary = null;	//Vocabulary of the ids below, null if they must be recomputed
+	private int[][] phraseTokens;
+	private final BitSet wordTokens = new BitSet();
+
+	/**
+	 * Sets the importance of the lexicon with respect to the confidence of the recognizer
+	 * @param wordWeight bonus for a result whose words are all in the lexicon (it is proportional to the words in the lexicon)
+	 * @param phraseWeight bonus for a result that contains a complete phrase of the lexicon
+	 */
+	public void setWeights(float wordWeight, float phraseWeight) {
+		this.wordWeight = wordWeight;
+		this.phraseWeight = phraseWeight;
+	}
+
+	/**
+	 * Adds a phrase (one or more words) to the lexicon. It can be invoked from any thread.
+	 */
+	public synchronized void addPhrase(String phrase) {
+		String normalized = phrase==null ? "" : phrase.trim();
+		if(normalized.length()>0 && phrases.add(normalized))
+			compiledVocabulary = null;
+	}
+
+	/**
+	 * Adds several phrases to the lexicon. It can be invoked from any thread.
+	 */
+	public synchronized void addPhrases(List<String> newPhrases) {
+		for(String phrase: newPhrases)
+			addPhrase(phrase);
+	}
+
+	/**
+	 * Reorders the results according to their confidence and the bonus for the lexicon
+	 * @see AsrRescorer#rescore(RecognitionLattice)
+	 */
+	@Override
+	public synchronized void rescore(RecognitionLattice lattice) {
+		compile(lattice.getVocabulary());
+		boolean hasConfidences = lattice.hasConfidences();
+
+		for(int rank=0; rank<lattice.size(); rank++) {
+			float confidence;
+			if(hasConfidences)
+				confidence = lattice.getConfidence(rank);
+			else
+				confidence = 1f / (rank + 2);	//Without confidences, only the order of the results is known
+
+			lattice.setConfidence(rank, Math.min(1f, confidence + lexiconBonus(lattice, rank)));
+		}
+		lattice.sortByConfidence();
+	}
+
+	/**
+	 * Computes the bonus of a result for the words and phrases of the lexicon that it contains
+	 */
+	private float lexiconBonus(RecognitionLattice lattice, int rank) {
+		int words = lattice.getTokenCount(rank);
+		if(words==0)
+			return 0;
+
+		int known = 0;
+		for(int i=0; i<words; i++)
+			if(wordTokens.get(lattice.getToken(rank, i)))
+				known++;
+		float bonus = wordWeight * known / words;
+
+		for(int[] phrase: phraseTokens)
+			if(lattice.indexOf(rank, phrase)>=0) {
+				bonus += phraseWeight;
+				break;
+			}
+		return bonus;
+	}
+
+	/**
+	 * Converts the lexicon to the word ids of a vocabulary, if it has not been done yet
+	 */
+	private void compile(TokenVocabulary vocabulary) {
+		if(compiledVocabulary==vocabulary)
+			return;
+		phraseTokens = new int[phrases.size()][];
+		wordTokens.clear();
+		int i = 0;
+		for(String phrase: phrases) {
+			phraseTokens[i] = vocabulary.internPhrase(phrase);
+			for(int token: phraseTokens[i])
+				wordTokens.set(token);
+			i++;
+		}
+		compiledVocabulary = vocabulary;
+	}
+}
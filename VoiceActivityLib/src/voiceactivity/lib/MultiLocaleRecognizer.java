@@ -0,0 +1,288 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import android.content.Context;
+import android.content.Intent;
+import android.speech.RecognitionListener;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+/**
+ * Recognizes the user input in several languages and keeps the result with the best confidence,
+ * along with the language in which it was obtained.
+ *
+ * If the device allows it, there is a recognition session per language running at the same time.
+ * Otherwise (the extra sessions fail with <code>ERROR_RECOGNIZER_BUSY</code>) it falls back to running the
+ * languages one after the other, starting with the language detected last time. In that case, the next
+ * language is only tried if the result is not confident enough, and it listens to the next user utterance,
+ * so the listener is told with <code>onMultiLocaleNextLocale</code> (e.g. to ask the user to repeat).
+ *
+ * The events other than results and errors (sound level, partial results...) are forwarded from one of the
+ * sessions that are running: when it finishes, another running session takes over.
+ *
+ * It must be used from the main thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class MultiLocaleRecognizer implements RecognitionSession.Callback {
+
+	/**
+	 * Receives the outcome of the recognition
+	 */
+	public interface Listener {
+		public void onMultiLocaleResults(ArrayList<String> nBestList, float[] nBestConfidences, Locale locale);
+		public void onMultiLocaleError(int errorCode);
+		public void onMultiLocaleNextLocale(Locale locale);
+	}
+
+	private static final String LIB_LOGTAG = "MULTILOCALERECOGNIZER";
+
+	private final Context ctx;
+	private final RecognitionListener forward;
+	private final Listener listener;
+	private float confidenceBar;
+
+	private final Map<Locale, RecognitionSession> sessions = new HashMap<Locale, RecognitionSession>();
+	private final Map<RecognitionSession, Locale> sessionLocales = new HashMap<RecognitionSession, Locale>();
+	private final Map<Locale, Intent> intents = new HashMap<Locale, Intent>();
+	private final List<Locale> order = new ArrayList<Locale>();			//Languages in order of preference
+	private final LinkedList<Locale> pending = new LinkedList<Locale>();	//Languages to be tried sequentially
+	private final List<RecognitionSession> running = new ArrayList<RecognitionSession>();
+
+	private boolean concurrent = true;	//Becomes false when the device refuses to run several sessions at the same time
+	private boolean decided = true;
+	private RecognitionSession primary = null;	//Session from which the events are forwarded
+	private Locale lastDetected = null;
+
+	private ArrayList<String> bestList;
+	private float[] bestConfidences;
+	private Locale bestLocale;
+	private int lastError;
+
+	/**
+	 * @param ctx context in which the recognizers are created
+	 * @param forward listener of the events other than the results and errors (e.g. the sound level)
+	 * @param listener object that receives the outcome of the recognition
+	 * @param confidenceBar confidence from which a result is accepted without waiting for the other languages
+	 */
+	public MultiLocaleRecognizer(Context ctx, RecognitionListener forward, Listener listener, float confidenceBar) {
+		this.ctx = ctx;
+		this.forward = forward;
+		this.listener = listener;
+		this.confidenceBar = confidenceBar;
+	}
+
+	/**
+	 * @param confidenceBar confidence from which a result is accepted without waiting for the other languages
+	 */
+	public void setConfidenceBar(float confidenceBar) {
+		this.confidenceBar = confidenceBar;
+	}
+
+	/**
+	 * @return true while the device is considered to allow several recognitions at the same time
+	 */
+	public boolean isConcurrent() {
+		return concurrent;
+	}
+
+	/**
+	 * Starts recognizing
+	 * @param localeIntents recognition intent for each language, in order of preference (e.g. a LinkedHashMap)
+	 */
+	public void start(Map<Locale, Intent> localeIntents) {
+		cancel();
+		decided = false;
+		bestList = null;
+		bestConfidences = null;
+		bestLocale = null;
+		lastError = SpeechRecognizer.ERROR_NO_MATCH;
+		intents.clear();
+		intents.putAll(localeIntents);
+
+		pending.clear();
+		pending.addAll(localeIntents.keySet());
+		if(lastDetected!=null && pending.remove(lastDetected))
+			pending.addFirst(lastDetected);	//The language detected last time is the most likely one
+		order.clear();
+		order.addAll(pending);
+
+		if(concurrent) {
+			boolean first = true;
+			while(!pending.isEmpty()) {
+				startSession(pending.removeFirst(), first);
+				first = false;
+			}
+		}
+		else
+			startSession(pending.removeFirst(), true);
+	}
+
+	/**
+	 * Stops capturing audio in all the sessions
+	 */
+	public void stopListening() {
+		for(RecognitionSession session: running)
+			session.stopListening();
+	}
+
+	/**
+	 * Cancels all the sessions
+	 */
+	public void cancel() {
+		decided = true;
+		for(RecognitionSession session: running)
+			session.cancel();
+		running.clear();
+		pending.clear();
+		primary = null;
+	}
+
+	/**
+	 * Releases the recognizers
+	 */
+	public void destroy() {
+		cancel();
+		for(RecognitionSession session: sessions.values())
+			session.destroy();
+		sessions.clear();
+		sessionLocales.clear();
+	}
+
+	/**
+	 * Starts the session for a language, creating it if it is the first time that the language is used
+	 * @param primary true if the events other than results and errors must be forwarded from this session
+	 */
+	private void startSession(Locale locale, boolean primary) {
+		RecognitionSession session = sessions.get(locale);
+		if(session==null) {
+			session = new RecognitionSession(ctx, locale.toString(), this);
+			sessions.put(locale, session);
+			sessionLocales.put(session, locale);
+		}
+		session.setForward(primary ? forward : null);
+		if(primary)
+			this.primary = session;
+		running.add(session);
+		session.start(intents.get(locale));
+	}
+
+	@Override
+	public void onSessionResults(RecognitionSession session, ArrayList<String> nBestList, float[] nBestConfidences) {
+		if(decided)
+			return;
+		running.remove(session);
+		Locale locale = sessionLocales.get(session);
+
+		if(nBestList!=null && nBestList.size()>0) {
+			float confidence = (nBestConfidences==null || nBestConfidences.length==0) ? -1 : nBestConfidences[0];
+
+			//Without confidences there is nothing to compare, so the first result is taken
+			if(confidence<0 || confidence>=confidenceBar) {
+				finish(nBestList, nBestConfidences, locale);
+				return;
+			}
+			if(bestList==null || confidence>bestConfidences[0]) {
+				bestList = nBestList;
+				bestConfidences = nBestConfidences;
+				bestLocale = locale;
+			}
+		}
+		handOver(session);
+		next();
+	}
+
+	@Override
+	public void onSessionError(RecognitionSession session, int errorCode) {
+		if(decided)
+			return;
+		running.remove(session);
+		handOver(session);
+		Locale locale = sessionLocales.get(session);
+
+		//The device does not allow several sessions at the same time, so the language is tried later
+		if(concurrent && !running.isEmpty()
+				&& (errorCode==SpeechRecognizer.ERROR_RECOGNIZER_BUSY || errorCode==SpeechRecognizer.ERROR_CLIENT)) {
+			Log.d(LIB_LOGTAG, "Concurrent recognition not supported, falling back to sequential recognition");
+			concurrent = false;
+			int position = 0;	//It is tried as soon as possible according to its preference
+			while(position<pending.size() && order.indexOf(pending.get(position))<order.indexOf(locale))
+				position++;
+			pending.add(position, locale);
+			return;
+		}
+
+		if(errorCode!=SpeechRecognizer.ERROR_NO_MATCH && errorCode!=SpeechRecognizer.ERROR_SPEECH_TIMEOUT)
+			lastError = errorCode;
+		next();
+	}
+
+	/**
+	 * When no session is running, tries the next language (sequential mode) or provides the best results
+	 */
+	private void next() {
+		if(!running.isEmpty())
+			return;
+
+		if(!pending.isEmpty()) {
+			Locale locale = pending.removeFirst();
+			Log.d(LIB_LOGTAG, "Trying " + locale + " with the next utterance");
+			listener.onMultiLocaleNextLocale(locale);
+			startSession(locale, true);
+		}
+		else if(bestList!=null)
+			finish(bestList, bestConfidences, bestLocale);
+		else {
+			decided = true;
+			listener.onMultiLocaleError(lastError);
+		}
+	}
+
+	/**
+	 * When the primary session finishes, another running session (if any) becomes the primary, so that the
+	 * events of the recognition that goes on are not lost (e.g. when the primary one fails with ERROR_RECOGNIZER_BUSY)
+	 */
+	private void handOver(RecognitionSession finished) {
+		if(finished==primary && !running.isEmpty()) {
+			primary = running.get(0);
+			primary.takeOver(finished, forward);
+		}
+	}
+
+	/**
+	 * Cancels the sessions that are still running and provides the results
+	 */
+	private void finish(ArrayList<String> nBestList, float[] nBestConfidences, Locale locale) {
+		cancel();
+		lastDetected = locale;
+		Log.d(LIB_LOGTAG, "Recognized in " + locale + (concurrent ? " (concurrent)" : " (sequential)"));
+		listener.onMultiLocaleResults(nBestList, nBestConfidences, locale);
+	}
+}
@@ -1,30 +1,30 @@
-package voiceactivity.lib;
-
-
-//This file is part of the gast-lib project, and can be found here:
-//https://github.com/gast-lib/gast-lib/blob/master/library/src/root/gast/speech/
-
-/*
-* Copyright 2011 Greg Milette and Adam Stroud
-*
-* Licensed under the Apache License, Version 2.0 (the "License");
-* you may not use this file except in compliance with the License.
-* You may obtain a copy of the License at
-*
-* http://www.apache.org/licenses/LICENSE-2.0
-*
-* Unless required by applicable law or agreed to in writing, software
-* distributed under the License is distributed on an "AS IS" BASIS,
-* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-* See the License for the specific language governing permissions and
-* limitations under the License.
-*/
-
-
-/**
-* @author Greg Milette &#60;<a href="mailto:gregorym@gmail.com">gregorym@gmail.com</a>&#62;
-*/
-public interface OnLanguageDetailsListener
-{
-    public void onLanguageDetailsReceived(LanguageDetailsChecker data);
-}
+package voiceactivity.lib;
+
+
+//This file is part of the gast-lib project, and can be found here:
+//https://github.com/gast-lib/gast-lib/blob/master/library/src/root/gast/speech/
+
+/*
+* Copyright 2011 Greg Milette and Adam Stroud
+*
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+
+
+/**
+* @author Greg Milette &#60;<a href="mailto:gregorym@gmail.com">gregorym@gmail.com</a>&#62;
+*/
+public interface OnLanguageDetailsListener
+{
+    public void onLanguageDetailsReceived(LanguageDetailsChecker data);
+}
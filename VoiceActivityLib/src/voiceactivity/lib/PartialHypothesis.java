@@ -0,0 +1,140 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Incremental recognition hypothesis delivered while the user is still speaking.
+ * Besides the text, it indicates which part of it has not changed with respect to the
+ * previous hypothesis and since when, so that it is possible to decide whether it
+ * is worth starting to process it before the final results arrive.
+ *
+ * Times are expressed in milliseconds of <code>SystemClock.elapsedRealtime()</code>.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#processAsrPartialResults(PartialHypothesis)
+ */
+public class PartialHypothesis {
+
+	private final String text;
+	private final String stablePrefix;
+	private final boolean stable;
+	private final long timestamp;
+	private final long firstSeen;
+	private final long sessionStart;
+
+	/**
+	 * Creates a partial hypothesis
+	 * @param text text recognized so far
+	 * @param stablePrefix words at the beginning of the text that are the same as in the previous hypothesis
+	 * @param stable true if the whole text is the same as in the previous hypothesis
+	 * @param timestamp time at which the hypothesis was received
+	 * @param firstSeen time at which this same text was received for the first time
+	 * @param sessionStart time at which the recognition started
+	 */
+	public PartialHypothesis(String text, String stablePrefix, boolean stable, long timestamp, long firstSeen, long sessionStart) {
+		this.text = text;
+		this.stablePrefix = stablePrefix;
+		this.stable = stable;
+		this.timestamp = timestamp;
+		this.firstSeen = firstSeen;
+		this.sessionStart = sessionStart;
+	}
+
+	/**
+	 * @return the text recognized so far
+	 */
+	public String getText() {
+		return text;
+	}
+
+	/**
+	 * @return the words at the beginning of the text that did not change with respect to the previous hypothesis
+	 */
+	public String getStablePrefix() {
+		return stablePrefix;
+	}
+
+	/**
+	 * @return true if the text is exactly the same as in the previous hypothesis
+	 */
+	public boolean isStable() {
+		return stable;
+	}
+
+	/**
+	 * @return the time at which the hypothesis was received
+	 */
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	/**
+	 * @return the time at which this same text was received for the first time
+	 */
+	public long getFirstSeen() {
+		return firstSeen;
+	}
+
+	/**
+	 * @return the time during which the text has remained unchanged
+	 */
+	public long getStableTime() {
+		return timestamp - firstSeen;
+	}
+
+	/**
+	 * @return the time elapsed since the recognition started
+	 */
+	public long getElapsedTime() {
+		return timestamp - sessionStart;
+	}
+
+	/**
+	 * Computes the words that two consecutive hypotheses have in common at the beginning
+	 * @param previous previous hypothesis (it may be null)
+	 * @param current current hypothesis
+	 * @return the common words, which may be an empty string
+	 */
+	static String commonPrefix(String previous, String current) {
+		if(previous==null)
+			return "";
+
+		int length = Math.min(previous.length(), current.length());
+		int i = 0;
+		while(i<length && previous.charAt(i)==current.charAt(i))
+			i++;
+
+		//Only whole words are considered
+		boolean wordBoundary = (i==previous.length() || previous.charAt(i)==' ')
+				&& (i==current.length() || current.charAt(i)==' ');
+		if(!wordBoundary)
+			i = current.lastIndexOf(' ', i - 1) + 1;
+
+		return current.substring(0, i).trim();
+	}
+
+	@Override
+	public String toString() {
+		return text + (stable ? " (stable for " + getStableTime() + " ms)" : "");
+	}
+}
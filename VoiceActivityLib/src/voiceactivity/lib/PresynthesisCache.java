@@ -0,0 +1,244 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Audio of the prompts that are likely to be played next (e.g. the beginning of the answer to the query being recognized),
+ * synthesized by <code>VoiceActivity</code> while the user speaks, when the synthesizer is idle. When the next prompt starts with 
+ * one of them, its audio is played directly, and only the rest of the prompt is synthesized.
+ *
+ * Unlike <code>PromptCache</code>, the audio is only kept during the execution: the index is kept in memory, bounded by a number
+ * of prompts (the least recently used are deleted), and the files are deleted when the cache is created and cleared. 
+ * A prompt whose synthesis fails is not reserved again until <code>clearFailures</code> is invoked (once per recognition),
+ * so that a synthesizer that cannot write the files is not kept busy. It can be used from any thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setLikelyPrompts(String, String...)
+ */
+public class PresynthesisCache {
+
+	public static final int DEFAULT_CAPACITY = 8;
+
+	private static final String EXTENSION = ".wav";
+
+	/**
+	 * Audio of a prompt
+	 */
+	private static class Entry {
+		final File file;
+		boolean ready = false;		//False while it is being synthesized
+		boolean used = false;
+
+		Entry(File file) {
+			this.file = file;
+		}
+	}
+
+	private final File directory;
+	private final int capacity;
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);	//In access order
+	private final Set<String> failed = new HashSet<String>();		//Keys whose synthesis failed since the last clearFailures
+
+	private int synthesized = 0;
+	private int hits = 0;
+	private int misses = 0;
+	private int wasted = 0;
+	private int failures = 0;
+
+	/**
+	 * @param directory directory for the audio files (it is created if it does not exist, and emptied if it does)
+	 * @param capacity maximum number of prompts
+	 */
+	public PresynthesisCache(File directory, int capacity) {
+		this.directory = directory;
+		this.capacity = Math.max(1, capacity);
+		if(!directory.isDirectory())
+			directory.mkdirs();
+		deleteFiles();
+	}
+
+	/**
+	 * Reserves a file to synthesize a prompt
+	 * @param key key of the prompt, see <code>PromptCache.getKey</code>
+	 * @return the file, or null if the prompt is already synthesized, is being synthesized or its synthesis failed
+	 */
+	public synchronized File reserve(String key) {
+		if(entries.containsKey(key) || failed.contains(key))
+			return null;
+		Entry entry = new Entry(new File(directory, key + EXTENSION));
+		entries.put(key, entry);
+		
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while(entries.size()>capacity && it.hasNext()) {
+			Entry eldest = it.next().getValue();
+			if(!eldest.ready)
+				continue;		//Still being synthesized
+			it.remove();
+			eldest.file.delete();
+			if(!eldest.used)
+				wasted++;
+		}
+		return entry.file;
+	}
+
+	/**
+	 * Marks the synthesis of a prompt as finished. If the file is empty, the synthesis is considered failed.
+	 */
+	public synchronized void commit(String key) {
+		Entry entry = entries.get(key);
+		if(entry==null)
+			return;
+		if(entry.file.length()>0) {
+			entry.ready = true;
+			synthesized++;
+		}
+		else
+			abort(key);
+	}
+
+	/**
+	 * Discards a prompt whose synthesis failed, so that it is not reserved again until <code>clearFailures</code> is invoked
+	 */
+	public synchronized void abort(String key) {
+		Entry entry = entries.remove(key);
+		if(entry!=null) {
+			entry.file.delete();
+			failed.add(key);
+			failures++;
+		}
+	}
+
+	/**
+	 * Allows the prompts whose synthesis failed to be reserved again (e.g. when a new recognition starts)
+	 */
+	public synchronized void clearFailures() {
+		failed.clear();
+	}
+
+	/**
+	 * Discards the prompts being synthesized (e.g. because the synthesizer has been stopped), so they can be synthesized again
+	 */
+	public synchronized void abortPending() {
+		Iterator<Entry> it = entries.values().iterator();
+		while(it.hasNext()) {
+			Entry entry = it.next();
+			if(!entry.ready) {
+				it.remove();
+				entry.file.delete();
+			}
+		}
+	}
+
+	/**
+	 * @return true if a prompt is being synthesized
+	 */
+	public synchronized boolean hasPending() {
+		for(Entry entry: entries.values())
+			if(!entry.ready)
+				return true;
+		return false;
+	}
+
+	/**
+	 * Looks for the audio of a prompt
+	 * @return the audio file, or null if it has not been synthesized
+	 */
+	public synchronized File get(String key) {
+		Entry entry = entries.get(key);
+		return entry!=null && entry.ready ? entry.file : null;
+	}
+
+	/**
+	 * Records whether a prompt that starts with a likely prompt has been played with its audio
+	 */
+	public synchronized void recordUse(String key, boolean hit) {
+		if(hit) {
+			hits++;
+			Entry entry = entries.get(key);
+			if(entry!=null)
+				entry.used = true;
+		}
+		else
+			misses++;
+	}
+
+	/**
+	 * Deletes all the audio
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		failed.clear();
+		deleteFiles();
+	}
+
+	private void deleteFiles() {
+		File[] files = directory.listFiles();
+		if(files!=null)
+			for(File file: files)
+				file.delete();
+	}
+
+	/**
+	 * @return number of prompts played starting with the audio of a likely prompt
+	 */
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return number of prompts that started with a likely prompt but were played without its audio (it was not synthesized yet)
+	 */
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return number of likely prompts deleted without having been played
+	 */
+	public synchronized int getWastedCount() {
+		return wasted;
+	}
+
+	/**
+	 * @return number of syntheses that failed or wrote nothing
+	 */
+	public synchronized int getFailureCount() {
+		return failures;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return entries.size() + " prompts, " + synthesized + " synthesized, " + hits + " hits, " + misses + " misses, " + wasted + " wasted, " 
+				+ failures + " failures";
+	}
+}
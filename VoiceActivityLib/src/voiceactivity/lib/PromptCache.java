@@ -0,0 +1,278 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.File;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Cache of the audio of the fixed prompts of an application (e.g. the initial prompt or the error messages), so that
+ * they are synthesized once and played back directly afterwards, which starts sooner than synthesizing them again.
+ *
+ * Only the texts registered with <code>addPrompt</code> are cached; the rest are always synthesized. The audio is kept
+ * in files named after a hash of the text, the locale and the voice (engine), so a prompt is synthesized again if any
+ * of them changes. The total size of the files is bounded: when it is exceeded, the least recently played prompts
+ * are deleted. The files are kept between executions.
+ *
+ * The files are written and read by the TTS engine, which runs in its own process, so the directory must be one that
+ * the engine can access (see <code>VoiceActivity.setPromptCache</code>). If the synthesis of a prompt fails or writes
+ * nothing, the prompt is not synthesized to a file again while the cache is open, so that a location or engine that
+ * does not work does not get a new synthesis every time the prompt is played.
+ *
+ * It does not use the synthesizer itself, it only manages the files (see <code>VoiceActivity.setPromptCache</code>).
+ * It can be used from any thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setPromptCache(long)
+ */
+public class PromptCache {
+
+	private static final String EXTENSION = ".wav";
+	private static final String TEMPORARY_EXTENSION = ".tmp";
+
+	private final File directory;
+	private final long maxBytes;
+	private long totalBytes = 0;
+
+	private final LinkedHashMap<String, File> files = new LinkedHashMap<String, File>(16, 0.75f, true);	//In access order
+	private final Set<String> pending = new HashSet<String>();		//Keys being synthesized
+	private final Set<String> failed = new HashSet<String>();		//Keys whose synthesis to a file failed
+	private final Set<String> prompts = new HashSet<String>();
+
+	private int hits = 0;
+	private int misses = 0;
+	private int evictions = 0;
+	private int failures = 0;
+
+	/**
+	 * Opens the cache, reusing the files that were stored in the directory in previous executions
+	 * @param directory directory in which the audio files are stored (it is created if it does not exist)
+	 * @param maxBytes maximum total size of the audio files
+	 */
+	public PromptCache(File directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+		directory.mkdirs();
+
+		File[] stored = directory.listFiles();
+		if(stored!=null) {
+			Arrays.sort(stored, new Comparator<File>() {	//The least recently used first
+				@Override
+				public int compare(File a, File b) {
+					long difference = a.lastModified() - b.lastModified();
+					return difference<0 ? -1 : (difference>0 ? 1 : 0);
+				}
+			});
+			for(File file: stored) {
+				String name = file.getName();
+				if(name.endsWith(EXTENSION)) {
+					files.put(name.substring(0, name.length() - EXTENSION.length()), file);
+					totalBytes += file.length();
+				}
+				else if(name.endsWith(TEMPORARY_EXTENSION))
+					file.delete();		//Synthesis interrupted in a previous execution
+			}
+		}
+		evict();
+	}
+
+	/**
+	 * Registers a fixed text, so that its audio is cached
+	 */
+	public synchronized void addPrompt(String text) {
+		prompts.add(text);
+	}
+
+	/**
+	 * @return true if the text has been registered to be cached
+	 */
+	public synchronized boolean isPrompt(String text) {
+		return prompts.contains(text);
+	}
+
+	/**
+	 * @return the key of the audio of a text synthesized with a locale and voice
+	 */
+	public static String getKey(String text, Locale locale, String voice) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			byte[] hash = digest.digest((locale + "|" + voice + "|" + text).getBytes("UTF-8"));
+			StringBuilder key = new StringBuilder(hash.length * 2);
+			for(byte b: hash) {
+				key.append(Character.forDigit((b >> 4) & 0xf, 16));
+				key.append(Character.forDigit(b & 0xf, 16));
+			}
+			return key.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);		//SHA-1 is always available
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);		//And so is UTF-8
+		}
+	}
+
+	/**
+	 * Looks for the audio of a prompt, marking it as the most recently used
+	 * @return the audio file, or null if it is not in the cache
+	 */
+	public synchronized File get(String key) {
+		File file = files.get(key);
+		if(file!=null && !file.exists()) {		//Deleted from outside (e.g. the system cleared the cache directory)
+			files.remove(key);
+			totalBytes = 0;
+			for(File stored: files.values())
+				totalBytes += stored.length();
+			file = null;
+		}
+		if(file==null)
+			misses++;
+		else {
+			hits++;
+			file.setLastModified(System.currentTimeMillis());	//Keeps the order of use for the next executions
+		}
+		return file;
+	}
+
+	/**
+	 * Reserves the file in which the audio of a prompt must be synthesized
+	 * @return the temporary file, or null if the prompt is already cached, is being synthesized or could not be synthesized before
+	 */
+	public synchronized File reserve(String key) {
+		if(files.containsKey(key) || pending.contains(key) || failed.contains(key))
+			return null;
+		pending.add(key);
+		return new File(directory, key + TEMPORARY_EXTENSION);
+	}
+
+	/**
+	 * Adds to the cache the audio synthesized in the file reserved for a prompt, deleting the least recently used prompts if needed.
+	 * If the file is empty, the synthesis is considered failed.
+	 */
+	public synchronized void commit(String key) {
+		if(!pending.remove(key))
+			return;
+		File temporary = new File(directory, key + TEMPORARY_EXTENSION);
+		File file = new File(directory, key + EXTENSION);
+		if(temporary.length()>0 && temporary.renameTo(file)) {
+			files.put(key, file);
+			totalBytes += file.length();
+			evict();
+		}
+		else {
+			temporary.delete();
+			fail(key);
+		}
+	}
+
+	/**
+	 * Discards the file reserved for a prompt because the synthesis failed, so that it is not reserved again
+	 */
+	public synchronized void abort(String key) {
+		if(pending.remove(key)) {
+			new File(directory, key + TEMPORARY_EXTENSION).delete();
+			fail(key);
+		}
+	}
+
+	/**
+	 * Discards the files reserved for the prompts being synthesized because the synthesizer has been stopped,
+	 * so they can be synthesized again
+	 */
+	public synchronized void abortPending() {
+		for(String key: pending)
+			new File(directory, key + TEMPORARY_EXTENSION).delete();
+		pending.clear();
+	}
+
+	private void fail(String key) {
+		failed.add(key);
+		failures++;
+	}
+
+	/**
+	 * Deletes all the audio files
+	 */
+	public synchronized void clear() {
+		for(File file: files.values())
+			file.delete();
+		files.clear();
+		totalBytes = 0;
+	}
+
+	/**
+	 * Deletes the least recently used prompts until the total size is within the limit
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, File>> entries = files.entrySet().iterator();
+		while(totalBytes>maxBytes && entries.hasNext()) {
+			File file = entries.next().getValue();
+			totalBytes -= file.length();
+			file.delete();
+			entries.remove();
+			evictions++;
+		}
+	}
+
+	/**
+	 * @return total size of the audio files
+	 */
+	public synchronized long getSizeBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * @return number of times that a prompt has been played from the cache
+	 */
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return number of times that a prompt had to be synthesized because it was not in the cache
+	 */
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return number of syntheses to a file that failed or wrote nothing
+	 */
+	public synchronized int getFailureCount() {
+		return failures;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return files.size() + " prompts, " + totalBytes + " bytes, " + hits + " hits, " + misses + " misses, " + evictions + " evictions, " + failures + " failures";
+	}
+}
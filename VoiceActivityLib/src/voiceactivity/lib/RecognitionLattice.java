@@ -0,0 +1,420 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Word-level view of the N-best recognition results, built once per result so that the consumers (rescorers,
+ * command and entity spotting, queries...) do not have to split and compare the strings again.
+ *
+ * Each hypothesis is stored as a sequence of word ids of a {@link TokenVocabulary} in a single <code>int[]</code>,
+ * along with its confidence. The hypotheses are accessed by rank (0 is the best one); the first k ranks are the
+ * top-k paths, and reordering them (e.g. after rescoring) only changes a permutation.
+ *
+ * The hypotheses are also aligned word by word with the best one, giving a confusion network: for each word (slot)
+ * of the best hypothesis, the alternatives that the other hypotheses have in that position and their confidences,
+ * obtained by adding the confidences of the hypotheses that agree on them. The network is computed the first time
+ * that it is used, and again if the best hypothesis changes, in buffers allocated with the lattice (sized from the
+ * longest hypothesis, so that any of them can become the best one).
+ *
+ * Apart from <code>getText</code>, <code>getNBestList</code> and <code>getConfidences</code>, which are kept for
+ * the consumers of plain strings, reading the lattice (including the confusion network) does not allocate memory.
+ * It must be used from one thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#processAsrResults(RecognitionLattice)
+ */
+public class RecognitionLattice {
+
+	private final TokenVocabulary vocabulary;
+	private final String[] texts;			//Indexed by the original position of the hypotheses
+	private final int[] tokens;
+	private final int[] starts;				//Position in tokens of the first word of each hypothesis (and of the end)
+	private final float[] confidences;
+	private boolean hasConfidences;
+	private final int[] order;				//Original position of the hypothesis of each rank
+
+	private int networkBest = -1;			//Original position of the hypothesis from which the network was built
+	private final int[] slotStarts;
+	private final int[] slotTokens;
+	private final float[] slotConfidences;
+
+	//Scratch space of buildNetwork and align
+	private final float[] weights;
+	private final int[] aligned;			//Word of each hypothesis in each slot
+	private final int[] cost;				//Two rows of the edit distance table
+	private final byte[] moves;				//Full table of moves of the edit distance
+	private final int[] candidates;
+	private final float[] candidateWeights;
+
+	private RecognitionLattice(TokenVocabulary vocabulary, String[] texts, int[] tokens, int[] starts, float[] confidences, boolean hasConfidences) {
+		this.vocabulary = vocabulary;
+		this.texts = texts;
+		this.tokens = tokens;
+		this.starts = starts;
+		this.confidences = confidences;
+		this.hasConfidences = hasConfidences;
+		order = new int[texts.length];
+		for(int i=0; i<order.length; i++)
+			order[i] = i;
+
+		int n = texts.length;
+		int maxTokens = 0;
+		for(int i=0; i<n; i++)
+			maxTokens = Math.max(maxTokens, starts[i + 1] - starts[i]);
+		slotStarts = new int[maxTokens + 1];
+		slotTokens = new int[n * maxTokens];
+		slotConfidences = new float[n * maxTokens];
+		weights = new float[n];
+		aligned = new int[n * maxTokens];
+		cost = new int[(maxTokens + 1) * 2];
+		moves = new byte[(maxTokens + 1) * (maxTokens + 1)];
+		candidates = new int[n];
+		candidateWeights = new float[n];
+	}
+
+	/**
+	 * Builds the lattice of the results provided by a recognizer
+	 * @param vocabulary vocabulary to which the words are added
+	 * @param nBestList recognition results, from the best to the worst (it can be null)
+	 * @param nBestConfidences their confidences (null if the recognizer does not provide them)
+	 */
+	public static RecognitionLattice fromResults(TokenVocabulary vocabulary, List<String> nBestList, float[] nBestConfidences) {
+		int n = nBestList==null ? 0 : nBestList.size();
+		String[] texts = new String[n];
+		int[] starts = new int[n + 1];
+		for(int i=0; i<n; i++) {
+			texts[i] = nBestList.get(i)==null ? "" : nBestList.get(i);
+			starts[i+1] = starts[i] + TokenVocabulary.countWords(texts[i]);
+		}
+		int[] tokens = new int[starts[n]];
+		for(int i=0; i<n; i++)
+			vocabulary.internWords(texts[i], tokens, starts[i]);
+
+		boolean hasConfidences = nBestConfidences!=null && nBestConfidences.length>=n;
+		float[] confidences = new float[n];
+		for(int i=0; i<n; i++)
+			confidences[i] = hasConfidences ? nBestConfidences[i] : -1;
+		return new RecognitionLattice(vocabulary, texts, tokens, starts, confidences, hasConfidences);
+	}
+
+	public TokenVocabulary getVocabulary() {
+		return vocabulary;
+	}
+
+	/**
+	 * @return number of hypotheses
+	 */
+	public int size() {
+		return order.length;
+	}
+
+	/**
+	 * @return the text of the hypothesis with a rank as it was provided by the recognizer
+	 */
+	public String getText(int rank) {
+		return texts[order[rank]];
+	}
+
+	/**
+	 * @return number of words of the hypothesis with a rank
+	 */
+	public int getTokenCount(int rank) {
+		return starts[order[rank] + 1] - starts[order[rank]];
+	}
+
+	/**
+	 * @return id of a word of the hypothesis with a rank
+	 */
+	public int getToken(int rank, int position) {
+		return tokens[starts[order[rank]] + position];
+	}
+
+	/**
+	 * @return a word (lowercased) of the hypothesis with a rank
+	 */
+	public String getWord(int rank, int position) {
+		return vocabulary.getWord(getToken(rank, position));
+	}
+
+	/**
+	 * @return true if the recognizer provided confidences or they have been set (e.g. by a rescorer)
+	 */
+	public boolean hasConfidences() {
+		return hasConfidences;
+	}
+
+	/**
+	 * @return the confidence of the hypothesis with a rank, or -1 if there are no confidences
+	 */
+	public float getConfidence(int rank) {
+		return confidences[order[rank]];
+	}
+
+	/**
+	 * Changes the confidence of a hypothesis. Once a confidence is set, the lattice is considered to have confidences
+	 * (the rest of the hypotheses must be given one too).
+	 */
+	public void setConfidence(int rank, float confidence) {
+		confidences[order[rank]] = confidence;
+		hasConfidences = true;
+	}
+
+	/**
+	 * Sorts the hypotheses from the highest to the lowest confidence. The original order is kept for equal confidences.
+	 */
+	public void sortByConfidence() {
+		//Insertion sort: the lists are short
+		for(int i=1; i<order.length; i++) {
+			int hypothesis = order[i];
+			int j = i - 1;
+			while(j>=0 && confidences[order[j]]<confidences[hypothesis]) {
+				order[j+1] = order[j];
+				j--;
+			}
+			order[j+1] = hypothesis;
+		}
+	}
+
+	/**
+	 * Looks for a phrase in a hypothesis
+	 * @param rank rank of the hypothesis
+	 * @param phrase word ids of the phrase (e.g. obtained with <code>TokenVocabulary.internPhrase</code>)
+	 * @return the position of the first word of the phrase in the hypothesis, or -1 if it does not contain it
+	 */
+	public int indexOf(int rank, int[] phrase) {
+		int start = starts[order[rank]];
+		int last = starts[order[rank] + 1] - phrase.length;
+		for(int i=start; i<=last; i++) {
+			int k = 0;
+			while(k<phrase.length && tokens[i + k]==phrase[k])
+				k++;
+			if(k==phrase.length)
+				return i - start;
+		}
+		return -1;
+	}
+
+	/**
+	 * Writes the words (lowercased) of a hypothesis with a separator between them
+	 * @param rank rank of the hypothesis
+	 * @param separator text between the words (e.g. " " or "%20")
+	 * @param out where the words are appended
+	 */
+	public void appendWords(int rank, String separator, StringBuilder out) {
+		for(int i=0; i<getTokenCount(rank); i++) {
+			if(i>0)
+				out.append(separator);
+			out.append(getWord(rank, i));
+		}
+	}
+
+	/**
+	 * @return the texts of the hypotheses in their current order
+	 */
+	public ArrayList<String> getNBestList() {
+		ArrayList<String> nBestList = new ArrayList<String>(order.length);
+		for(int rank=0; rank<order.length; rank++)
+			nBestList.add(getText(rank));
+		return nBestList;
+	}
+
+	/**
+	 * @return the confidences of the hypotheses in their current order, or null if there are no confidences
+	 */
+	public float[] getConfidences() {
+		if(!hasConfidences)
+			return null;
+		float[] nBestConfidences = new float[order.length];
+		for(int rank=0; rank<order.length; rank++)
+			nBestConfidences[rank] = getConfidence(rank);
+		return nBestConfidences;
+	}
+
+	/**
+	 * @return number of slots of the confusion network, i.e. number of words of the best hypothesis
+	 */
+	public int getSlotCount() {
+		return order.length==0 ? 0 : getTokenCount(0);
+	}
+
+	/**
+	 * @return number of different words (including EPSILON) proposed for a slot
+	 */
+	public int getAlternativeCount(int slot) {
+		buildNetwork();
+		return slotStarts[slot + 1] - slotStarts[slot];
+	}
+
+	/**
+	 * @param alternative 0 for the alternative with the highest confidence
+	 * @return id of an alternative for a slot, or <code>TokenVocabulary.EPSILON</code> if it is the absence of a word
+	 */
+	public int getAlternative(int slot, int alternative) {
+		buildNetwork();
+		return slotTokens[slotStarts[slot] + alternative];
+	}
+
+	/**
+	 * @return the confidence of an alternative for a slot
+	 */
+	public float getAlternativeConfidence(int slot, int alternative) {
+		buildNetwork();
+		return slotConfidences[slotStarts[slot] + alternative];
+	}
+
+	/**
+	 * @return the confidence of the word of the best hypothesis in a slot
+	 */
+	public float getTokenConfidence(int slot) {
+		buildNetwork();
+		int token = getToken(0, slot);
+		for(int a=slotStarts[slot]; a<slotStarts[slot + 1]; a++)
+			if(slotTokens[a]==token)
+				return slotConfidences[a];
+		return 0;
+	}
+
+	/**
+	 * Aligns every hypothesis with the best one (minimum number of substitutions, insertions and deletions of words)
+	 * and adds its weight to the word that it has in each slot. The words inserted in other hypotheses are ignored.
+	 */
+	private void buildNetwork() {
+		if(order.length==0 || networkBest==order[0])
+			return;
+		networkBest = order[0];
+
+		//Weights of the hypotheses: their confidences (adding up to 1 at most) or, without them, their ranks
+		int n = order.length;
+		float total = 0;
+		for(int rank=0; rank<n; rank++) {
+			weights[rank] = hasConfidences ? Math.max(0, getConfidence(rank)) : 1f / (rank + 1);
+			total += weights[rank];
+		}
+		if(!hasConfidences || total>1)
+			for(int rank=0; rank<n; rank++)
+				weights[rank] = total==0 ? 0 : weights[rank] / total;
+
+		int slots = getSlotCount();
+		for(int rank=0; rank<n; rank++)
+			align(rank, rank * slots);
+
+		//Alternatives of each slot, sorted by confidence
+		int position = 0;
+		for(int s=0; s<slots; s++) {
+			slotStarts[s] = position;
+			int count = 0;
+			for(int rank=0; rank<n; rank++) {
+				int token = aligned[rank * slots + s];
+				int c = 0;
+				while(c<count && candidates[c]!=token)
+					c++;
+				if(c==count) {
+					candidates[count] = token;
+					candidateWeights[count++] = 0;
+				}
+				candidateWeights[c] += weights[rank];
+			}
+			for(int i=1; i<count; i++) {
+				int token = candidates[i];
+				float weight = candidateWeights[i];
+				int j = i - 1;
+				while(j>=0 && candidateWeights[j]<weight) {
+					candidates[j+1] = candidates[j];
+					candidateWeights[j+1] = candidateWeights[j];
+					j--;
+				}
+				candidates[j+1] = token;
+				candidateWeights[j+1] = weight;
+			}
+			System.arraycopy(candidates, 0, slotTokens, position, count);
+			System.arraycopy(candidateWeights, 0, slotConfidences, position, count);
+			position += count;
+		}
+		slotStarts[slots] = position;
+	}
+
+	/**
+	 * Aligns a hypothesis with the best one with the edit distance between their words
+	 * @param rank rank of the hypothesis
+	 * @param offset position in <code>aligned</code> that receives the word of the hypothesis aligned with each word 
+	 * of the best one (EPSILON if none)
+	 */
+	private void align(int rank, int offset) {
+		int slots = getSlotCount();
+		int m = getTokenCount(rank);
+		if(rank==0) {
+			for(int s=0; s<slots; s++)
+				aligned[offset + s] = getToken(0, s);
+			return;
+		}
+
+		//Full table of moves (0 match/substitution, 1 deletion, 2 insertion) to trace the alignment back
+		for(int s=0; s<=slots; s++) {
+			cost[s] = s;
+			moves[s] = 1;
+		}
+		for(int j=1; j<=m; j++) {
+			int current = (j & 1) * (slots + 1);
+			int previous = ((j - 1) & 1) * (slots + 1);
+			cost[current] = j;
+			moves[j * (slots + 1)] = 2;
+			for(int s=1; s<=slots; s++) {
+				int substitution = cost[previous + s - 1] + (getToken(0, s - 1)==getToken(rank, j - 1) ? 0 : 1);
+				int deletion = cost[current + s - 1] + 1;
+				int insertion = cost[previous + s] + 1;
+				byte move = 0;
+				int best = substitution;
+				if(deletion<best) {
+					best = deletion;
+					move = 1;
+				}
+				if(insertion<best) {
+					best = insertion;
+					move = 2;
+				}
+				cost[current + s] = best;
+				moves[j * (slots + 1) + s] = move;
+			}
+		}
+
+		int s = slots, j = m;
+		while(s>0) {
+			byte move = j==0 ? 1 : moves[j * (slots + 1) + s];
+			if(move==0) {
+				aligned[offset + s - 1] = getToken(rank, j - 1);
+				s--;
+				j--;
+			}
+			else if(move==1) {
+				aligned[offset + s - 1] = TokenVocabulary.EPSILON;
+				s--;
+			}
+			else
+				j--;
+		}
+	}
+}
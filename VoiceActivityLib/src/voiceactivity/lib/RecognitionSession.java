@@ -0,0 +1,236 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.SpeechRecognizer;
+
+/**
+ * Recognition carried out by its own <code>SpeechRecognizer</code>, so that several of them can be run at
+ * the same time (e.g. with different engines or languages).
+ *
+ * The final results and errors are passed to a {@link Callback}. The rest of the recognition events
+ * (sound level, partial results...) are only forwarded to another listener if the session is the primary
+ * one, so that they are not received several times when there are several sessions. When the primary
+ * session fails, another one can take over with {@link #takeOver(RecognitionSession, RecognitionListener)}.
+ *
+ * It must be used from the main thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class RecognitionSession implements RecognitionListener {
+
+	/**
+	 * Receives the outcome of a recognition session
+	 */
+	public interface Callback {
+		public void onSessionResults(RecognitionSession session, ArrayList<String> nBestList, float[] nBestConfidences);
+		public void onSessionError(RecognitionSession session, int errorCode);
+	}
+
+	private final String name;
+	private final SpeechRecognizer recognizer;
+	private final Callback callback;
+	private RecognitionListener forward = null;
+	private long startTime = -1;
+	private long endTime = -1;
+	private boolean finished = true;
+	private Bundle readyParams = null;		//Not null once the recognizer is ready for speech
+	private boolean speechBegun = false;
+	private boolean speechEnded = false;
+
+	/**
+	 * Creates the session and its recognizer
+	 * @param ctx context in which the recognizer is created
+	 * @param name name that identifies the session (e.g. the engine or language used)
+	 * @param callback object that receives the results and errors
+	 */
+	public RecognitionSession(Context ctx, String name, Callback callback) {
+		this.name = name;
+		this.callback = callback;
+		this.recognizer = SpeechRecognizer.createSpeechRecognizer(ctx);
+		this.recognizer.setRecognitionListener(this);
+	}
+
+	/**
+	 * Makes this session the primary one: the events other than results and errors are forwarded to the listener
+	 * @param forward listener that receives the events, or null to ignore them
+	 */
+	public void setForward(RecognitionListener forward) {
+		this.forward = forward;
+	}
+
+	/**
+	 * Makes this session the primary one in place of another one (e.g. because the other one has failed).
+	 * The events that mark the progress of the recognition (ready for speech, beginning and end of speech)
+	 * that this session has received but the other one had not are forwarded right away, so that the
+	 * listener receives them once and in order.
+	 * @param previous session that was the primary one until now
+	 * @param forward listener that receives the events
+	 */
+	public void takeOver(RecognitionSession previous, RecognitionListener forward) {
+		previous.setForward(null);
+		this.forward = forward;
+		if(finished || forward==null)
+			return;
+		if(readyParams!=null && previous.readyParams==null)
+			forward.onReadyForSpeech(readyParams);
+		if(speechBegun && !previous.speechBegun)
+			forward.onBeginningOfSpeech();
+		if(speechEnded && !previous.speechEnded)
+			forward.onEndOfSpeech();
+	}
+
+	/**
+	 * Starts recognizing
+	 * @param intent recognition intent
+	 */
+	public void start(Intent intent) {
+		startTime = SystemClock.elapsedRealtime();
+		endTime = -1;
+		finished = false;
+		readyParams = null;
+		speechBegun = false;
+		speechEnded = false;
+		recognizer.startListening(intent);
+	}
+
+	/**
+	 * Stops capturing audio, the results are still provided
+	 */
+	public void stopListening() {
+		if(!finished)
+			recognizer.stopListening();
+	}
+
+	/**
+	 * Cancels the recognition, no results nor errors are provided
+	 */
+	public void cancel() {
+		if(!finished) {
+			finished = true;
+			endTime = SystemClock.elapsedRealtime();
+			recognizer.cancel();
+		}
+	}
+
+	/**
+	 * Releases the recognizer. The session cannot be used afterwards.
+	 */
+	public void destroy() {
+		finished = true;
+		recognizer.destroy();
+	}
+
+	/**
+	 * @return the name of the session
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true if the session has provided its results or an error, or has been cancelled
+	 */
+	public boolean isFinished() {
+		return finished;
+	}
+
+	/**
+	 * @return the time (ms) from the start of the session to its results or error, or -1 if it has not finished
+	 */
+	public long getLatency() {
+		return endTime<0 ? -1 : endTime - startTime;
+	}
+
+	@Override
+	public void onResults(Bundle results) {
+		if(finished)
+			return;
+		finished = true;
+		endTime = SystemClock.elapsedRealtime();
+		if(results!=null)
+			callback.onSessionResults(this, results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION), VoiceActivity.getConfidenceScores(results));
+		else
+			callback.onSessionError(this, SpeechRecognizer.ERROR_NO_MATCH);
+	}
+
+	@Override
+	public void onError(int errorCode) {
+		if(finished)
+			return;
+		finished = true;
+		endTime = SystemClock.elapsedRealtime();
+		callback.onSessionError(this, errorCode);
+	}
+
+	@Override
+	public void onReadyForSpeech(Bundle params) {
+		readyParams = params!=null ? params : new Bundle();
+		if(forward!=null)
+			forward.onReadyForSpeech(params);
+	}
+
+	@Override
+	public void onBeginningOfSpeech() {
+		speechBegun = true;
+		if(forward!=null)
+			forward.onBeginningOfSpeech();
+	}
+
+	@Override
+	public void onRmsChanged(float rmsdB) {
+		if(forward!=null)
+			forward.onRmsChanged(rmsdB);
+	}
+
+	@Override
+	public void onBufferReceived(byte[] buffer) {
+		if(forward!=null)
+			forward.onBufferReceived(buffer);
+	}
+
+	@Override
+	public void onEndOfSpeech() {
+		speechEnded = true;
+		if(forward!=null)
+			forward.onEndOfSpeech();
+	}
+
+	@Override
+	public void onPartialResults(Bundle partialResults) {
+		if(forward!=null)
+			forward.onPartialResults(partialResults);
+	}
+
+	@Override
+	public void onEvent(int eventType, Bundle params) {
+		if(forward!=null)
+			forward.onEvent(eventType, params);
+	}
+}
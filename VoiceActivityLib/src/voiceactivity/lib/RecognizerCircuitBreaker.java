@@ -0,0 +1,141 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+/**
+ * Stops using a recognizer that keeps failing, so that it is not started again and again while it
+ * cannot work (e.g. the recognition service is busy or has crashed).
+ *
+ * After <code>failureThreshold</code> consecutive failures the breaker opens, and no recognition is allowed
+ * for <code>openTime</code> ms. Then one recognition is allowed to probe the recognizer: if it works the
+ * breaker closes, and if it fails it opens again. No other recognition is allowed while the probe is running;
+ * if it ends without telling whether the recognizer works (e.g. it is cancelled), another probe is allowed.
+ *
+ * It does not depend on Android, the times are given by the caller.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#getCircuitBreaker()
+ */
+public class RecognizerCircuitBreaker {
+
+	public static final int CLOSED = 0;		//The recognizer is used normally
+	public static final int OPEN = 1;		//The recognizer is not used
+	public static final int HALF_OPEN = 2;	//One recognition is allowed to check if the recognizer works
+
+	private int failureThreshold = 5;
+	private long openTime = 10000;
+
+	private int state = CLOSED;
+	private int failures = 0;
+	private long openedAt = 0;
+	private boolean probing = false;		//The probe allowed in HALF_OPEN is running
+	private int trips = 0;
+
+	/**
+	 * Sets when the breaker opens and for how long
+	 * @param failureThreshold number of consecutive failures that open the breaker
+	 * @param openTime ms during which the recognizer is not used once the breaker opens
+	 */
+	public void setThresholds(int failureThreshold, long openTime) {
+		this.failureThreshold = failureThreshold;
+		this.openTime = openTime;
+	}
+
+	/**
+	 * Checks whether a recognition would be allowed, without starting it
+	 * @param now time (ms) at which the recognition would start
+	 * @return true if the recognizer could be used
+	 */
+	public boolean allowRequest(long now) {
+		switch(state) {
+			case OPEN:
+				return now - openedAt >= openTime;
+			case HALF_OPEN:
+				return !probing;
+			default:
+				return true;
+		}
+	}
+
+	/**
+	 * Records that a recognition starts, if it is allowed. Once the breaker has been open for <code>openTime</code> ms,
+	 * the recognition that starts is the probe, and no other one is allowed until its outcome is recorded.
+	 * @param now current time (ms)
+	 * @return true if the recognition can start
+	 */
+	public boolean startRequest(long now) {
+		if(!allowRequest(now))
+			return false;
+		if(state!=CLOSED) {
+			state = HALF_OPEN;
+			probing = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Records that the recognizer has worked
+	 */
+	public void recordSuccess() {
+		state = CLOSED;
+		failures = 0;
+		probing = false;
+	}
+
+	/**
+	 * Records that a recognition has ended without telling whether the recognizer works (e.g. it has been
+	 * cancelled or it has failed with a non-recoverable error), so that another probe can be started
+	 */
+	public void recordAbort() {
+		probing = false;
+	}
+
+	/**
+	 * Records that the recognizer has failed
+	 * @param now current time (ms)
+	 */
+	public void recordFailure(long now) {
+		failures++;
+		probing = false;
+		if(state==HALF_OPEN || (state==CLOSED && failures>=failureThreshold)) {
+			state = OPEN;
+			openedAt = now;
+			trips++;
+		}
+	}
+
+	/**
+	 * @return CLOSED, OPEN or HALF_OPEN
+	 */
+	public int getState() {
+		return state;
+	}
+
+	/**
+	 * @return number of times that the breaker has opened
+	 */
+	public int getTrips() {
+		return trips;
+	}
+}
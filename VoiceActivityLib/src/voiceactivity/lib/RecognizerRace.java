@@ -0,0 +1,288 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.content.Intent;
+import android.speech.RecognitionListener;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+/**
+ * Runs an offline-preferred recognition and a network recognition of the same input at the same time,
+ * and keeps the first result whose confidence reaches a bar, cancelling the other recognition.
+ * If no result reaches the bar, the most confident one is used once both recognitions have finished.
+ * Without network, only the offline-preferred recognition is run.
+ *
+ * Not all devices can run two recognitions at the same time; in that case one of them fails with
+ * <code>ERROR_RECOGNIZER_BUSY</code> and the other one is used. The events other than results and errors
+ * (sound level, partial results...) are forwarded from the network recognition while it is running, and
+ * from the offline-preferred one once the network recognition has finished.
+ *
+ * It keeps statistics of the wins and latency of each engine. It must be used from the main thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class RecognizerRace implements RecognitionSession.Callback {
+
+	/**
+	 * Receives the outcome of the race
+	 */
+	public interface Listener {
+		public void onRaceResults(ArrayList<String> nBestList, float[] nBestConfidences, String engine);
+		public void onRaceError(int errorCode);
+	}
+
+	/** Same as RecognizerIntent.EXTRA_PREFER_OFFLINE, which is only available from API level 23 */
+	public static final String EXTRA_PREFER_OFFLINE = "android.speech.extra.PREFER_OFFLINE";
+
+	public static final String ENGINE_ONLINE = "online";
+	public static final String ENGINE_OFFLINE = "offline";
+
+	private static final String LIB_LOGTAG = "RECOGNIZERRACE";
+
+	private final RecognitionSession online;
+	private final RecognitionSession offline;
+	private final RecognitionListener forward;
+	private final Listener listener;
+	private float confidenceBar;
+
+	private boolean decided = true;
+	private RecognitionSession primary;			//Session from which the events are forwarded
+	private ArrayList<String> bestList;			//Best results received so far below the bar
+	private float[] bestConfidences;
+	private RecognitionSession bestSession;
+	private int lastError;
+
+	private final EngineStats onlineStats = new EngineStats(ENGINE_ONLINE);
+	private final EngineStats offlineStats = new EngineStats(ENGINE_OFFLINE);
+
+	/**
+	 * Creates the recognizers for the race
+	 * @param ctx context in which the recognizers are created
+	 * @param forward listener of the events other than the results and errors (e.g. the sound level)
+	 * @param listener object that receives the outcome of the race
+	 * @param confidenceBar confidence from which a result is accepted without waiting for the other engine
+	 */
+	public RecognizerRace(Context ctx, RecognitionListener forward, Listener listener, float confidenceBar) {
+		this.forward = forward;
+		this.listener = listener;
+		this.confidenceBar = confidenceBar;
+		online = new RecognitionSession(ctx, ENGINE_ONLINE, this);
+		offline = new RecognitionSession(ctx, ENGINE_OFFLINE, this);
+	}
+
+	/**
+	 * @param confidenceBar confidence from which a result is accepted without waiting for the other engine
+	 */
+	public void setConfidenceBar(float confidenceBar) {
+		this.confidenceBar = confidenceBar;
+	}
+
+	/**
+	 * Starts the race
+	 * @param intent recognition intent, it is copied for the offline-preferred recognition
+	 * @param networkAvailable false to run only the offline-preferred recognition
+	 */
+	public void start(Intent intent, boolean networkAvailable) {
+		cancel();
+		decided = false;
+		bestList = null;
+		bestConfidences = null;
+		bestSession = null;
+		lastError = SpeechRecognizer.ERROR_NO_MATCH;
+
+		Intent offlineIntent = new Intent(intent);
+		offlineIntent.putExtra(EXTRA_PREFER_OFFLINE, true);
+
+		//Without network the offline-preferred recognition is the primary one
+		primary = networkAvailable ? online : offline;
+		online.setForward(networkAvailable ? forward : null);
+		offline.setForward(networkAvailable ? null : forward);
+
+		offlineStats.races++;
+		offline.start(offlineIntent);
+		if(networkAvailable) {
+			onlineStats.races++;
+			online.start(intent);
+		}
+	}
+
+	/**
+	 * Stops capturing audio in both recognitions
+	 */
+	public void stopListening() {
+		online.stopListening();
+		offline.stopListening();
+	}
+
+	/**
+	 * Cancels both recognitions
+	 */
+	public void cancel() {
+		decided = true;
+		online.cancel();
+		offline.cancel();
+	}
+
+	/**
+	 * Releases the recognizers
+	 */
+	public void destroy() {
+		online.destroy();
+		offline.destroy();
+	}
+
+	@Override
+	public void onSessionResults(RecognitionSession session, ArrayList<String> nBestList, float[] nBestConfidences) {
+		if(decided)
+			return;
+
+		if(nBestList!=null && nBestList.size()>0) {
+			float confidence = (nBestConfidences==null || nBestConfidences.length==0) ? -1 : nBestConfidences[0];
+
+			//Without confidences there is nothing to compare, so the first result wins
+			if(confidence<0 || confidence>=confidenceBar) {
+				finish(session, nBestList, nBestConfidences);
+				return;
+			}
+			if(bestList==null || confidence>bestConfidences[0]) {
+				bestList = nBestList;
+				bestConfidences = nBestConfidences;
+				bestSession = session;
+			}
+		}
+		handOver(session);
+		finishIfDone();
+	}
+
+	@Override
+	public void onSessionError(RecognitionSession session, int errorCode) {
+		if(decided)
+			return;
+
+		//The error of the network recognition is more informative (e.g. ERROR_NETWORK)
+		if(session==online || lastError==SpeechRecognizer.ERROR_NO_MATCH)
+			lastError = errorCode;
+		handOver(session);
+		finishIfDone();
+	}
+
+	/**
+	 * When the primary session finishes and the other one is still running, the other one becomes the
+	 * primary, so that the events of the recognition that goes on are not lost (e.g. when the network
+	 * recognition fails with ERROR_RECOGNIZER_BUSY)
+	 */
+	private void handOver(RecognitionSession finished) {
+		RecognitionSession other = (finished==online) ? offline : online;
+		if(finished==primary && !other.isFinished()) {
+			other.takeOver(finished, forward);
+			primary = other;
+		}
+	}
+
+	/**
+	 * Decides the race when both recognitions have finished and no result has reached the bar
+	 */
+	private void finishIfDone() {
+		if(online.isFinished() && offline.isFinished()) {
+			if(bestList!=null)
+				finish(bestSession, bestList, bestConfidences);
+			else {
+				decided = true;
+				listener.onRaceError(lastError);
+			}
+		}
+	}
+
+	/**
+	 * Cancels the loser and provides the results of the winner
+	 */
+	private void finish(RecognitionSession winner, ArrayList<String> nBestList, float[] nBestConfidences) {
+		decided = true;
+		RecognitionSession loser = (winner==online) ? offline : online;
+		loser.cancel();
+
+		EngineStats stats = (winner==online) ? onlineStats : offlineStats;
+		stats.wins++;
+		stats.winLatency += winner.getLatency();
+		Log.d(LIB_LOGTAG, winner.getName() + " wins in " + winner.getLatency() + " ms. " + onlineStats + "; " + offlineStats);
+
+		listener.onRaceResults(nBestList, nBestConfidences, winner.getName());
+	}
+
+	/**
+	 * @return the statistics of the network recognition
+	 */
+	public EngineStats getOnlineStats() {
+		return onlineStats;
+	}
+
+	/**
+	 * @return the statistics of the offline-preferred recognition
+	 */
+	public EngineStats getOfflineStats() {
+		return offlineStats;
+	}
+
+	/**
+	 * Wins and latency of an engine
+	 */
+	public static class EngineStats {
+		private final String engine;
+		private int races = 0;
+		private int wins = 0;
+		private long winLatency = 0;
+
+		EngineStats(String engine) {
+			this.engine = engine;
+		}
+
+		/**
+		 * @return number of races in which the engine has taken part
+		 */
+		public int getRaces() {
+			return races;
+		}
+
+		/**
+		 * @return number of races won by the engine
+		 */
+		public int getWins() {
+			return wins;
+		}
+
+		/**
+		 * @return average time (ms) in which the engine provided the winning results
+		 */
+		public long getAverageWinLatency() {
+			return wins==0 ? 0 : winLatency / wins;
+		}
+
+		@Override
+		public String toString() {
+			return engine + ": " + wins + "/" + races + " wins, " + getAverageWinLatency() + " ms on average";
+		}
+	}
+}
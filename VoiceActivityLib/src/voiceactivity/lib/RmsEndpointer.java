@@ -0,0 +1,168 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+/**
+ * Local end-of-speech detector that works on the sound level (RMS in dB) reported by the recognizer.
+ *
+ * The level is compared with an estimate of the background noise that adapts while the user is silent.
+ * The end of speech is detected when, after at least <code>minSpeech</code> ms of speech, the level remains
+ * close to the noise floor for <code>hangover</code> ms. This is usually much earlier than the end-of-speech
+ * timeout of the recognizer, so <code>stopListening</code> can be invoked sooner.
+ *
+ * It does not depend on Android, so it can be evaluated off the device with {@link #replay(float[], long[])}
+ * on recorded RMS traces.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setEndpointer(RmsEndpointer)
+ */
+public class RmsEndpointer {
+
+	private float onsetMargin = 4f;			//dB above the noise floor considered speech
+	private long hangover = 700;			//ms of non-speech after speech to detect the end
+	private long minSpeech = 250;			//ms of speech needed before an end can be detected
+	private float adaptationRate = 0.05f;	//Speed at which the noise floor follows the level when it rises
+
+	private boolean started;
+	private float noiseFloor;
+	private long speechStart;
+	private long lastSpeech;
+	private long endpoint;
+
+	public RmsEndpointer() {
+		reset();
+	}
+
+	/**
+	 * Sets the thresholds of the endpointer
+	 * @param onsetMargin dB above the noise floor from which the level is considered speech
+	 * @param hangover ms of non-speech that must follow the speech to detect its end
+	 * @param minSpeech ms of speech needed before its end can be detected (shorter sounds are considered noise)
+	 */
+	public void setThresholds(float onsetMargin, long hangover, long minSpeech) {
+		this.onsetMargin = onsetMargin;
+		this.hangover = hangover;
+		this.minSpeech = minSpeech;
+	}
+
+	/**
+	 * Sets how fast the noise floor adapts when the level rises without being speech
+	 * @param adaptationRate value between 0 (no adaptation) and 1 (immediate adaptation)
+	 */
+	public void setAdaptationRate(float adaptationRate) {
+		this.adaptationRate = adaptationRate;
+	}
+
+	/**
+	 * Prepares the endpointer for a new recognition
+	 */
+	public void reset() {
+		started = false;
+		noiseFloor = 0;
+		speechStart = -1;
+		lastSpeech = -1;
+		endpoint = -1;
+	}
+
+	/**
+	 * Processes a new level
+	 * @param rmsdB level reported by the recognizer
+	 * @param time time at which the level was reported, in ms
+	 * @return true the first time that the end of speech is detected, false otherwise
+	 */
+	public boolean process(float rmsdB, long time) {
+		if(endpoint>=0)
+			return false;
+
+		if(!started) {
+			noiseFloor = rmsdB;
+			started = true;
+		}
+
+		if(rmsdB > noiseFloor + onsetMargin) {	//Speech
+			if(speechStart<0)
+				speechStart = time;
+			lastSpeech = time;
+		}
+		else {
+			//The floor follows the level immediately when it drops and slowly when it rises
+			if(rmsdB < noiseFloor)
+				noiseFloor = rmsdB;
+			else
+				noiseFloor += adaptationRate * (rmsdB - noiseFloor);
+
+			if(speechStart>=0 && time - lastSpeech >= hangover) {
+				if(lastSpeech - speechStart >= minSpeech) {
+					endpoint = time;
+					return true;
+				}
+				speechStart = -1;	//It was too short to be speech
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return the time at which the end of speech was detected, or -1 if it has not been detected
+	 */
+	public long getEndpointTime() {
+		return endpoint;
+	}
+
+	/**
+	 * @return the time at which the current speech segment started, or -1 if no speech has been detected
+	 */
+	public long getSpeechStart() {
+		return speechStart;
+	}
+
+	/**
+	 * @return the time of the last level considered speech, or -1 if no speech has been detected
+	 */
+	public long getLastSpeech() {
+		return lastSpeech;
+	}
+
+	/**
+	 * @return the current estimate of the background noise level
+	 */
+	public float getNoiseFloor() {
+		return noiseFloor;
+	}
+
+	/**
+	 * Runs the endpointer on a recorded RMS trace. Comparing the result with the time at which the
+	 * recognizer invoked <code>onEndOfSpeech</code> in the same recording gives the time saved.
+	 * @param rmsdB levels reported by the recognizer
+	 * @param times times at which they were reported (ms)
+	 * @return the time at which the end of speech is detected, or -1 if it is not detected
+	 */
+	public long replay(float[] rmsdB, long[] times) {
+		reset();
+		for(int i=0; i<rmsdB.length; i++) {
+			if(process(rmsdB[i], times[i]))
+				return endpoint;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,210 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits long texts (e.g. the replies of a chatbot) into chunks that can be synthesized one after the other, so that the
+ * first one starts playing without waiting for the synthesis of the whole text.
+ *
+ * The text is split at the end of the sentences (.!? followed by a space), except after the abbreviations (e.g. "Dr."),
+ * the initials (e.g. "J. Smith"), also after an opening quote or bracket (e.g. "(See Fig. 3.)"), and when the next word starts 
+ * in lowercase. Decimal numbers, times and thousands separators are never split, as they are not followed by a space. 
+ * Sentences shorter than a minimum are joined with the next one, and sentences longer than a maximum are split at their 
+ * clauses (,;: followed by a space) or, if there are none, between words.
+ * The first chunk has a lower maximum, so that it is synthesized sooner.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class SentenceChunker {
+
+	public static final int DEFAULT_MIN_CHARS = 20;
+	public static final int DEFAULT_FIRST_MAX_CHARS = 80;
+	public static final int DEFAULT_MAX_CHARS = 200;
+
+	private static final String[] DEFAULT_ABBREVIATIONS = {"mr", "mrs", "ms", "dr", "prof", "sr", "jr", "st", "mt", "vs", "etc", 
+		"e.g", "i.e", "approx", "dept", "inc", "ltd", "co", "corp", "u.s", "u.k", "a.m", "p.m", "jan", "feb", "mar", "apr", "jun", 
+		"jul", "aug", "sep", "sept", "oct", "nov", "dec", "fig", "figs", "eq", "eqs", "tab", "vol", "vols", "ch", "sec", "ref", 
+		"refs", "pp", "ed", "eds"};
+
+	private final int minChars;
+	private final int firstMaxChars;
+	private final int maxChars;
+	private final Set<String> abbreviations = new HashSet<String>();
+
+	public SentenceChunker() {
+		this(DEFAULT_MIN_CHARS, DEFAULT_FIRST_MAX_CHARS, DEFAULT_MAX_CHARS);
+	}
+
+	/**
+	 * @param minChars length below which a sentence is joined with the next one
+	 * @param firstMaxChars maximum length of the first chunk (it is only exceeded by words longer than it)
+	 * @param maxChars maximum length of the rest of chunks
+	 */
+	public SentenceChunker(int minChars, int firstMaxChars, int maxChars) {
+		this.minChars = minChars;
+		this.firstMaxChars = firstMaxChars;
+		this.maxChars = maxChars;
+		addAbbreviations(DEFAULT_ABBREVIATIONS);
+	}
+
+	/**
+	 * Adds words after which a period does not end the sentence
+	 * @param abbreviations words without the final period, e.g. "dr" or "e.g"
+	 */
+	public void addAbbreviations(String... abbreviations) {
+		for(String abbreviation: abbreviations)
+			this.abbreviations.add(abbreviation.toLowerCase(Locale.US));
+	}
+
+	/**
+	 * Splits a text into chunks
+	 * @return the chunks, in order (an empty list if the text is empty)
+	 */
+	public List<String> split(String text) {
+		List<String> chunks = new ArrayList<String>();
+		text = text.trim().replaceAll("\\s+", " ");
+		int start = 0;
+		while(start<text.length()) {
+			int end = nextEnd(text, start, chunks.isEmpty() ? firstMaxChars : maxChars);
+			String chunk = text.substring(start, end).trim();
+			if(chunk.length()>0)
+				chunks.add(chunk);
+			start = end;
+		}
+		return chunks;
+	}
+
+	/**
+	 * Finds the end of the chunk that starts in a position
+	 */
+	private int nextEnd(String text, int start, int limit) {
+		int length = text.length();
+		if(length - start<=limit && sentenceEnd(text, start)<0)
+			return length;
+		
+		//Whole sentences, joining the short ones
+		int end = -1;
+		int next = sentenceEnd(text, start);
+		while(next>=0 && next - start<=limit) {
+			end = next;
+			if(end - start>=minChars)
+				return end;
+			next = sentenceEnd(text, end);
+		}
+		if(next<0 && length - start<=limit)
+			return length;
+		if(end>=0 && next<0)
+			return end;
+		
+		//The sentence is too long: the last clause, or else the last word, that fits
+		int max = Math.min(length, start + limit);
+		int clause = -1;
+		int word = -1;
+		for(int i = Math.max(start, end) + 1; i<max; i++) {
+			if(text.charAt(i)==' ') {
+				word = i;
+				char previous = text.charAt(i - 1);
+				if(previous==',' || previous==';' || previous==':')
+					clause = i;
+			}
+		}
+		if(clause>=0 && clause - start>=minChars)
+			return clause;
+		if(end>=0)
+			return end;
+		if(word>=0)
+			return word;
+		int space = text.indexOf(' ', max);		//A single word longer than the limit
+		return space<0 ? length : space;
+	}
+
+	/**
+	 * @return the position after the end of the first sentence from a position (including the punctuation and closing
+	 * quotes or brackets), or -1 if the text ends before
+	 */
+	private int sentenceEnd(String text, int from) {
+		int length = text.length();
+		for(int i = from; i<length; i++) {
+			char c = text.charAt(i);
+			if(c!='.' && c!='!' && c!='?' && c!='\u2026')
+				continue;
+			
+			boolean onlyPeriods = true;
+			int j = i;
+			for(; j<length && isTerminator(text.charAt(j)); j++)
+				if(text.charAt(j)!='.')
+					onlyPeriods = false;
+			for(; j<length && isClosing(text.charAt(j)); j++);
+			
+			if(j==length)
+				return length;
+			if(text.charAt(j)!=' ') {	//e.g. 3.14 or www.pandorabots.com
+				i = j - 1;
+				continue;
+			}
+			if(!onlyPeriods || !continuesSentence(text, i, j + 1))
+				return j;
+			i = j - 1;
+		}
+		return -1;
+	}
+
+	/**
+	 * Checks whether a period does not end the sentence: it follows an abbreviation or an initial, or the next word is in lowercase
+	 * @param period position of the period
+	 * @param next position of the next word
+	 */
+	private boolean continuesSentence(String text, int period, int next) {
+		if(next<text.length() && Character.isLowerCase(text.charAt(next)))
+			return true;
+		int wordStart = period;
+		while(wordStart>0 && text.charAt(wordStart - 1)!=' ')
+			wordStart--;
+		while(wordStart<period && isOpening(text.charAt(wordStart)))
+			wordStart++;
+		String word = text.substring(wordStart, period).toLowerCase(Locale.US);
+		if(word.length()==1 && Character.isLetter(word.charAt(0)))
+			return true;
+		return abbreviations.contains(word);
+	}
+
+	private static boolean isTerminator(char c) {
+		return c=='.' || c=='!' || c=='?' || c=='\u2026';
+	}
+
+	private static boolean isOpening(char c) {
+		return c=='"' || c=='\'' || c=='(' || c=='[' || c=='\u201C' || c=='\u2018' || c=='\u00AB';
+	}
+
+	private static boolean isClosing(char c) {
+		return c=='"' || c=='\'' || c==')' || c==']' || c=='\u201D' || c=='\u2019' || c=='\u00BB';
+	}
+}
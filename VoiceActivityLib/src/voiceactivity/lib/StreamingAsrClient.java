@@ -0,0 +1,417 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Locale;
+
+import android.annotation.SuppressLint;
+import android.content.Intent;
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.util.Log;
+
+/**
+ * Recognizer that streams the audio of the microphone to a self-hosted recognition server while the user is speaking,
+ * using the {@link StreamingAsrProtocol} over a persistent connection, which is opened the first time and reused for
+ * the next utterances.
+ *
+ * The audio is sent in chunks of 20 ms as soon as it is recorded, so the server can decode it while the user speaks,
+ * and only has to finish the last part after the end of the utterance. The end is decided by the application with
+ * <code>stopListening</code> (e.g. with the local endpointer of <code>VoiceActivity</code>) or after the maximum
+ * duration of an utterance.
+ *
+ * The events are passed to a <code>RecognitionListener</code> in the main thread, as the platform recognizer does,
+ * so <code>VoiceActivity</code> processes them with the same <code>processAsr*</code> methods: the sound level, the
+ * partial hypotheses of the server, the final N-best list and the errors, with the same error codes (e.g.
+ * <code>ERROR_NETWORK</code> when the connection fails). The only exception is <code>onBufferReceived</code>, which
+ * is invoked in the recording thread to avoid copying the audio. The start, stop and cancel methods must be invoked
+ * from the main thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setStreamingAsrServer(String, int)
+ * @see StreamingAsrStandInServer.java
+ */
+public class StreamingAsrClient {
+
+	private static final String LIB_LOGTAG = "STREAMINGASRCLIENT";
+
+	private static final int SAMPLE_RATE = 16000;
+	private static final int CHUNK = SAMPLE_RATE / 50;		//20 ms
+	private static final int CHUNKS_PER_LEVEL = 5;			//The sound level is reported every 100 ms
+	private static final int CONNECT_TIMEOUT = 3000;		//ms
+
+	private final String host;
+	private final int port;
+	private final RecognitionListener listener;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+	private long maxDuration = 10000;		//ms of audio after which the utterance is ended
+	private long finalTimeout = 5000;		//ms that the final result can take after the end of the utterance
+
+	private Socket socket = null;			//Persistent connection, null if it is not open
+	private DataOutputStream out = null;
+
+	private int lastUtterance = 0;
+	private volatile int current = 0;		//Utterance whose events are passed to the listener, 0 if none
+	private volatile boolean capturing = false;
+	private Thread captureThread = null;
+	private long endTime = -1;				//Time at which the end of the current utterance was sent
+
+	private int finalCount = 0;
+	private long finalLatencyTotal = 0;
+
+	private final Runnable timeout = new Runnable() {
+		public void run() {
+			if(current!=0) {
+				Log.w(LIB_LOGTAG, "No final result from the server in " + finalTimeout + " ms");
+				current = 0;
+				listener.onError(SpeechRecognizer.ERROR_NETWORK_TIMEOUT);
+			}
+		}
+	};
+
+	/**
+	 * @param host address of the server
+	 * @param port port of the server
+	 * @param listener object that receives the recognition events in the main thread
+	 */
+	public StreamingAsrClient(String host, int port, RecognitionListener listener) {
+		this.host = host;
+		this.port = port;
+		this.listener = listener;
+	}
+
+	/**
+	 * @param maxDuration ms of audio after which the utterance is ended if <code>stopListening</code> has not been invoked
+	 * @param finalTimeout ms that the server can take to provide the final result after the end of the utterance
+	 */
+	public void setTimeouts(long maxDuration, long finalTimeout) {
+		this.maxDuration = maxDuration;
+		this.finalTimeout = finalTimeout;
+	}
+
+	/**
+	 * Starts recording and streaming an utterance, cancelling the previous one if it has not finished
+	 * @param intent recognition intent, from which the language is taken (<code>RecognizerIntent.EXTRA_LANGUAGE</code>)
+	 */
+	public void start(Intent intent) {
+		cancel();
+		String language = intent==null ? null : intent.getStringExtra(RecognizerIntent.EXTRA_LANGUAGE);
+		if(language==null)
+			language = Locale.getDefault().toString();
+
+		lastUtterance = lastUtterance==Integer.MAX_VALUE ? 1 : lastUtterance + 1;
+		current = lastUtterance;
+		capturing = true;
+		endTime = -1;
+		captureThread = new Thread(new Capture(current, language, captureThread), "StreamingAsrCapture");
+		captureThread.start();
+	}
+
+	/**
+	 * Ends the utterance: the recording stops and the final result is received afterwards
+	 */
+	public void stopListening() {
+		capturing = false;
+	}
+
+	/**
+	 * Cancels the utterance in progress, no results nor errors are passed to the listener
+	 */
+	public void cancel() {
+		current = 0;
+		capturing = false;
+		mainHandler.removeCallbacks(timeout);
+	}
+
+	/**
+	 * Cancels the utterance in progress and closes the connection
+	 */
+	public void destroy() {
+		cancel();
+		closeConnection(null);
+	}
+
+	/**
+	 * @return average time (ms) from the end of the utterance to the final result
+	 */
+	public long getAverageTimeToFinal() {
+		return finalCount==0 ? 0 : finalLatencyTotal / finalCount;
+	}
+
+	/**
+	 * Records an utterance and streams it to the server
+	 */
+	private class Capture implements Runnable {
+		private final int utterance;
+		private final String language;
+		private final Thread previous;
+
+		/**
+		 * @param previous thread of the previous utterance, which must release the microphone first (null if none)
+		 */
+		Capture(int utterance, String language, Thread previous) {
+			this.utterance = utterance;
+			this.language = language;
+			this.previous = previous;
+		}
+
+		@Override
+		public void run() {
+			if(previous!=null) {
+				try {
+					previous.join(500);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			AudioRecord record = createRecord();
+			if(record==null) {
+				post(utterance, SpeechRecognizer.ERROR_AUDIO);
+				return;
+			}
+
+			DataOutputStream connection = null;
+			try {
+				connection = getConnection();
+				synchronized(connection) {		//The capture of the previous utterance may still be writing
+					StreamingAsrProtocol.writeStart(connection, utterance, language, SAMPLE_RATE);
+				}
+				post(utterance, null);		//Ready for speech
+
+				short[] samples = new short[CHUNK];
+				byte[] pcm = new byte[CHUNK * 2];
+				long maxSamples = maxDuration * SAMPLE_RATE / 1000;
+				long recorded = 0;
+				double energy = 0;
+				int chunks = 0;
+				record.startRecording();
+				while(capturing && current==utterance && recorded<maxSamples) {
+					int read = record.read(samples, 0, CHUNK);
+					if(read<0) {
+						Log.e(LIB_LOGTAG, "Error reading the audio: " + read);
+						post(utterance, SpeechRecognizer.ERROR_AUDIO);
+						return;
+					}
+					for(int i=0; i<read; i++) {		//Little-endian
+						pcm[2 * i] = (byte) samples[i];
+						pcm[2 * i + 1] = (byte) (samples[i] >> 8);
+						energy += samples[i] * samples[i];
+					}
+					synchronized(connection) {
+						StreamingAsrProtocol.writeAudio(connection, utterance, pcm, 0, read * 2);
+					}
+					listener.onBufferReceived(read==CHUNK ? pcm : copy(pcm, read * 2));
+					recorded += read;
+
+					if(++chunks==CHUNKS_PER_LEVEL) {
+						//Scaled to the range of the platform recognizer, approximately from -2 (silence) to 10 dB
+						post(utterance, 0.2f * (float) (10 * Math.log10(energy / (CHUNK * CHUNKS_PER_LEVEL) + 1)) - 4);
+						energy = 0;
+						chunks = 0;
+					}
+				}
+
+				synchronized(connection) {
+					if(current==utterance)
+						StreamingAsrProtocol.writeEnd(connection, utterance);
+					else
+						StreamingAsrProtocol.writeCancel(connection, utterance);
+				}
+				post(utterance, Boolean.TRUE);	//End of speech (ignored if the utterance has been cancelled)
+			} catch (IOException e) {
+				Log.e(LIB_LOGTAG, "Connection to " + host + ":" + port + " failed: " + e.getMessage());
+				if(connection!=null)
+					closeConnection(connection);
+				post(utterance, SpeechRecognizer.ERROR_NETWORK);
+			} finally {
+				if(record.getRecordingState()==AudioRecord.RECORDSTATE_RECORDING)
+					record.stop();
+				record.release();
+			}
+		}
+	}
+
+	/**
+	 * Receives the messages of the server through a connection until it is closed
+	 */
+	private class Receiver implements Runnable {
+		private final Socket connection;
+
+		Receiver(Socket connection) {
+			this.connection = connection;
+		}
+
+		@Override
+		public void run() {
+			StreamingAsrProtocol.Message message = new StreamingAsrProtocol.Message();
+			try {
+				DataInputStream in = new DataInputStream(new BufferedInputStream(connection.getInputStream()));
+				while(true) {
+					StreamingAsrProtocol.read(in, message);
+					if(message.utterance!=current)
+						continue;	//Late message of a cancelled utterance
+
+					if(message.type==StreamingAsrProtocol.PARTIAL) {
+						ArrayList<String> hypotheses = new ArrayList<String>(1);
+						hypotheses.add(message.getText());
+						post(message.utterance, hypotheses);
+					}
+					else if(message.type==StreamingAsrProtocol.FINAL) {
+						float[] nBestConfidences = new float[message.getNBestCount()];
+						ArrayList<String> nBestList = message.getNBestList(nBestConfidences);
+						post(message.utterance, new Object[]{nBestList, nBestConfidences});
+					}
+					else if(message.type==StreamingAsrProtocol.ERROR)
+						post(message.utterance, message.getErrorCode());
+				}
+			} catch (IOException e) {
+				//Closed by the server or by closeConnection
+				if(closeConnection(connection) && current!=0)
+					post(current, SpeechRecognizer.ERROR_NETWORK);
+			}
+		}
+	}
+
+	/**
+	 * Passes an event of an utterance to the listener in the main thread, unless the utterance has been cancelled
+	 * @param event null (ready for speech), Boolean (end of speech), Float (sound level), Integer (error),
+	 * ArrayList (partial hypothesis) or Object[] (N-best list and confidences)
+	 */
+	private void post(final int utterance, final Object event) {
+		mainHandler.post(new Runnable() {
+			@SuppressLint("InlinedApi")
+			@SuppressWarnings("unchecked")
+			public void run() {
+				if(utterance!=current)
+					return;
+
+				if(event==null)
+					listener.onReadyForSpeech(new Bundle());
+				else if(event instanceof Boolean) {
+					endTime = SystemClock.elapsedRealtime();
+					mainHandler.postDelayed(timeout, finalTimeout);
+					listener.onEndOfSpeech();
+				}
+				else if(event instanceof Float)
+					listener.onRmsChanged((Float) event);
+				else if(event instanceof Integer) {
+					current = 0;
+					mainHandler.removeCallbacks(timeout);
+					listener.onError((Integer) event);
+				}
+				else if(event instanceof ArrayList) {
+					Bundle partial = new Bundle();
+					partial.putStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION, (ArrayList<String>) event);
+					listener.onPartialResults(partial);
+				}
+				else {
+					current = 0;
+					mainHandler.removeCallbacks(timeout);
+					if(endTime>=0) {
+						finalCount++;
+						finalLatencyTotal += SystemClock.elapsedRealtime() - endTime;
+					}
+					Object[] results = (Object[]) event;
+					Bundle bundle = new Bundle();
+					bundle.putStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION, (ArrayList<String>) results[0]);
+					bundle.putFloatArray(SpeechRecognizer.CONFIDENCE_SCORES, (float[]) results[1]);
+					listener.onResults(bundle);
+				}
+			}
+		});
+	}
+
+	/**
+	 * @return the output of the persistent connection, which is opened if needed
+	 * @throws IOException if the connection cannot be opened
+	 */
+	private synchronized DataOutputStream getConnection() throws IOException {
+		if(socket==null) {
+			Socket connection = new Socket();
+			connection.setTcpNoDelay(true);		//The chunks are small and must be sent right away
+			connection.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+			socket = connection;
+			out = new DataOutputStream(new BufferedOutputStream(connection.getOutputStream()));
+			new Thread(new Receiver(connection), "StreamingAsrReceiver").start();
+		}
+		return out;
+	}
+
+	/**
+	 * Closes the persistent connection
+	 * @param which connection (or its output) that failed, so that a newer connection is not closed; null to close the current one
+	 * @return true if the connection was open and it has been closed
+	 */
+	private synchronized boolean closeConnection(Object which) {
+		if(socket==null || (which!=null && which!=socket && which!=out))
+			return false;
+		try {
+			socket.close();
+		} catch (IOException e) {
+			//Already closed
+		}
+		socket = null;
+		out = null;
+		return true;
+	}
+
+	private static byte[] copy(byte[] buffer, int length) {
+		byte[] copy = new byte[length];
+		System.arraycopy(buffer, 0, copy, 0, length);
+		return copy;
+	}
+
+	/**
+	 * @return the recorder, or null if the microphone could not be used
+	 */
+	private static AudioRecord createRecord() {
+		int minSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+		int size = Math.max(minSize, 10 * CHUNK * 2);
+		AudioRecord recorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE, 
+				AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, size);
+		if(recorder.getState()!=AudioRecord.STATE_INITIALIZED) {
+			Log.e(LIB_LOGTAG, "The microphone could not be initialized");
+			recorder.release();
+			return null;
+		}
+		return recorder;
+	}
+}
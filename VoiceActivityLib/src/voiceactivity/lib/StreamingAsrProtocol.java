@@ -0,0 +1,200 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Messages exchanged with a streaming recognition server (see {@link StreamingAsrClient} and
+ * {@link StreamingAsrStandInServer}) over a persistent TCP connection.
+ *
+ * Each message is a type byte, the id of the utterance to which it belongs, the length of the payload and the payload.
+ * The client sends <code>START</code> (language and sample rate), a sequence of <code>AUDIO</code> chunks (16-bit
+ * little-endian mono PCM) while the user speaks, and <code>END</code> when the user stops, or <code>CANCEL</code>.
+ * The server answers with <code>PARTIAL</code> hypotheses while it receives the audio and a <code>FINAL</code> N-best
+ * list (or an <code>ERROR</code> with a <code>SpeechRecognizer</code> error code) after <code>END</code>. The utterance
+ * id lets the client discard the late messages of an utterance that it has cancelled.
+ *
+ * It does not depend on Android, so the server and the benchmarks can be run on any Java platform.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class StreamingAsrProtocol {
+
+	public static final byte START = 1;
+	public static final byte AUDIO = 2;
+	public static final byte END = 3;
+	public static final byte CANCEL = 4;
+	public static final byte PARTIAL = 10;
+	public static final byte FINAL = 11;
+	public static final byte ERROR = 12;
+
+	private static final int MAX_PAYLOAD = 1 << 20;
+
+	/**
+	 * Message read from the connection
+	 */
+	public static class Message {
+		public byte type;
+		public int utterance;
+		public byte[] payload = new byte[0];
+		public int length;
+
+		/**
+		 * @return the text of a PARTIAL message, or the language of a START message
+		 */
+		public String getText() throws IOException {
+			return new String(payload, 0, type==START ? length - 4 : length, "UTF-8");
+		}
+
+		/**
+		 * @return the sample rate of a START message
+		 */
+		public int getSampleRate() {
+			return readInt(payload, length - 4);
+		}
+
+		/**
+		 * @return the error code of an ERROR message
+		 */
+		public int getErrorCode() {
+			return readInt(payload, 0);
+		}
+
+		/**
+		 * @param nBestConfidences receives the confidences of the results (it must be long enough), or null
+		 * @return the results of a FINAL message
+		 */
+		public ArrayList<String> getNBestList(float[] nBestConfidences) throws IOException {
+			int n = readInt(payload, 0);
+			ArrayList<String> nBestList = new ArrayList<String>(n);
+			int position = 4;
+			for(int i=0; i<n; i++) {
+				float confidence = Float.intBitsToFloat(readInt(payload, position));
+				int textLength = readInt(payload, position + 4);
+				nBestList.add(new String(payload, position + 8, textLength, "UTF-8"));
+				if(nBestConfidences!=null)
+					nBestConfidences[i] = confidence;
+				position += 8 + textLength;
+			}
+			return nBestList;
+		}
+
+		/**
+		 * @return the number of results of a FINAL message
+		 */
+		public int getNBestCount() {
+			return readInt(payload, 0);
+		}
+	}
+
+	/**
+	 * Reads the next message. The message object is reused (and its payload array grown if needed) to avoid
+	 * allocating memory for each audio chunk.
+	 * @throws IOException if the connection is closed or the message is not valid
+	 */
+	public static Message read(DataInputStream in, Message message) throws IOException {
+		if(message==null)
+			message = new Message();
+		message.type = in.readByte();
+		message.utterance = in.readInt();
+		message.length = in.readInt();
+		if(message.length<0 || message.length>MAX_PAYLOAD)
+			throw new IOException("Invalid message length: " + message.length);
+		if(message.payload.length<message.length)
+			message.payload = new byte[message.length];
+		in.readFully(message.payload, 0, message.length);
+		return message;
+	}
+
+	public static void writeStart(DataOutputStream out, int utterance, String language, int sampleRate) throws IOException {
+		byte[] text = language.getBytes("UTF-8");
+		writeHeader(out, START, utterance, text.length + 4);
+		out.write(text);
+		out.writeInt(sampleRate);
+		out.flush();
+	}
+
+	public static void writeAudio(DataOutputStream out, int utterance, byte[] pcm, int offset, int length) throws IOException {
+		writeHeader(out, AUDIO, utterance, length);
+		out.write(pcm, offset, length);
+		out.flush();
+	}
+
+	public static void writeEnd(DataOutputStream out, int utterance) throws IOException {
+		writeHeader(out, END, utterance, 0);
+		out.flush();
+	}
+
+	public static void writeCancel(DataOutputStream out, int utterance) throws IOException {
+		writeHeader(out, CANCEL, utterance, 0);
+		out.flush();
+	}
+
+	public static void writePartial(DataOutputStream out, int utterance, String text) throws IOException {
+		byte[] bytes = text.getBytes("UTF-8");
+		writeHeader(out, PARTIAL, utterance, bytes.length);
+		out.write(bytes);
+		out.flush();
+	}
+
+	public static void writeFinal(DataOutputStream out, int utterance, ArrayList<String> nBestList, float[] nBestConfidences) throws IOException {
+		byte[][] texts = new byte[nBestList.size()][];
+		int length = 4;
+		for(int i=0; i<texts.length; i++) {
+			texts[i] = nBestList.get(i).getBytes("UTF-8");
+			length += 8 + texts[i].length;
+		}
+		writeHeader(out, FINAL, utterance, length);
+		out.writeInt(texts.length);
+		for(int i=0; i<texts.length; i++) {
+			out.writeFloat(nBestConfidences==null ? -1 : nBestConfidences[i]);
+			out.writeInt(texts[i].length);
+			out.write(texts[i]);
+		}
+		out.flush();
+	}
+
+	public static void writeError(DataOutputStream out, int utterance, int errorCode) throws IOException {
+		writeHeader(out, ERROR, utterance, 4);
+		out.writeInt(errorCode);
+		out.flush();
+	}
+
+	private static void writeHeader(DataOutputStream out, byte type, int utterance, int length) throws IOException {
+		out.writeByte(type);
+		out.writeInt(utterance);
+		out.writeInt(length);
+	}
+
+	/**
+	 * Reads a big-endian int, as written by DataOutputStream
+	 */
+	private static int readInt(byte[] buffer, int position) {
+		return ((buffer[position] & 0xff) << 24) | ((buffer[position + 1] & 0xff) << 16)
+				| ((buffer[position + 2] & 0xff) << 8) | (buffer[position + 3] & 0xff);
+	}
+}
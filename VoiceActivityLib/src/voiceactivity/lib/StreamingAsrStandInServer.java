@@ -0,0 +1,322 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+
+/**
+ * Local stand-in for a streaming recognition server, which speaks the {@link StreamingAsrProtocol} without doing
+ * any real recognition. It "recognizes" a fixed transcript: while it receives the audio it sends partial hypotheses
+ * with one more word every <code>msPerWord</code> ms of audio, and after the end of the utterance it waits for
+ * <code>decodingDelay</code> ms (the time that a real server would need to finish) and sends the transcript.
+ *
+ * It is intended to test {@link StreamingAsrClient} and to measure the throughput of the connection and the time to
+ * the final result without a real server (see {@link #benchmark(String, int, short[], int, int, boolean, int)}).
+ * It does not depend on Android, so it can be run on a computer:
+ * <pre>java voiceactivity.lib.StreamingAsrStandInServer [port] [recording.wav]</pre>
+ * If a recording is given, the benchmark is run with it against the server and the results are printed.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class StreamingAsrStandInServer {
+
+	public static final int DEFAULT_PORT = 9876;
+
+	/** Same values as SpeechRecognizer.ERROR_SERVER and SpeechRecognizer.ERROR_CLIENT, which are not available off the device */
+	private static final int ERROR_SERVER = 4;
+	private static final int ERROR_CLIENT = 5;
+
+	private final int port;
+	private String[] transcript = {"what", "is", "my", "battery", "level"};
+	private long msPerWord = 250;
+	private long decodingDelay = 50;
+
+	private ServerSocket serverSocket = null;
+	private Thread acceptThread = null;
+
+	public StreamingAsrStandInServer(int port) {
+		this.port = port;
+	}
+
+	/**
+	 * Sets the behaviour of the server
+	 * @param transcript text that is "recognized" in every utterance
+	 * @param msPerWord ms of audio after which a partial hypothesis with one more word is sent
+	 * @param decodingDelay ms between the end of the utterance and the final result
+	 */
+	public void setBehaviour(String transcript, long msPerWord, long decodingDelay) {
+		this.transcript = transcript.trim().split("\\s+");
+		this.msPerWord = msPerWord;
+		this.decodingDelay = decodingDelay;
+	}
+
+	/**
+	 * Starts accepting connections in a background thread
+	 * @throws IOException if the port cannot be opened
+	 */
+	public synchronized void start() throws IOException {
+		if(serverSocket!=null)
+			return;
+		serverSocket = new ServerSocket(port);
+		final ServerSocket listening = serverSocket;
+		acceptThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				while(!listening.isClosed()) {
+					try {
+						final Socket socket = listening.accept();
+						new Thread(new Runnable() {
+							@Override
+							public void run() {
+								serve(socket);
+							}
+						}, "StandInConnection").start();
+					} catch (IOException e) {
+						//Closed by stop
+					}
+				}
+			}
+		}, "StandInServer");
+		acceptThread.start();
+	}
+
+	/**
+	 * Stops accepting connections. The connections already open are served until the clients close them.
+	 */
+	public synchronized void stop() {
+		if(serverSocket!=null) {
+			try {
+				serverSocket.close();
+			} catch (IOException e) {
+				//Already closed
+			}
+			serverSocket = null;
+		}
+	}
+
+	/**
+	 * @return the port in which the server accepts connections
+	 */
+	public int getPort() {
+		return serverSocket==null ? port : serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Serves the utterances sent through a connection until it is closed
+	 */
+	private void serve(Socket socket) {
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			StreamingAsrProtocol.Message message = new StreamingAsrProtocol.Message();
+
+			int utterance = -1;		//Utterance in progress, -1 if none
+			int bytesPerMs = 32;
+			long audioBytes = 0;
+			int words = 0;
+			while(true) {
+				StreamingAsrProtocol.read(in, message);
+				switch(message.type) {
+				case StreamingAsrProtocol.START:
+					utterance = message.utterance;
+					bytesPerMs = message.getSampleRate() * 2 / 1000;
+					audioBytes = 0;
+					words = 0;
+					break;
+
+				case StreamingAsrProtocol.AUDIO:
+					if(message.utterance!=utterance)
+						break;		//Late audio of a cancelled utterance
+					audioBytes += message.length;
+					int heard = (int) Math.min(transcript.length, audioBytes / bytesPerMs / msPerWord);
+					if(heard>words) {
+						words = heard;
+						StreamingAsrProtocol.writePartial(out, utterance, join(words));
+					}
+					break;
+
+				case StreamingAsrProtocol.END:
+					if(message.utterance!=utterance) {
+						StreamingAsrProtocol.writeError(out, message.utterance, ERROR_CLIENT);
+						break;
+					}
+					Thread.sleep(decodingDelay);
+					ArrayList<String> nBestList = new ArrayList<String>();
+					nBestList.add(join(transcript.length));
+					if(transcript.length>1)
+						nBestList.add(join(transcript.length - 1));
+					StreamingAsrProtocol.writeFinal(out, utterance, nBestList, new float[]{0.9f, 0.1f});
+					utterance = -1;
+					break;
+
+				case StreamingAsrProtocol.CANCEL:
+					if(message.utterance==utterance)
+						utterance = -1;
+					break;
+
+				default:
+					StreamingAsrProtocol.writeError(out, message.utterance, ERROR_SERVER);
+				}
+			}
+		} catch (IOException e) {
+			//The client has closed the connection
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			try {
+				socket.close();
+			} catch (IOException e) {
+				//Already closed
+			}
+		}
+	}
+
+	/**
+	 * @return the first words of the transcript
+	 */
+	private String join(int words) {
+		StringBuilder text = new StringBuilder();
+		for(int i=0; i<words; i++) {
+			if(i>0)
+				text.append(' ');
+			text.append(transcript[i]);
+		}
+		return text.toString();
+	}
+
+	/**
+	 * Streams a recording to a server several times, as the client does, and measures the throughput and latency
+	 * @param host address of the server
+	 * @param port port of the server
+	 * @param audio 16-bit PCM recording
+	 * @param sampleRate sample rate of the recording
+	 * @param chunkMs ms of audio sent in each chunk
+	 * @param realTime true to send the chunks at the pace at which they would be recorded, false to send them as fast as possible
+	 * @param utterances number of times that the recording is sent, through the same connection
+	 * @throws IOException if the connection fails or the server does not provide the final result
+	 */
+	public static Benchmark benchmark(String host, int port, short[] audio, int sampleRate, int chunkMs, boolean realTime, int utterances) throws IOException {
+		Socket socket = new Socket(host, port);
+		try {
+			socket.setTcpNoDelay(true);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+			StreamingAsrProtocol.Message message = new StreamingAsrProtocol.Message();
+
+			byte[] pcm = new byte[audio.length * 2];
+			for(int i=0; i<audio.length; i++) {		//Little-endian, as recorded by AudioRecord
+				pcm[2 * i] = (byte) audio[i];
+				pcm[2 * i + 1] = (byte) (audio[i] >> 8);
+			}
+			int chunkBytes = Math.max(2, sampleRate * 2 * chunkMs / 1000);
+
+			Benchmark result = new Benchmark();
+			for(int u=0; u<utterances; u++) {
+				long start = System.nanoTime();
+				StreamingAsrProtocol.writeStart(out, u, "en-US", sampleRate);
+				for(int offset=0; offset<pcm.length; offset+=chunkBytes) {
+					StreamingAsrProtocol.writeAudio(out, u, pcm, offset, Math.min(chunkBytes, pcm.length - offset));
+					if(realTime) {
+						try {
+							Thread.sleep(chunkMs);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IOException("Interrupted");
+						}
+					}
+				}
+				long end = System.nanoTime();
+				StreamingAsrProtocol.writeEnd(out, u);
+
+				//The partial hypotheses are read once the audio is sent, the server does not wait for them to be read
+				do
+					StreamingAsrProtocol.read(in, message);
+				while(message.type==StreamingAsrProtocol.PARTIAL);
+				if(message.type!=StreamingAsrProtocol.FINAL || message.utterance!=u)
+					throw new IOException("Unexpected message " + message.type + " for utterance " + message.utterance);
+
+				result.utterances++;
+				result.audioBytes += pcm.length;
+				result.streamingNanos += end - start;
+				result.finalNanos += System.nanoTime() - end;
+			}
+			result.sampleRate = sampleRate;
+			return result;
+		} finally {
+			socket.close();
+		}
+	}
+
+	/**
+	 * Result of {@link StreamingAsrStandInServer#benchmark(String, int, short[], int, int, boolean, int)}
+	 */
+	public static class Benchmark {
+		private int utterances = 0;
+		private long audioBytes = 0;
+		private long streamingNanos = 0;
+		private long finalNanos = 0;
+		private int sampleRate;
+
+		/**
+		 * @return seconds of audio sent per second
+		 */
+		public float getThroughput() {
+			return streamingNanos==0 ? 0 : (audioBytes / 2f / sampleRate) / (streamingNanos / 1e9f);
+		}
+
+		/**
+		 * @return average time (ms) from the end of the audio to the final result
+		 */
+		public float getAverageTimeToFinal() {
+			return utterances==0 ? 0 : finalNanos / 1e6f / utterances;
+		}
+
+		@Override
+		public String toString() {
+			return utterances + " utterances, " + getThroughput() + " s of audio per second, " + getAverageTimeToFinal() + " ms to the final result";
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = args.length>0 ? Integer.parseInt(args[0]) : DEFAULT_PORT;
+		StreamingAsrStandInServer server = new StreamingAsrStandInServer(port);
+		server.start();
+		System.out.println("Stand-in streaming ASR server listening on port " + server.getPort());
+
+		if(args.length>1) {
+			short[] audio = WavReader.read(new File(args[1]), 16000);
+			System.out.println("As fast as possible: " + benchmark("localhost", server.getPort(), audio, 16000, 20, false, 20));
+			System.out.println("Real time: " + benchmark("localhost", server.getPort(), audio, 16000, 20, true, 3));
+			server.stop();
+		}
+	}
+}
@@ -0,0 +1,128 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+
+/**
+ * Table that assigns an integer id to each word, so that the recognition results can be stored and compared as
+ * arrays of ids (see {@link RecognitionLattice}) instead of being split and compared as strings by every consumer.
+ *
+ * The words are lowercased, and the ids are never reused or removed, so they can be kept (e.g. the phrases of a
+ * rescorer) as long as the vocabulary is used. As a consequence, the vocabulary grows with every different word
+ * recognized while it is in use: it is bounded by the words that the users say (a few thousand in a long session,
+ * i.e. some hundreds of KB at most), not by the number of results. <code>size</code> can be used to monitor it, and
+ * a new vocabulary (with the ids kept by its consumers obtained again) releases the words. It can be used from any thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class TokenVocabulary {
+
+	/** Id of the absence of a word (e.g. a word of a hypothesis missing in another one) */
+	public static final int EPSILON = -1;
+
+	private final HashMap<String, Integer> ids = new HashMap<String, Integer>();
+	private final ArrayList<String> words = new ArrayList<String>();
+
+	/**
+	 * @return the id of a word, which is added to the vocabulary if it was not in it
+	 */
+	public synchronized int intern(String word) {
+		String normalized = word.toLowerCase(Locale.US);
+		Integer id = ids.get(normalized);
+		if(id==null) {
+			id = words.size();
+			ids.put(normalized, id);
+			words.add(normalized);
+		}
+		return id;
+	}
+
+	/**
+	 * @return the id of a word, or EPSILON if it is not in the vocabulary
+	 */
+	public synchronized int getId(String word) {
+		Integer id = ids.get(word.toLowerCase(Locale.US));
+		return id==null ? EPSILON : id;
+	}
+
+	/**
+	 * @return the word (lowercased) with an id, or null for EPSILON
+	 */
+	public synchronized String getWord(int id) {
+		return id==EPSILON ? null : words.get(id);
+	}
+
+	/**
+	 * @return number of words in the vocabulary, all the ids are smaller
+	 */
+	public synchronized int size() {
+		return words.size();
+	}
+
+	/**
+	 * Splits a text into words separated by blanks, adding them to the vocabulary if needed
+	 * @return the ids of the words of the text
+	 */
+	public int[] internPhrase(String text) {
+		int count = countWords(text);
+		int[] phrase = new int[count];
+		internWords(text, phrase, 0);
+		return phrase;
+	}
+
+	/**
+	 * @return number of words separated by blanks in a text
+	 */
+	static int countWords(String text) {
+		int count = 0;
+		boolean inWord = false;
+		for(int i=0; text!=null && i<text.length(); i++) {
+			boolean blank = Character.isWhitespace(text.charAt(i));
+			if(!blank && !inWord)
+				count++;
+			inWord = !blank;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the ids of the words of a text in an array, adding them to the vocabulary if needed
+	 * @return position of the array after the last id written
+	 */
+	int internWords(String text, int[] out, int offset) {
+		int start = -1;
+		for(int i=0; text!=null && i<=text.length(); i++) {
+			boolean blank = i==text.length() || Character.isWhitespace(text.charAt(i));
+			if(blank && start>=0) {
+				out[offset++] = intern(text.substring(start, i));
+				start = -1;
+			}
+			else if(!blank && start<0)
+				start = i;
+		}
+		return offset;
+	}
+}
@@ -0,0 +1,283 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+
+import android.content.Context;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.TextToSpeech.OnInitListener;
+import android.util.Log;
+
+/**
+ * Pool of warm <code>TextToSpeech</code> instances, one for each locale in use, so that a dialog that alternates
+ * languages (e.g. the prompts in English and the search criteria in Spanish) does not call <code>setLanguage</code>
+ * on a single instance for every prompt, which makes some engines reload the voice before the prompt is played.
+ *
+ * The voices are loaded by the engine service, so their memory cannot be measured from the application: the pool is 
+ * bounded by a memory budget divided by an estimate of the size of a voice, and when a new locale does not fit,
+ * the least recently used instance is shut down. An instance is never shut down while it has prompts queued.
+ *
+ * The pool also counts the prompts queued in each instance (including the main instance of <code>VoiceActivity</code>),
+ * so that the prompts can be played in order instead of being played at the same time by two instances.
+ * It can be used from any thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setTTSEnginePool(long)
+ */
+public class TtsEnginePool {
+
+	/**
+	 * Prepares the instances created by the pool (e.g. sets their utterance listeners)
+	 */
+	interface EngineSetup {
+		void setUp(TextToSpeech tts);
+	}
+
+	public static final long DEFAULT_VOICE_BYTES = 16 * 1024 * 1024;	//Estimated memory of a loaded voice
+
+	private static final String LIB_LOGTAG = "TTSENGINEPOOL";
+
+	private static final int STARTING = 0;
+	private static final int READY = 1;
+	private static final int FAILED = 2;
+
+	private final Context ctx;
+	private final EngineSetup setup;
+	private final int capacity;
+
+	private final LinkedHashMap<Locale, Engine> engines = new LinkedHashMap<Locale, Engine>(8, 0.75f, true);	//In access order
+	private final HashMap<TextToSpeech, Integer> queued = new HashMap<TextToSpeech, Integer>();	//Prompts not finished in each instance
+
+	private int hits = 0;
+	private int misses = 0;
+	private int created = 0;
+	private int evictions = 0;
+
+	/**
+	 * Instance of the synthesizer for a locale
+	 */
+	private class Engine implements OnInitListener {
+		final Locale locale;
+		final TextToSpeech tts;
+		int state = STARTING;
+		final long creationTime = System.currentTimeMillis();
+
+		Engine(Locale locale) {
+			this.locale = locale;
+			tts = new TextToSpeech(ctx, this);		//onInit is invoked afterwards in the main thread
+			setup.setUp(tts);
+		}
+
+		@Override
+		public void onInit(int status) {
+			synchronized(TtsEnginePool.this) {
+				if(state!=STARTING)
+					return;		//Shut down before it was ready
+				if(status!=TextToSpeech.ERROR && tts.setLanguage(locale)>=TextToSpeech.LANG_AVAILABLE) {
+					state = READY;
+					Log.d(LIB_LOGTAG, "Engine for " + locale + " ready in " + (System.currentTimeMillis() - creationTime) + " ms");
+				}
+				else {
+					state = FAILED;		//It is kept in the pool so that it is not created again, the main instance is used instead
+					tts.shutdown();
+					Log.e(LIB_LOGTAG, "The engine for " + locale + " could not be initialized");
+				}
+			}
+		}
+
+		void shutdown() {
+			if(state!=FAILED) {
+				tts.stop();
+				tts.shutdown();
+			}
+			state = FAILED;
+		}
+	}
+
+	/**
+	 * @param ctx context used to create the instances
+	 * @param maxBytes memory budget for the voices
+	 * @param voiceBytes estimated memory of a voice
+	 * @param setup object that prepares each instance when it is created
+	 */
+	TtsEnginePool(Context ctx, long maxBytes, long voiceBytes, EngineSetup setup) {
+		this.ctx = ctx;
+		this.setup = setup;
+		capacity = (int) Math.max(1, maxBytes / voiceBytes);
+	}
+
+	/**
+	 * Creates the instance for a locale in advance, so that it is ready when it is first used
+	 */
+	public synchronized void warm(Locale locale) {
+		if(!engines.containsKey(locale))
+			create(locale);
+	}
+
+	/**
+	 * Obtains the instance for a locale, creating it if it is not in the pool
+	 * @return the instance, with its language already set, or null if it is still being initialized or it could not be initialized
+	 */
+	synchronized TextToSpeech acquire(Locale locale) {
+		Engine engine = engines.get(locale);	//Marks it as the most recently used
+		if(engine==null)
+			engine = create(locale);
+		if(engine.state==READY) {
+			hits++;
+			return engine.tts;
+		}
+		misses++;
+		return null;
+	}
+
+	private Engine create(Locale locale) {
+		Engine engine = new Engine(locale);
+		engines.put(locale, engine);
+		created++;
+		
+		//The least recently used instances without prompts queued are shut down to stay within the budget
+		Iterator<Engine> it = engines.values().iterator();
+		while(engines.size()>capacity && it.hasNext()) {
+			Engine eldest = it.next();
+			if(eldest==engine || getQueued(eldest.tts)>0)
+				continue;
+			it.remove();
+			queued.remove(eldest.tts);
+			eldest.shutdown();
+			evictions++;
+			Log.d(LIB_LOGTAG, "Engine for " + eldest.locale + " shut down to make room for " + locale);
+		}
+		return engine;
+	}
+
+	/**
+	 * Records that a prompt has been queued in an instance. It must be invoked before queuing it, so that it is not finished before.
+	 */
+	synchronized void queued(TextToSpeech tts) {
+		queued.put(tts, getQueued(tts) + 1);
+	}
+
+	/**
+	 * Records that a prompt of an instance has finished (or could not be queued)
+	 */
+	synchronized void finished(TextToSpeech tts) {
+		int count = getQueued(tts);
+		if(count>1)
+			queued.put(tts, count - 1);
+		else
+			queued.remove(tts);
+	}
+
+	private int getQueued(TextToSpeech tts) {
+		Integer count = queued.get(tts);
+		return count==null ? 0 : count;
+	}
+
+	/**
+	 * @return true if any instance other than the one indicated has prompts that have not finished
+	 */
+	synchronized boolean isBusyExcept(TextToSpeech tts) {
+		for(TextToSpeech busy: queued.keySet())
+			if(busy!=tts)
+				return true;
+		return false;
+	}
+
+	/**
+	 * @return true if any instance of the pool is playing a prompt
+	 */
+	public synchronized boolean isSpeaking() {
+		for(Engine engine: engines.values())
+			if(engine.state==READY && engine.tts.isSpeaking())
+				return true;
+		return false;
+	}
+
+	/**
+	 * Stops the instances of the pool and flushes their prompts. The count of prompts queued is also reset 
+	 * for the instances that are not in the pool, which must be stopped separately.
+	 */
+	public synchronized void stop() {
+		for(Engine engine: engines.values())
+			if(engine.state==READY)
+				engine.tts.stop();
+		queued.clear();
+	}
+
+	/**
+	 * Shuts down all the instances, releasing their native resources
+	 */
+	public synchronized void shutdown() {
+		for(Engine engine: engines.values())
+			engine.shutdown();
+		engines.clear();
+		queued.clear();
+	}
+
+	/**
+	 * @return maximum number of instances
+	 */
+	public int getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return number of instances in the pool
+	 */
+	public synchronized int size() {
+		return engines.size();
+	}
+
+	/**
+	 * @return number of prompts played by an instance of the pool
+	 */
+	public synchronized int getHitCount() {
+		return hits;
+	}
+
+	/**
+	 * @return number of prompts for which the instance of the pool was not ready
+	 */
+	public synchronized int getMissCount() {
+		return misses;
+	}
+
+	/**
+	 * @return number of instances shut down to make room for other locales
+	 */
+	public synchronized int getEvictionCount() {
+		return evictions;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return engines.size() + "/" + capacity + " engines, " + created + " created, " + hits + " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+}
@@ -0,0 +1,228 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+/**
+ * Holds the calls to the synthesizer made before it has finished its initialization (e.g. a prompt spoken as soon as the 
+ * activity is created), which would otherwise fail, and runs them in order when it is ready.
+ *
+ * The calls are kept in a bounded queue: when it is full, the new calls are discarded. If the synthesizer is not initialized 
+ * before a timeout, or its initialization fails, the calls are discarded and the next ones are not held. The gate does not use 
+ * locks, so it can be checked in every call without cost once it is open.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#getTTSReadinessGate()
+ */
+public class TtsReadinessGate {
+
+	public static final int DEFAULT_CAPACITY = 16;
+	public static final long DEFAULT_TIMEOUT = 5000;		//ms
+
+	private static final String LIB_LOGTAG = "TTSREADINESSGATE";
+
+	private static final int WAITING = 0;
+	private static final int OPEN = 1;
+	private static final int ABANDONED = 2;
+
+	/**
+	 * Call held until the synthesizer is ready
+	 */
+	private static class Call {
+		final Runnable runnable;
+		final long time = SystemClock.elapsedRealtime();
+
+		Call(Runnable runnable) {
+			this.runnable = runnable;
+		}
+	}
+
+	private final AtomicInteger state = new AtomicInteger(WAITING);
+	private final ConcurrentLinkedQueue<Call> calls = new ConcurrentLinkedQueue<Call>();
+	private final AtomicInteger size = new AtomicInteger(0);
+	private final AtomicBoolean draining = new AtomicBoolean(false);		//Only one thread runs the calls, so they are run in order
+	private final int capacity;
+	private volatile long timeout = DEFAULT_TIMEOUT;
+	private volatile long closeTime = SystemClock.elapsedRealtime();
+	private volatile long initTime = -1;
+
+	private final AtomicInteger deferred = new AtomicInteger(0);
+	private final AtomicInteger dropped = new AtomicInteger(0);
+	private final AtomicInteger run = new AtomicInteger(0);
+	private final AtomicLong waitTotal = new AtomicLong(0);
+	private final AtomicLong waitMax = new AtomicLong(0);
+
+	public TtsReadinessGate() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param capacity maximum number of calls held
+	 */
+	public TtsReadinessGate(int capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * @param timeout time (ms) that the calls are held waiting for the initialization of the synthesizer
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	public long getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Holds a call if the synthesizer is not ready
+	 * @return true if the call has been held (or discarded because the queue is full), false if it must be run now
+	 */
+	public boolean defer(Runnable call) {
+		if(state.get()!=WAITING)
+			return false;
+		if(size.incrementAndGet()>capacity) {
+			size.decrementAndGet();
+			dropped.incrementAndGet();
+			Log.w(LIB_LOGTAG, "Too many calls waiting for the TTS, call discarded");
+			return true;
+		}
+		calls.add(new Call(call));
+		deferred.incrementAndGet();
+		if(state.get()!=WAITING)
+			drain();		//It was opened or abandoned while the call was being queued
+		return true;
+	}
+
+	/**
+	 * Closes the gate, so that the next calls are held until <code>open</code> is invoked (e.g. when a new synthesizer is created)
+	 */
+	void close() {
+		closeTime = SystemClock.elapsedRealtime();
+		state.set(WAITING);
+	}
+
+	/**
+	 * Opens the gate because the synthesizer is ready, running the calls held in the thread that invokes it
+	 */
+	void open() {
+		initTime = SystemClock.elapsedRealtime() - closeTime;
+		state.set(OPEN);
+		drain();
+	}
+
+	/**
+	 * Discards the calls held because the synthesizer could not be initialized (or took too long). The next calls are not held.
+	 */
+	void abandon() {
+		if(state.compareAndSet(WAITING, ABANDONED)) {
+			Log.e(LIB_LOGTAG, "The TTS was not ready after " + (SystemClock.elapsedRealtime() - closeTime) + " ms, " + size.get() + " calls discarded");
+			drain();
+		}
+	}
+
+	private void drain() {
+		while(!calls.isEmpty() && draining.compareAndSet(false, true)) {
+			try {
+				Call call;
+				while(state.get()!=WAITING && (call = calls.poll())!=null) {
+					size.decrementAndGet();
+					if(state.get()==OPEN) {
+						long wait = SystemClock.elapsedRealtime() - call.time;
+						waitTotal.addAndGet(wait);
+						long max = waitMax.get();
+						while(wait>max && !waitMax.compareAndSet(max, wait))
+							max = waitMax.get();
+						run.incrementAndGet();
+						call.runnable.run();
+					}
+					else
+						dropped.incrementAndGet();
+				}
+			} finally {
+				draining.set(false);
+			}
+			if(state.get()==WAITING)
+				break;
+		}
+	}
+
+	/**
+	 * @return true if the synthesizer is ready
+	 */
+	public boolean isOpen() {
+		return state.get()==OPEN;
+	}
+
+	/**
+	 * @return time (ms) that the last synthesizer took to be initialized, or -1 if it has not been initialized
+	 */
+	public long getInitTime() {
+		return initTime;
+	}
+
+	/**
+	 * @return number of calls held until the synthesizer was ready
+	 */
+	public int getDeferredCount() {
+		return deferred.get();
+	}
+
+	/**
+	 * @return number of calls discarded because the queue was full or the synthesizer could not be initialized
+	 */
+	public int getDroppedCount() {
+		return dropped.get();
+	}
+
+	/**
+	 * @return average time (ms) that the calls run were held waiting for the synthesizer
+	 */
+	public long getWaitAverage() {
+		int count = run.get();
+		return count==0 ? 0 : waitTotal.get() / count;
+	}
+
+	/**
+	 * @return maximum time (ms) that a call was held waiting for the synthesizer
+	 */
+	public long getWaitMax() {
+		return waitMax.get();
+	}
+
+	@Override
+	public String toString() {
+		return "Init time " + initTime + " ms, " + deferred.get() + " calls held, " + dropped.get() + " discarded, wait average "
+				+ getWaitAverage() + " ms, max " + waitMax.get() + " ms";
+	}
+}
@@ -0,0 +1,374 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+
+import android.os.SystemClock;
+
+/**
+ * Queue of the prompts of <code>VoiceActivity</code> before they are passed to the synthesizer. Each prompt is given a unique
+ * utterance id, so that the events of the synthesizer can be mapped back to the prompt (and to the id chosen by the application,
+ * which is usually shared by many prompts), and it can have its own callback.
+ *
+ * The prompts are ordered by priority, and by order of arrival within the same priority. Only a few of them are passed to the
+ * synthesizer at a time, so the rest can still be reordered or discarded: a new <code>PRIORITY_INFO</code> prompt supersedes 
+ * the informative prompts that have not been played yet (or is coalesced with them, see <code>setInfoPolicy</code>), so that
+ * stale information is not played after fresh answers. The queue is bounded: when it is full, the prompt with lowest priority 
+ * is discarded.
+ *
+ * The time from each prompt being queued to it starting to play is recorded. It can be used from any thread.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#speak(String, String, Integer, int, UtteranceScheduler.Callback)
+ */
+public class UtteranceScheduler {
+
+	/**
+	 * Receives the end of a prompt
+	 */
+	public interface Callback {
+		/**
+		 * Invoked when the prompt has finished, in the thread of the events of the synthesizer (or in the one that discarded it)
+		 * @param outcome DONE, ERROR, DROPPED or MERGED
+		 */
+		public void onUtteranceFinished(Utterance utterance, int outcome);
+	}
+
+	public static final int PRIORITY_INFO = 0;		//Informative prompts, a new one supersedes the ones not played yet
+	public static final int PRIORITY_NORMAL = 1;	//Default priority, played in order of arrival
+	public static final int PRIORITY_URGENT = 2;	//Played before the rest of prompts not played yet
+
+	public static final int SUPERSEDE = 0;			//The new informative prompt replaces the previous ones
+	public static final int COALESCE = 1;			//The new informative prompt is played after the previous ones in a single utterance
+
+	public static final int DONE = 0;				//The prompt was played
+	public static final int ERROR = 1;				//The synthesizer could not play the prompt
+	public static final int DROPPED = 2;			//The prompt was discarded (superseded, queue full or synthesizer stopped)
+	public static final int MERGED = 3;				//The prompt was coalesced into a later one, which plays its text
+
+	public static final int DEFAULT_CAPACITY = 16;
+	public static final int DEFAULT_MAX_IN_FLIGHT = 2;	//One playing and the next one, so the synthesizer can prepare it in advance
+
+	private static final String UTTERANCE_PREFIX = "Utterance:";
+
+	/**
+	 * A prompt and its state in the scheduler
+	 */
+	public static class Utterance {
+		private final String utteranceId;
+		private final Integer id;
+		private String text;
+		private final Locale locale;
+		private final int priority;
+		private final Callback callback;
+		private final long sequence;
+		private final long enqueueTime = SystemClock.elapsedRealtime();
+		private long startLatency = -1;
+
+		Utterance(String utteranceId, long sequence, Integer id, String text, Locale locale, int priority, Callback callback) {
+			this.utteranceId = utteranceId;
+			this.sequence = sequence;
+			this.id = id;
+			this.text = text;
+			this.locale = locale;
+			this.priority = priority;
+			this.callback = callback;
+		}
+
+		/**
+		 * @return unique id used with the synthesizer
+		 */
+		public String getUtteranceId() {
+			return utteranceId;
+		}
+
+		/**
+		 * @return id given by the application
+		 */
+		public Integer getId() {
+			return id;
+		}
+
+		public synchronized String getText() {
+			return text;
+		}
+
+		public Locale getLocale() {
+			return locale;
+		}
+
+		public int getPriority() {
+			return priority;
+		}
+
+		/**
+		 * @return time (ms) from the prompt being queued to it starting to play, or -1 if it has not started
+		 */
+		public synchronized long getStartLatency() {
+			return startLatency;
+		}
+	}
+
+	private final Comparator<Utterance> order = new Comparator<Utterance>() {
+		@Override
+		public int compare(Utterance a, Utterance b) {
+			if(a.priority!=b.priority)
+				return b.priority - a.priority;
+			return a.sequence<b.sequence ? -1 : (a.sequence>b.sequence ? 1 : 0);
+		}
+	};
+
+	private final PriorityQueue<Utterance> queue = new PriorityQueue<Utterance>(DEFAULT_CAPACITY, order);
+	private final LinkedHashMap<String, Utterance> inFlight = new LinkedHashMap<String, Utterance>();	//Passed to the synthesizer
+	private int capacity = DEFAULT_CAPACITY;
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	private int infoPolicy = SUPERSEDE;
+	private long sequence = 0;
+
+	private int started = 0;
+	private long startLatencyTotal = 0;
+	private long startLatencyMax = 0;
+	private int superseded = 0;
+	private int coalesced = 0;
+	private int overflows = 0;
+
+	/**
+	 * @param capacity maximum number of prompts waiting to be passed to the synthesizer
+	 */
+	public synchronized void setCapacity(int capacity) {
+		this.capacity = Math.max(1, capacity);
+	}
+
+	/**
+	 * @param maxInFlight maximum number of prompts passed to the synthesizer that have not finished
+	 */
+	public synchronized void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
+	}
+
+	/**
+	 * @param infoPolicy what to do with the informative prompts not played yet when a new one arrives: SUPERSEDE or COALESCE
+	 */
+	public synchronized void setInfoPolicy(int infoPolicy) {
+		this.infoPolicy = infoPolicy;
+	}
+
+	/**
+	 * Queues a prompt
+	 * @param id id given by the application, which is passed to <code>onTTSDone</code>, <code>onTTSError</code> and <code>onTTSStart</code>
+	 * @param callback object notified when the prompt finishes, or null
+	 * @return the prompt, with its unique utterance id
+	 */
+	Utterance add(Integer id, String text, Locale locale, int priority, Callback callback) {
+		List<Utterance> dropped = new ArrayList<Utterance>();
+		List<Utterance> merged = new ArrayList<Utterance>();
+		Utterance utterance;
+		synchronized(this) {
+			sequence++;
+			utterance = new Utterance(UTTERANCE_PREFIX + sequence, sequence, id, text, locale, priority, callback);
+			
+			if(priority==PRIORITY_INFO) {
+				Iterator<Utterance> it = queue.iterator();
+				while(it.hasNext()) {
+					Utterance older = it.next();
+					if(older.priority!=PRIORITY_INFO)
+						continue;
+					it.remove();
+					if(infoPolicy==COALESCE && older.locale.equals(locale))
+						merged.add(older);
+					else
+						dropped.add(older);
+				}
+				superseded += dropped.size();
+				coalesced += merged.size();
+				if(!merged.isEmpty()) {
+					Collections.sort(merged, order);
+					StringBuilder coalescedText = new StringBuilder();
+					for(Utterance older: merged)
+						coalescedText.append(older.getText()).append(' ');
+					utterance.text = coalescedText.append(text).toString();
+				}
+			}
+			
+			if(queue.size()>=capacity) {
+				Utterance last = utterance;		//The one that would be played last
+				for(Utterance queued: queue)
+					if(order.compare(queued, last)>0)
+						last = queued;
+				overflows++;
+				dropped.add(last);
+				if(last!=utterance) {
+					queue.remove(last);
+					queue.add(utterance);
+				}
+			}
+			else
+				queue.add(utterance);
+		}
+		notifyCallbacks(merged, MERGED);
+		notifyCallbacks(dropped, DROPPED);
+		return utterance;
+	}
+
+	/**
+	 * @return the next prompt to be passed to the synthesizer, or null if there are none or too many have not finished
+	 */
+	synchronized Utterance peek() {
+		return inFlight.size()<maxInFlight ? queue.peek() : null;
+	}
+
+	/**
+	 * Records that the prompt obtained with <code>peek</code> has been passed to the synthesizer
+	 */
+	synchronized void dispatched(Utterance utterance) {
+		queue.remove(utterance);
+		inFlight.put(utterance.utteranceId, utterance);
+	}
+
+	/**
+	 * Records that a prompt has started playing
+	 * @return the prompt, or null if the utterance id does not belong to a prompt passed to the synthesizer or it had already started
+	 */
+	synchronized Utterance started(String utteranceId) {
+		Utterance utterance = inFlight.get(utteranceId);
+		if(utterance==null)
+			return null;
+		synchronized(utterance) {
+			if(utterance.startLatency>=0)
+				return null;
+			utterance.startLatency = SystemClock.elapsedRealtime() - utterance.enqueueTime;
+			started++;
+			startLatencyTotal += utterance.startLatency;
+			startLatencyMax = Math.max(startLatencyMax, utterance.startLatency);
+		}
+		return utterance;
+	}
+
+	/**
+	 * Records that a prompt has finished, notifying its callback
+	 * @return the prompt, or null if the utterance id does not belong to a prompt passed to the synthesizer (e.g. it was discarded)
+	 */
+	Utterance finished(String utteranceId, boolean success) {
+		Utterance utterance;
+		synchronized(this) {
+			utterance = inFlight.remove(utteranceId);
+		}
+		if(utterance!=null && utterance.callback!=null)
+			utterance.callback.onUtteranceFinished(utterance, success ? DONE : ERROR);
+		return utterance;
+	}
+
+	/**
+	 * Discards all the prompts, including the ones passed to the synthesizer, which must be stopped separately
+	 */
+	void clear() {
+		List<Utterance> dropped = new ArrayList<Utterance>();
+		synchronized(this) {
+			dropped.addAll(inFlight.values());
+			dropped.addAll(queue);
+			inFlight.clear();
+			queue.clear();
+		}
+		notifyCallbacks(dropped, DROPPED);
+	}
+
+	private static void notifyCallbacks(List<Utterance> utterances, int outcome) {
+		for(Utterance utterance: utterances)
+			if(utterance.callback!=null)
+				utterance.callback.onUtteranceFinished(utterance, outcome);
+	}
+
+	/**
+	 * @return true if there are no prompts waiting or passed to the synthesizer without finishing
+	 */
+	public synchronized boolean isIdle() {
+		return queue.isEmpty() && inFlight.isEmpty();
+	}
+
+	/**
+	 * @return number of prompts waiting to be passed to the synthesizer
+	 */
+	public synchronized int getQueuedCount() {
+		return queue.size();
+	}
+
+	/**
+	 * @return number of prompts passed to the synthesizer that have not finished
+	 */
+	public synchronized int getInFlightCount() {
+		return inFlight.size();
+	}
+
+	/**
+	 * @return average time (ms) from a prompt being queued to it starting to play
+	 */
+	public synchronized long getStartLatencyAverage() {
+		return started==0 ? 0 : startLatencyTotal / started;
+	}
+
+	/**
+	 * @return maximum time (ms) from a prompt being queued to it starting to play
+	 */
+	public synchronized long getStartLatencyMax() {
+		return startLatencyMax;
+	}
+
+	/**
+	 * @return number of informative prompts discarded because a newer one arrived
+	 */
+	public synchronized int getSupersededCount() {
+		return superseded;
+	}
+
+	/**
+	 * @return number of informative prompts coalesced into a newer one
+	 */
+	public synchronized int getCoalescedCount() {
+		return coalesced;
+	}
+
+	/**
+	 * @return number of prompts discarded because the queue was full
+	 */
+	public synchronized int getOverflowCount() {
+		return overflows;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return queue.size() + " queued, " + inFlight.size() + " in the synthesizer, " + started + " started (average latency " 
+				+ getStartLatencyAverage() + " ms, max " + startLatencyMax + " ms), " + superseded + " superseded, " 
+				+ coalesced + " coalesced, " + overflows + " overflows";
+	}
+}
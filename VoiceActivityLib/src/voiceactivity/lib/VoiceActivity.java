@@ -1,524 +1,2436 @@
-package voiceactivity.lib;
-/*
- *  Copyright 2014 Zoraida Callejas and Michael McTear
- *
- *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
- *   
- *  This program is free software: you can redistribute it and/or modify
- *  it under the terms of the GNU General Public License as published by
- *  the Free Software Foundation, either version 3 of the License, or
- *  (at your option) any later version.
-
- *  This program is distributed in the hope that it will be useful,
- *  but WITHOUT ANY WARRANTY; without even the implied warranty of
- *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
- *  GNU General Public License for more details.
-
- *  You should have received a copy of the GNU General Public License
- *   along with this program. If not, see <http://www.gnu.org/licenses/>. 
- *   
- *  This file is an update of the contents of the book:
- *  Voice Application Development for Android, Michael McTear and Zoraida Callejas, 
- *  PACKT Publishing 2013 <http://www.packtpub.com/voice-application-development-for-android/book>,
- *  <http://lsi.ugr.es/zoraida/androidspeechbook>
- */
-
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Locale;
-
-import android.annotation.SuppressLint;
-import android.app.Activity;
-import android.content.Context;
-import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.content.pm.ResolveInfo;
-import android.os.Build;
-import android.os.Bundle;
-import android.speech.RecognitionListener;
-import android.speech.RecognizerIntent;
-import android.speech.SpeechRecognizer;
-import android.speech.tts.TextToSpeech;
-import android.speech.tts.TextToSpeech.OnInitListener;
-import android.speech.tts.TextToSpeech.OnUtteranceCompletedListener;
-import android.speech.tts.UtteranceProgressListener;
-import android.util.Log;
-
-/**
- * Abstract class for voice interaction that encapsulates the management of the ASR and TTS engines.
- * It contains abstract methods for processing the ASR and TTS events that may occur, which may be implemented 
- * in a non-abstract subclass to carry out a detailed management.
- * 
- * @author Zoraida Callejas
- * @author Michael McTear
- * @version 1.0, 02/19/14
- * 
- * @see http://developer.android.com/reference/android/speech/tts/TextToSpeech.html
- * @see http://developer.android.com/reference/android/speech/tts/UtteranceProgressListener.html
- */
-
-
-public abstract class VoiceActivity extends Activity implements RecognitionListener, OnInitListener{
-
-	private SpeechRecognizer myASR;
-	private TextToSpeech myTTS;			
-	Context ctx;
-	
-	private static final String LIB_LOGTAG = "VOICEACTIVITY_LIB";
-	
-	
-/**********************************************************************************************************************************************************************
- **********************************************************************************************************************************************************************
- * 
- * 					AUTOMATIC SPEECH RECOGNITION
- * 
- **********************************************************************************************************************************************************************
- **********************************************************************************************************************************************************************/
-	
-	/**
-	 * Creates the speech recognizer and text-to-speech synthesizer instances
-	 * @see RecognitionListener.java
-	 * @param ctx context of the interaction
-	 * */
-	public void initSpeechInputOutput(Context ctx) {
-			this.ctx = ctx;
-			PackageManager packManager = ctx.getPackageManager();
-			
-			setTTS();
-			
-			// find out whether speech recognition is supported
-			List<ResolveInfo> intActivities = packManager.queryIntentActivities(
-					new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH), 0);
-			if (intActivities.size() != 0) {
-				myASR = SpeechRecognizer.createSpeechRecognizer(ctx);
-				myASR.setRecognitionListener(this);
-			}
-			else
-				myASR = null;
-	}
-	
-	/**
-	 * Starts speech recognition after checking the ASR parameters
-	 * 
-	 * @param language Language used for speech recognition (e.g. Locale.ENGLISH)
-	 * @param languageModel Type of language model used (free form or web search)
-	 * @param maxResults Maximum number of recognition results
-	 * @exception An exception is raised if the language specified is not available or the other parameters are not valid
-	 * @see OnLanguageDetailsListener.java
-	 * @see LanguageDetailsChecker.java
-	 */
-	public void listen(final Locale language, final String languageModel, final int maxResults) throws Exception 
-    {
-		if((languageModel.equals(RecognizerIntent.LANGUAGE_MODEL_FREE_FORM) || languageModel.equals(RecognizerIntent.LANGUAGE_MODEL_WEB_SEARCH)) && (maxResults>=0)) 
-		{
-
-	        OnLanguageDetailsListener andThen = new OnLanguageDetailsListener() //From https://github.com/gast-lib (see the OnLanguageDetailsListener class)
-	        {
-	            @Override
-	            public void onLanguageDetailsReceived(LanguageDetailsChecker data)
-	            {
-	                String recognitionLanguage = data.matchLanguage(language); //Do a best match
-	                if(recognitionLanguage!=null)
-	                	startASR(recognitionLanguage, languageModel, maxResults);
-	            }
-	        };
-	
-	        Intent detailsIntent = new Intent(RecognizerIntent.ACTION_GET_LANGUAGE_DETAILS);
-	        LanguageDetailsChecker checker = new LanguageDetailsChecker(andThen);	//From https://github.com/gast-lib (see the LanguageDetailsChecker class)
-	        sendOrderedBroadcast(detailsIntent, null, checker, null,Activity.RESULT_OK, null, null);
-		
-		}
-		else {
-			Log.e(LIB_LOGTAG, "Invalid params to listen method");
-			throw new Exception("Invalid params to listen method"); //If the input parameters are not valid, it throws an exception
-		}
-
-    }	
-	
-	/**
-	 * Actually starts speech recognition once the parameters have been checked (invoked by the listen method)
-	 * @param language Language used for speech recognition (e.g. Locale.ENGLISH)
-	 * @param languageModel Type of language model used (free form or web search)
-	 * @param maxResults Maximum number of recognition results
-	 */
-	private void startASR(String language, String languageModel, int maxResults){
-	
-		Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
-
-		// Specify the calling package to identify the application
-		intent.putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE, ctx.getPackageName());
-			//Caution: be careful not to use: getClass().getPackage().getName());
-
-		// Specify language model
-		intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, languageModel);
-
-		// Specify how many results to receive. Results listed in order of confidence
-		intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, maxResults);  
-		
-		// Specify recognition language
-		intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, language);
-		
-    	myASR.startListening(intent);
-	}
-	
-	
-	/**
-	 * Stops listening to the user
-	 */
-	public void stopListening(){
-		myASR.stopListening();
-	}
-	
-	/********************************************************************************************************
-	 * This class implements the {@link android.speech.RecognitionListener} interface, 
-	 * thus it implement its methods. However not all of them were interesting to us:
-	 * ******************************************************************************************************
-	 */
-
-	@SuppressLint("InlinedApi")
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * Invoked when the ASR provides recognition results
-	 * 
-	 * @see android.speech.RecognitionListener#onResults(android.os.Bundle)
-	 */
-	@Override
-	public void onResults(Bundle results) {
-		if(results!=null){
-			
-			if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {  //Checks the API level because the confidence scores are supported only from API level 14: 
-																					//http://developer.android.com/reference/android/speech/SpeechRecognizer.html#CONFIDENCE_SCORES
-				//Processes the recognition results and their confidences
-				processAsrResults (results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION), results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES));
-				//											Attention: It is not RecognizerIntent.EXTRA_RESULTS, that is for intents (see the ASRWithIntent app)
-			}
-			else {
-				//Processes the recognition results and their confidences
-				processAsrResults (results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION), null); 
-			}
-		}
-		else
-			//Processes recognition errors
-			processAsrError(SpeechRecognizer.ERROR_NO_MATCH);
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * Invoked when the ASR is ready to start listening
-	 * 
-	 * @see android.speech.RecognitionListener#onReadyForSpeech(android.os.Bundle)
-	 */
-	@Override
-	public void onReadyForSpeech(Bundle arg0) {
-		processAsrReadyForSpeech();
-	}
-	
-	/*
-	 * (non-Javadoc)
-	 * 
-	 * Invoked when the ASR encounters an error
-	 * 
-	 * @see android.speech.RecognitionListener#onError(int)
-	 */
-	@Override
-	public void onError(int errorCode) {
-		processAsrError(errorCode);
-	}
-
-	/*
-	 * (non-Javadoc)
-	 * @see android.speech.RecognitionListener#onBeginningOfSpeech()
-	 */
-	@Override
-	public void onBeginningOfSpeech() {	}
-
-	/*
-	 * (non-Javadoc)
-	 * @see android.speech.RecognitionListener#onBufferReceived(byte[])
-	 */
-	@Override
-	public void onBufferReceived(byte[] buffer) { }
-	
-	/*
-	 * (non-Javadoc)
-	 * @see android.speech.RecognitionListener#onBeginningOfSpeech()
-	 */
-	@Override
-	public void onEndOfSpeech() {}
-
-	/*
-	 * (non-Javadoc)
-	 * @see android.speech.RecognitionListener#onEvent(int, android.os.Bundle)
-	 */
-	@Override
-	public void onEvent(int arg0, Bundle arg1) {}
-
-	/*
-	 * (non-Javadoc)
-	 * @see android.speech.RecognitionListener#onPartialResults(android.os.Bundle)
-	 */
-	@Override
-	public void onPartialResults(Bundle arg0) {}
-
-		/*
-	 * (non-Javadoc)
-	 * @see android.speech.RecognitionListener#onRmsChanged(float)
-	 */
-	@Override
-	public void onRmsChanged(float arg0) {
-	}
-	
-	/**
-	 * Processes the ASR recognition results 
-	 * @param nBestList	List of the N recognition results
-	 * @param nBestConfidences List of the N corresponding confidences
-	 */
-	public abstract void processAsrResults(ArrayList<String> nBestList, float [] nBestConfidences);	
-
-	/**
-	 * Processes the situation in which the ASR engine is ready to listen
-	 */
-	public abstract void processAsrReadyForSpeech();
-	
-	/**
-	 * Processes ASR error situations
-	 * @param errorCode code of the error (constant of the {@link android.speech.SpeechRecognizer} class
-	 */
-	public abstract void processAsrError(int errorCode);
-	
-	
-	
-	
-/**********************************************************************************************************************************************************************
- **********************************************************************************************************************************************************************
- * 
- * 					TEXT TO SPEECH
- * 
- **********************************************************************************************************************************************************************
- **********************************************************************************************************************************************************************/
-	
-	/**
-	 * Starts the TTS engine. It is work-around to avoid implementing the UtteranceProgressListener abstract class.
-	 * 
-	 * @author Method by Greg Milette (comments incorporated by us). Source: https://github.com/gast-lib/gast-lib/blob/master/library/src/root/gast/speech/voiceaction/VoiceActionExecutor.java
-	 * @see See the problem here: http://stackoverflow.com/questions/11703653/why-is-utteranceprogresslistener-not-an-interface
-	 */
-	@SuppressLint("NewApi")
-	@SuppressWarnings("deprecation")
-	public void setTTS()
-    {
-		myTTS = new TextToSpeech(ctx,(OnInitListener) this);
-		
-		/*
-		 * The listener for the TTS events varies depending on the Android version used:
-		 * the most updated one is UtteranceProgressListener, but in SKD versions
-		 * 15 or earlier, it is necessary to use the deprecated OnUtteranceCompletedListener
-		 */
-		
-        if (Build.VERSION.SDK_INT >= 15)
-        {
-            myTTS.setOnUtteranceProgressListener(new UtteranceProgressListener()
-            {
-                @Override
-                public void onDone(String utteranceId) //TTS finished synthesizing
-                {
-                    onTTSDone(utteranceId);
-                }
-
-                @Override
-                public void onError(String utteranceId) //TTS encountered an error while synthesizing
-                {
-                	onTTSError(utteranceId);
-                }
-
-                @Override
-                public void onStart(String utteranceId) //TTS has started synthesizing
-                {
-                	onTTSStart(utteranceId);
-                }
-            });
-        }
-        else
-        {
-            myTTS.setOnUtteranceCompletedListener(new OnUtteranceCompletedListener()
-            {
-                @Override
-                public void onUtteranceCompleted(final String utteranceId)
-                {
-                    onTTSDone(utteranceId);			//Earlier SDKs only consider the onTTSDone event
-                }
-            });
-        }
-    }
-	
-	/**
-	 * Invoked when the utterance uttId has successfully completed processing
-	 */
-	public abstract void onTTSDone(String uttId);
-
-
-	/**
-	 * Invoked when an error has occurred while processing the utterance uttId
-	 */
-	public abstract void onTTSError(String uttId);
-
-	/**
-	 * Invoked when the utterance uttId "starts" as perceived by the user
-	 */
-	public abstract void onTTSStart(String uttId);
-	
-	/**
-	 * Sets the locale for speech synthesis taking into account the language and country codes
-	 * If the <code>countryCode</code> is null, it just sets the language, if the 
-	 * <code>languageCode</code> is null, it uses the default language of the device
-	 * If any of the codes are not valid, it uses the default language
-	 * 
-	 * @param languageCode a String representing the language code, e.g. EN
-	 * @param countryCode a String representing the country code for the language used, e.g. US. 
-	 * @throws Exception when the codes supplied cannot be used and the default locale is selected
-	 */
-	public void setLocale(String languageCode, String countryCode) throws Exception{
-	    if(languageCode==null)
-	    {
-	    	setLocale();
-	    	throw new Exception("Language code was not provided, using default locale");
-	    }
-	    else{
-	    	if(countryCode==null)
-	    		setLocale(languageCode);
-	    	else {
-	    		Locale lang = new Locale(languageCode, countryCode);
-		    	if (myTTS.isLanguageAvailable(lang) == TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE )
-		    		myTTS.setLanguage(lang);
-		    	{
-		    		setLocale();
-		    		throw new Exception("Language or country code not supported, using default locale");
-		    	}
-	    	}
-	    }
-	}
-	
-	/**
-	 * Sets the locale for speech synthesis taking into account the language code
-	 * If the code is null or not valid, it uses the default language of the device
-	 * 
-	 * @param languageCode a String representing the language code, e.g. EN
-	 * @throws Exception when the code supplied cannot be used and the default locale is selected
-	 */
-	public void setLocale(String languageCode) throws Exception{
-		if(languageCode==null)
-		{
-			setLocale();
-			throw new Exception("Language code was not provided, using default locale");
-		}
-		else {
-			Locale lang = new Locale(languageCode);
-			if (myTTS.isLanguageAvailable(lang) != TextToSpeech.LANG_MISSING_DATA && myTTS.isLanguageAvailable(lang) != TextToSpeech.LANG_NOT_SUPPORTED)
-				myTTS.setLanguage(lang);
-			else
-			{
-				setLocale();
-				throw new Exception("Language code not supported, using default locale");
-			}
-		}
-	}
-
-	/**
-	 * Sets the default language of the device as locale for speech synthesis
-	 */
-	public void setLocale(){
-		myTTS.setLanguage(Locale.getDefault());
-	}
-	
-	/**
-	 * Synthesizes a text in the language indicated (or in the default language of the device
-	 * it it is not available) 
-	 * 
-	 * @param languageCode language for the TTS, e.g. EN
-	 * @param countryCode country for the TTS, e.g. US
-	 * @param text string to be synthesized
-	 * @param id integer that identifies the prompt uniquely
-	 * @throws Exception when the codes supplied cannot be used and the default locale is selected
-	 */
-	public void speak(String text, String languageCode, String countryCode, Integer id) throws Exception{
-		setLocale(languageCode, countryCode);
-		HashMap<String, String> params = new HashMap<String, String>();
-		params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, id.toString());
-		myTTS.speak(text, TextToSpeech.QUEUE_ADD, params); 		
-	}
-	
-	/**
-	 * Synthesizes a text in the language indicated (or in the default language of the device
-	 * if it is not available)
-	 * 
-	 * @param languageCode language for the TTS, e.g. EN
-	 * @param text string to be synthesized
-	 * @param id integer that identifies the prompt uniquely
-	 * @throws Exception when the code supplied cannot be used and the default locale is selected
-	 */
-	public void speak(String text, String languageCode, Integer id) throws Exception{
-		setLocale(languageCode);
-		HashMap<String, String> params = new HashMap<String, String>();
-		params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, id.toString());
-		myTTS.speak(text, TextToSpeech.QUEUE_ADD, params); 		
-	}
-	
-	/**
-	 * Synthesizes a text using the default language of the device
-	 * 
-	 * @param text string to be synthesized
-	 * @param id integer that identifies the prompt uniquely
-	 */
-	public void speak(String text, Integer id){
-		setLocale();
-		HashMap<String, String> params = new HashMap<String, String>();
-		params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, id.toString());
-		myTTS.speak(text, TextToSpeech.QUEUE_ADD, params); 		
-	}
-	
-	/**
-	 * Stops the synthesizer if it is speaking 
-	 */
-	public void stop(){
-		if(myTTS.isSpeaking())
-			myTTS.stop();
-	}
-	
-	/**
-	 * Stops the speech synthesis engine. It is important to call it, as
-	 * it releases the native resources used.
-	 */
-	public void shutdown(){
-		myTTS.stop();
-		myTTS.shutdown();
-		myTTS=null;			/*
-		 						This is necessary in order to force the creation of a new TTS instance after shutdown. 
-		 						It is useful for handling runtime changes such as a change in the orientation of the device,
-		 						as it is necessary to create a new instance with the new context.
-		 						See here: http://developer.android.com/guide/topics/resources/runtime-changes.html
-							*/
-	}
-	
-	/*
-	 * A <code>TextToSpeech</code> instance can only be used to synthesize text once 
-	 * it has completed its initialization. 
-	 * (non-Javadoc)
-	 * @see android.speech.tts.TextToSpeech.OnInitListener#onInit(int)
-	 */
-	@Override
-	public void onInit(int status) {
-		if(status != TextToSpeech.ERROR){
-			setLocale();
-	    }
-		else
-		{
-			Log.e(LIB_LOGTAG, "Error creating the TTS");
-		}
-		
-	}
-
-}
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *   
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>. 
+ *   
+ *  This file is an update of the contents of the book:
+ *  Voice Application Development for Android, Michael McTear and Zoraida Callejas, 
+ *  PACKT Publishing 2013 <http://www.packtpub.com/voice-application-development-for-android/book>,
+ *  <http://lsi.ugr.es/zoraida/androidspeechbook>
+ */
+
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+
+import android.annotation.SuppressLint;
+import android.app.Activity;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.content.pm.ResolveInfo;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Environment;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+import android.speech.tts.TextToSpeech;
+import android.speech.tts.TextToSpeech.OnInitListener;
+import android.speech.tts.TextToSpeech.OnUtteranceCompletedListener;
+import android.speech.tts.UtteranceProgressListener;
+import android.util.Log;
+
+/**
+ * Abstract class for voice interaction that encapsulates the management of the ASR and TTS engines.
+ * It contains abstract methods for processing the ASR and TTS events that may occur, which may be implemented 
+ * in a non-abstract subclass to carry out a detailed management.
+ * 
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 02/19/14
+ * 
+ * @see http://developer.android.com/reference/android/speech/tts/TextToSpeech.html
+ * @see http://developer.android.com/reference/android/speech/tts/UtteranceProgressListener.html
+ */
+
+
+public abstract class VoiceActivity extends Activity implements RecognitionListener, OnInitListener{
+
+	private SpeechRecognizer myASR;
+	private TextToSpeech myTTS;			
+	Context ctx;
+	
+	private static final String LIB_LOGTAG = "VOICEACTIVITY_LIB";
+	
+	private final HashMap<Locale, Integer> ttsAvailability = new HashMap<Locale, Integer>();	//Result of isLanguageAvailable for each locale
+	private Locale[] ttsLocales = new Locale[0];	//Locales whose availability is checked when the TTS is initialized
+	private Locale ttsLocale = null;				//Locale currently set in the TTS, null if unknown
+	private Locale speakLocale = null;				//Locale selected for the next prompts
+	private Locale lastPromptLocale = null;			//Locale of the last prompt played
+	private int localeRequests = 0;
+	private int localeSwitches = 0;
+	
+	private TtsEnginePool enginePool = null;		//Instances of the TTS for other locales (only if it is enabled)
+	private final UtteranceScheduler scheduler = new UtteranceScheduler();	//Prompts not passed to the TTS yet or not finished
+	private final TtsReadinessGate ttsGate = new TtsReadinessGate();		//Holds the calls made before the TTS is initialized
+	private String switchUtterance = null;			//Prompt in a different locale whose start is being waited for
+	private long switchTime = 0;
+	private boolean switchPooled = false;
+	private int mainSwitchCount = 0;
+	private long mainSwitchLatencyTotal = 0;
+	private int pooledSwitchCount = 0;
+	private long pooledSwitchLatencyTotal = 0;
+	private boolean replyRequested = false;			//A reply was requested with speakReply and its first prompt is not queued yet
+	private String replyUtterance = null;			//First prompt of the last reply, whose start is being waited for
+	private long replyTime = 0;
+	private boolean replyChunked = false;
+	private int chunkedReplyCount = 0;
+	private long chunkedFirstAudioTotal = 0;
+	private int wholeReplyCount = 0;
+	private long wholeFirstAudioTotal = 0;
+	
+	private PromptCache promptCache = null;			//Audio of the fixed prompts (only if it is enabled)
+	private static final String PROMPT_CACHE_UTTERANCE = "PromptCache:";	//Prefix of the ids of the syntheses to the cache
+	private static final String PRESYNTHESIS_UTTERANCE = "Presynthesis:";	//Prefix of the ids of the syntheses of the likely prompts
+	private static final String PREFIX_UTTERANCE = "Prefix:";		//Prefix of the ids of the beginnings of prompts played from a likely prompt
+	
+	private PresynthesisCache presynthesis = null;	//Audio of the likely prompts (only if it is enabled)
+	private final ArrayList<Locale> likelyLocales = new ArrayList<Locale>();
+	private final ArrayList<String> likelyPrompts = new ArrayList<String>();	//Synthesized while the user speaks, same positions as likelyLocales
+	private final Runnable presynthesize = new Runnable() {
+		public void run() {
+			presynthesizeNext();
+		}
+	};
+	
+	private boolean partialResultsEnabled = false;
+	private long asrStartTime;				//Time in which the current recognition was started
+	private String lastPartialText;		//Last partial hypothesis received in the current recognition
+	private long lastPartialFirstSeen;		//Time in which the last partial hypothesis was received for the first time
+	
+	private AudioRingBuffer audioBuffer = null;	//Recent audio received from the recognizer (only if audio capture is enabled)
+	private long turnAudioStart = 0;				//Position in the audio buffer where the current recognition started
+	
+	private RmsEndpointer endpointer = null;		//Local end-of-speech detection (only if it is enabled)
+	
+	private LevelMeter levelMeter = null;			//Publishes the sound level to the UI once per frame (only if there is a listener)
+	
+	private final TokenVocabulary vocabulary = new TokenVocabulary();	//Word ids of the recognition lattices
+	private AsrRescorer rescorer = null;			//Reorders the N-best results (only if it is set)
+	private float confidenceThreshold = 0;
+	
+	private RecognizerRace race = null;				//Offline and network recognizers racing (only if it is enabled)
+	
+	private StreamingAsrClient streamingAsr = null;	//Self-hosted streaming recognizer used instead of the platform one (only if it is set)
+	
+	private MultiLocaleRecognizer multiLocale = null;	//Recognition in several languages (created the first time it is used)
+	private LinkedHashMap<Locale, Intent> multiLocaleIntents = null;	//Intents of the last multi-language recognition, null if the last one was not multi-language
+	private float multiLocaleConfidenceBar = 0.7f;
+	private Locale recognizedLocale = null;
+	
+	private Intent asrIntent = null;				//Last recognition intent, reused while the parameters are the same
+	private String asrIntentLanguage;
+	private String asrIntentModel;
+	private int asrIntentMaxResults;
+	private boolean asrIntentPartialResults;
+	
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private boolean continuousListening = false;
+	private long rearmRequested = -1;				//Time at which the last session finished in continuous listening
+	private int rearmCount = 0;
+	private long rearmGapTotal = 0;
+	private long rearmGapMax = 0;
+	private final Runnable rearm = new Runnable() {
+		public void run() {
+			if(continuousListening)
+				startRecognition();
+		}
+	};
+	
+	private AsrRetryPolicy retryPolicy = new AsrRetryPolicy();	//Retries after recoverable errors (null if they are disabled)
+	private final RecognizerCircuitBreaker circuitBreaker = new RecognizerCircuitBreaker();
+	private long turnStartTime;						//Time at which the current turn started (retries are part of the same turn)
+	private long firstFailureTime = -1;				//Time of the first recoverable error in the current turn
+	private int asrRetries = 0;						//Retries done in the current turn
+	private int retryError = -1;					//Error after which a retry is waiting, -1 if there is none
+	private final Runnable retry = new Runnable() {
+		public void run() {
+			retryError = -1;
+			startAttempt();
+		}
+	};
+	
+	private boolean listening = false;				//A recognition is in progress
+	
+	private boolean bargeInEnabled = false;
+	private RmsEndpointer bargeInDetector = null;	//Detects the user speaking over the TTS (created when barge-in is enabled)
+	private float bargeInOnsetMargin = 10f;			//dB above the background level considered speech
+	private long bargeInMinSpeech = 150;			//ms of speech needed to interrupt the TTS
+	private boolean bargeInArmed = false;			//The current recognition was started while the TTS was speaking
+	private boolean bargedIn = false;				//The user has interrupted the TTS in the current recognition
+	private int bargeInCount = 0;
+	private int bargeInFalseTriggers = 0;			//Interruptions after which nothing was recognized (e.g. triggered by the echo of the TTS)
+	private long bargeInReactionTotal = 0;
+	private final Runnable armBargeIn = new Runnable() {
+		public void run() {
+			if(bargeInEnabled && !listening && (asrIntent!=null || multiLocaleIntents!=null)) {
+				startRecognition();
+				bargeInArmed = listening;
+			}
+		}
+	};
+	private CommandRecognizer commandRecognizer = null;	//On-device recognition of frequent commands (only if it is set)
+	private Handler commandHandler = null;			//Thread in which the audio is recognized and learnt (only if there is a recognizer)
+	private float commandLearningConfidence = 0.8f;	//Confidence of the cloud result from which its audio is learnt
+	private long endOfSpeechTime = -1;				//Time at which the end of speech was detected in the current recognition
+	private int localCommandCount = 0;
+	private long localCommandLatencyTotal = 0;
+	private int cloudResultCount = 0;
+	private long cloudLatencyTotal = 0;
+	
+	private WakeWordListener wakeWordListener = null;	//Hands-free mode (only if a wake word spotter has been set)
+	private final Runnable resumeWakeWord = new Runnable() {
+		public void run() {
+			if(wakeWordListener!=null && !listening)
+				wakeWordListener.start();
+		}
+	};
+	private boolean waitingForMicrophone = false;	//The recognition will start when the wake word listener releases the microphone
+	private final Runnable startBackend = new Runnable() {
+		public void run() {
+			if(waitingForMicrophone && listening)
+				startBackend();
+		}
+	};
+	
+	private final Runnable disarmBargeIn = new Runnable() {
+		public void run() {
+			//The prompts finished without interruption, so the recognition armed for them is not needed
+			if(bargeInArmed && !bargedIn && !isTTSSpeaking())
+				cancelRecognition();
+		}
+	};
+	
+	private final Runnable abandonTTSGate = new Runnable() {
+		public void run() {
+			ttsGate.abandon();
+		}
+	};
+	
+	/**
+	 * Call to the TTS held until it is initialized, its errors can only be logged
+	 */
+	private abstract class TTSCall implements Runnable {
+		public void run() {
+			try {
+				call();
+			} catch (Exception e) {
+				Log.e(LIB_LOGTAG, "Call held until the TTS was ready: " + e.getMessage());
+			}
+		}
+		
+		abstract void call() throws Exception;
+	}
+	
+	private final Runnable dispatchUtterances = new Runnable() {
+		public void run() {
+			dispatchUtterances();
+		}
+	};
+	
+	
+/**********************************************************************************************************************************************************************
+ **********************************************************************************************************************************************************************
+ * 
+ * 					AUTOMATIC SPEECH RECOGNITION
+ * 
+ **********************************************************************************************************************************************************************
+ **********************************************************************************************************************************************************************/
+	
+	/**
+	 * Creates the speech recognizer and text-to-speech synthesizer instances
+	 * @see RecognitionListener.java
+	 * @param ctx context of the interaction
+	 * */
+	public void initSpeechInputOutput(Context ctx) {
+			this.ctx = ctx;
+			PackageManager packManager = ctx.getPackageManager();
+			
+			setTTS();
+			
+			// find out whether speech recognition is supported
+			List<ResolveInfo> intActivities = packManager.queryIntentActivities(
+					new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH), 0);
+			if (intActivities.size() != 0) {
+				myASR = SpeechRecognizer.createSpeechRecognizer(ctx);
+				myASR.setRecognitionListener(this);
+				
+				// obtain the recognition languages now, so that listen does not have to ask for them
+				LanguageDetailsCache.getInstance(ctx).prefetch();
+			}
+			else
+				myASR = null;
+	}
+	
+	/**
+	 * Starts speech recognition after checking the ASR parameters
+	 * 
+	 * @param language Language used for speech recognition (e.g. Locale.ENGLISH)
+	 * @param languageModel Type of language model used (free form or web search)
+	 * @param maxResults Maximum number of recognition results
+	 * @exception An exception is raised if the language specified is not available or the other parameters are not valid
+	 * @see OnLanguageDetailsListener.java
+	 * @see LanguageDetailsChecker.java
+	 * @see LanguageDetailsCache.java
+	 */
+	public void listen(final Locale language, final String languageModel, final int maxResults) throws Exception 
+    {
+		if((languageModel.equals(RecognizerIntent.LANGUAGE_MODEL_FREE_FORM) || languageModel.equals(RecognizerIntent.LANGUAGE_MODEL_WEB_SEARCH)) && (maxResults>=0)) 
+		{
+
+	        OnLanguageDetailsListener andThen = new OnLanguageDetailsListener() //From https://github.com/gast-lib (see the OnLanguageDetailsListener class)
+	        {
+	            @Override
+	            public void onLanguageDetailsReceived(LanguageDetailsChecker data)
+	            {
+	                String recognitionLanguage = data.matchLanguage(language); //Do a best match
+	                if(recognitionLanguage!=null) {
+	                	multiLocaleIntents = null;
+	                	recognizedLocale = language;
+	                	startASR(recognitionLanguage, languageModel, maxResults);
+	                }
+	            }
+	        };
+	
+	        //The language details are cached, so andThen is invoked right away unless they have never been obtained
+	        LanguageDetailsCache.getInstance(ctx).getDetails(andThen);
+		
+		}
+		else {
+			Log.e(LIB_LOGTAG, "Invalid params to listen method");
+			throw new Exception("Invalid params to listen method"); //If the input parameters are not valid, it throws an exception
+		}
+
+    }	
+	
+	/**
+	 * Starts speech recognition in several languages at the same time (if the device allows it, otherwise
+	 * one after the other), and processes the result with the best confidence. The language in which it
+	 * was recognized can be obtained with <code>getRecognizedLocale</code> while processing the results.
+	 * 
+	 * @param languages Languages used for speech recognition, in order of preference (e.g. Locale.ENGLISH and new Locale("es", "ES"))
+	 * @param languageModel Type of language model used (free form or web search)
+	 * @param maxResults Maximum number of recognition results
+	 * @exception An exception is raised if the parameters are not valid
+	 * @see MultiLocaleRecognizer.java
+	 */
+	public void listen(final Locale[] languages, final String languageModel, final int maxResults) throws Exception 
+    {
+		if(languages!=null && languages.length>0 && (languageModel.equals(RecognizerIntent.LANGUAGE_MODEL_FREE_FORM) || languageModel.equals(RecognizerIntent.LANGUAGE_MODEL_WEB_SEARCH)) && (maxResults>=0)) 
+		{
+	        OnLanguageDetailsListener andThen = new OnLanguageDetailsListener()
+	        {
+	            @Override
+	            public void onLanguageDetailsReceived(LanguageDetailsChecker data)
+	            {
+	            	//Languages not supported by the recognizer are ignored
+	            	LinkedHashMap<Locale, Intent> intents = new LinkedHashMap<Locale, Intent>();
+	            	for(Locale language: languages) {
+	            		String recognitionLanguage = data.matchLanguage(language); //Do a best match
+	            		if(recognitionLanguage!=null)
+	            			intents.put(language, buildRecognitionIntent(recognitionLanguage, languageModel, maxResults));
+	            	}
+	            	
+	            	if(!intents.isEmpty()) {
+	            		if(multiLocale==null)
+	            			multiLocale = new MultiLocaleRecognizer(ctx, VoiceActivity.this, new MultiLocaleRecognizer.Listener() {
+	            				@Override
+	            				public void onMultiLocaleResults(ArrayList<String> nBestList, float[] nBestConfidences, Locale locale) {
+	            					recognizedLocale = locale;
+	            					deliverAsrResults(buildLattice(nBestList, nBestConfidences));
+	            					rearmIfContinuous();
+	            				}
+	            				
+	            				@Override
+	            				public void onMultiLocaleError(int errorCode) {
+	            					onError(errorCode);
+	            				}
+	            				
+	            				@Override
+	            				public void onMultiLocaleNextLocale(Locale locale) {
+	            					//The next language listens to a new utterance
+	            					asrStartTime = SystemClock.elapsedRealtime();
+	            					endOfSpeechTime = -1;
+	            					lastPartialText = null;
+	            					if(audioBuffer!=null)
+	            						turnAudioStart = audioBuffer.getWritePosition();
+	            					if(endpointer!=null)
+	            						endpointer.reset();
+	            					processAsrNextLocale(locale);
+	            				}
+	            			}, multiLocaleConfidenceBar);
+	            		multiLocaleIntents = intents;
+	            		startRecognition();
+	            	}
+	            }
+	        };
+	
+	        LanguageDetailsCache.getInstance(ctx).getDetails(andThen);
+		}
+		else {
+			Log.e(LIB_LOGTAG, "Invalid params to listen method");
+			throw new Exception("Invalid params to listen method"); //If the input parameters are not valid, it throws an exception
+		}
+    }
+	
+	/**
+	 * Sets the confidence from which a result is accepted in multi-language recognition without waiting for the
+	 * results in the other languages
+	 * @param confidenceBar the confidence (0.7 by default)
+	 */
+	public void setMultiLocaleConfidenceBar(float confidenceBar){
+		multiLocaleConfidenceBar = confidenceBar;
+		if(multiLocale!=null)
+			multiLocale.setConfidenceBar(confidenceBar);
+	}
+	
+	/**
+	 * @return the language of the last recognition. In multi-language recognition, it is the language in which 
+	 * the results were obtained.
+	 */
+	public Locale getRecognizedLocale(){
+		return recognizedLocale;
+	}
+	
+	/**
+	 * Actually starts speech recognition once the parameters have been checked (invoked by the listen method)
+	 * @param language Language used for speech recognition (e.g. Locale.ENGLISH)
+	 * @param languageModel Type of language model used (free form or web search)
+	 * @param maxResults Maximum number of recognition results
+	 */
+	private void startASR(String language, String languageModel, int maxResults){
+	
+		// The recognition intent is reused while the parameters do not change
+		if(asrIntent==null || !language.equals(asrIntentLanguage) || !languageModel.equals(asrIntentModel) 
+				|| maxResults!=asrIntentMaxResults || partialResultsEnabled!=asrIntentPartialResults)
+		{
+			asrIntent = buildRecognitionIntent(language, languageModel, maxResults);
+			asrIntentLanguage = language;
+			asrIntentModel = languageModel;
+			asrIntentMaxResults = maxResults;
+			asrIntentPartialResults = partialResultsEnabled;
+		}
+		
+		startRecognition();
+	}
+	
+	/**
+	 * Creates the intent for a recognition with the parameters indicated
+	 * @param language Language used for speech recognition, as supported by the recognizer (e.g. en-US)
+	 * @param languageModel Type of language model used (free form or web search)
+	 * @param maxResults Maximum number of recognition results
+	 */
+	private Intent buildRecognitionIntent(String language, String languageModel, int maxResults){
+		Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+
+		// Specify the calling package to identify the application
+		intent.putExtra(RecognizerIntent.EXTRA_CALLING_PACKAGE, ctx.getPackageName());
+			//Caution: be careful not to use: getClass().getPackage().getName());
+
+		// Specify language model
+		intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, languageModel);
+
+		// Specify how many results to receive. Results listed in order of confidence
+		intent.putExtra(RecognizerIntent.EXTRA_MAX_RESULTS, maxResults);  
+		
+		// Specify recognition language
+		intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, language);
+		
+		// Ask for partial results only when they are going to be processed
+		if(partialResultsEnabled)
+			intent.putExtra(RecognizerIntent.EXTRA_PARTIAL_RESULTS, true);
+		
+		return intent;
+	}
+	
+	/**
+	 * Starts a recognition turn with the last recognition intent built
+	 */
+	private void startRecognition(){
+		if(listening)
+			cancelRecognition();	//e.g. the recognition armed for barge-in
+		bargeInArmed = false;
+		bargedIn = false;
+		if(bargeInDetector!=null)
+			bargeInDetector.reset();
+		
+		turnStartTime = SystemClock.elapsedRealtime();
+		firstFailureTime = -1;
+		asrRetries = 0;
+		startAttempt();
+	}
+	
+	/**
+	 * Starts a recognition session in the current turn, unless the circuit breaker does not allow to use the recognizer
+	 */
+	private void startAttempt(){
+		asrStartTime = SystemClock.elapsedRealtime();
+		endOfSpeechTime = -1;
+		if(!circuitBreaker.startRequest(asrStartTime)) {
+			Log.w(LIB_LOGTAG, "The recognizer keeps failing, it is not used for a while");
+			listening = false;
+			resumeWakeWordListener();
+			processAsrError(SpeechRecognizer.ERROR_RECOGNIZER_BUSY);
+			return;
+		}
+		
+		listening = true;
+		if(wakeWordListener!=null) {	//The recognizer needs the microphone
+			mainHandler.removeCallbacks(resumeWakeWord);
+			if(wakeWordListener.stop(startBackend)) {
+				waitingForMicrophone = true;	//The recognizer is started once the listener releases it
+				return;
+			}
+		}
+		startBackend();
+	}
+	
+	/**
+	 * Starts the recognition in the backend used in the current turn
+	 */
+	private void startBackend(){
+		waitingForMicrophone = false;
+		lastPartialText = null;
+		if(audioBuffer!=null)
+			turnAudioStart = audioBuffer.getWritePosition();
+		if(endpointer!=null)
+			endpointer.reset();
+		
+		if(multiLocaleIntents!=null)
+			multiLocale.start(multiLocaleIntents);
+		else if(streamingAsr!=null)
+			streamingAsr.start(asrIntent);
+		else if(race!=null)
+			race.start(asrIntent, deviceConnectedToNetwork());
+		else
+			myASR.startListening(asrIntent);
+	}
+	
+	/**
+	 * Enables the hands-free mode: the microphone is monitored with the spotter, and when the wake word is detected
+	 * <code>processWakeWord</code> is invoked (by default, it starts listening with the parameters of the last 
+	 * <code>listen</code>). The spotter is paused while the recognizer is listening, and resumed afterwards.
+	 * @param spotter spotter with the templates of the wake word, or null to disable the hands-free mode
+	 * @see WakeWordSpotter.java
+	 */
+	public void setWakeWordSpotter(WakeWordSpotter spotter){
+		if(wakeWordListener!=null) {
+			mainHandler.removeCallbacks(resumeWakeWord);
+			wakeWordListener.stop();
+			wakeWordListener = null;
+		}
+		if(spotter!=null) {
+			wakeWordListener = new WakeWordListener(spotter, new WakeWordListener.Listener() {
+				@Override
+				public void onWakeWord() {
+					if(!listening)
+						processWakeWord();
+				}
+			});
+			if(!listening)
+				wakeWordListener.start();
+		}
+	}
+	
+	/**
+	 * @return the listener of the wake word (it can be used to obtain its duty cycle), or null if the hands-free mode is disabled
+	 */
+	public WakeWordListener getWakeWordListener(){
+		return wakeWordListener;
+	}
+	
+	/**
+	 * Starts the wake word listener again some time after a recognition finishes, unless another one starts meanwhile
+	 */
+	private void resumeWakeWordListener(){
+		if(wakeWordListener!=null) {
+			mainHandler.removeCallbacks(resumeWakeWord);
+			mainHandler.postDelayed(resumeWakeWord, 300);
+		}
+	}
+	
+	/**
+	 * Cancels the recognition in progress (or the retry that is waiting to start), no results nor errors are processed
+	 */
+	private void cancelRecognition(){
+		mainHandler.removeCallbacks(retry);
+		retryError = -1;
+		mainHandler.removeCallbacks(startBackend);
+		waitingForMicrophone = false;
+		cancelBackend();
+		if(listening)
+			circuitBreaker.recordAbort();
+		listening = false;
+		bargeInArmed = false;
+		resumeWakeWordListener();
+	}
+	
+	/**
+	 * Cancels the recognition in the backend used in the current turn
+	 */
+	private void cancelBackend(){
+		if(multiLocaleIntents!=null)
+			multiLocale.cancel();
+		else if(streamingAsr!=null)
+			streamingAsr.cancel();
+		else if(race!=null)
+			race.cancel();
+		else
+			myASR.cancel();
+	}
+	
+	/**
+	 * @return true while the user is being listened to, i.e. a recognition is in progress. The recognition armed for 
+	 * barge-in is only considered once the user has interrupted the TTS.
+	 */
+	public boolean isListening(){
+		return listening && (!bargeInArmed || bargedIn);
+	}
+	
+	/**
+	 * Enables or disables barge-in. When it is enabled, recognition is started as soon as a prompt is sent 
+	 * to the TTS (with the parameters of the last <code>listen</code>), so that the user can speak over it. 
+	 * When the user starts speaking, the TTS is stopped, its queue is flushed and <code>processBargeIn</code> is 
+	 * invoked; from then on, it is a normal recognition. If the prompts finish without interruption, the 
+	 * recognition armed for them is cancelled, and nothing is processed.
+	 * @param enabled true to allow the user to interrupt the TTS
+	 */
+	public void setBargeInEnabled(boolean enabled){
+		bargeInEnabled = enabled;
+		if(enabled && bargeInDetector==null) {
+			bargeInDetector = new RmsEndpointer();
+			bargeInDetector.setThresholds(bargeInOnsetMargin, bargeInMinSpeech, bargeInMinSpeech);
+		}
+		if(!enabled) {
+			mainHandler.removeCallbacks(armBargeIn);
+			if(bargeInArmed && !bargedIn)
+				cancelRecognition();
+		}
+	}
+	
+	/**
+	 * Sets how the user speaking over the TTS is detected from the sound level. The margin must be higher than 
+	 * for end-of-speech detection, as the echo of the TTS raises the level.
+	 * @param onsetMargin dB above the background level from which the sound is considered speech (10 by default)
+	 * @param minSpeech ms of speech needed to interrupt the TTS (150 by default)
+	 */
+	public void setBargeInThresholds(float onsetMargin, long minSpeech){
+		bargeInOnsetMargin = onsetMargin;
+		bargeInMinSpeech = minSpeech;
+		if(bargeInDetector!=null)
+			bargeInDetector.setThresholds(onsetMargin, minSpeech, minSpeech);
+	}
+	
+	/**
+	 * @return number of times that the user has interrupted the TTS
+	 */
+	public int getBargeInCount(){
+		return bargeInCount;
+	}
+	
+	/**
+	 * @return average time (ms) from the start of the user speech to the TTS being stopped
+	 */
+	public long getBargeInReactionAverage(){
+		return bargeInCount==0 ? 0 : bargeInReactionTotal / bargeInCount;
+	}
+	
+	/**
+	 * @return proportion of interruptions after which nothing was recognized (e.g. caused by the echo of the TTS or by noise)
+	 */
+	public float getBargeInFalseTriggerRate(){
+		return bargeInCount==0 ? 0 : (float) bargeInFalseTriggers / bargeInCount;
+	}
+	
+	/**
+	 * Stops the TTS because the user has started speaking over it
+	 * @param onset time at which the user started speaking
+	 */
+	private void bargeIn(long onset){
+		if(!isTTSSpeaking()) {	//The prompts have finished, so it is a normal recognition
+			bargeInArmed = false;
+			return;
+		}
+		bargedIn = true;
+		stopTTS();		//Also flushes the prompts queued
+		long reaction = SystemClock.elapsedRealtime() - onset;
+		bargeInCount++;
+		bargeInReactionTotal += reaction;
+		Log.d(LIB_LOGTAG, "Barge-in, TTS stopped " + reaction + " ms after the user started speaking (average " + getBargeInReactionAverage() + " ms)");
+		processBargeIn();
+	}
+	
+	/**
+	 * Sets how recognitions that fail with a recoverable error (<code>ERROR_RECOGNIZER_BUSY</code>, <code>ERROR_NETWORK_TIMEOUT</code> 
+	 * or <code>ERROR_CLIENT</code>) are retried. The error is only passed to <code>processAsrError</code> when the retries are abandoned.
+	 * By default, a policy with 3 retries in 5 seconds is used.
+	 * @param retryPolicy the policy, or null to pass the errors to <code>processAsrError</code> without retrying
+	 * @see AsrRetryPolicy.java
+	 */
+	public void setAsrRetryPolicy(AsrRetryPolicy retryPolicy){
+		this.retryPolicy = retryPolicy;
+	}
+	
+	/**
+	 * @return the retry policy (it can be used to obtain the number of retries and the recovery time), or null if retries are disabled
+	 */
+	public AsrRetryPolicy getAsrRetryPolicy(){
+		return retryPolicy;
+	}
+	
+	/**
+	 * @return the circuit breaker that stops using the recognizer while it keeps failing (it can be used to change its thresholds)
+	 * @see RecognizerCircuitBreaker.java
+	 */
+	public RecognizerCircuitBreaker getCircuitBreaker(){
+		return circuitBreaker;
+	}
+	
+	/**
+	 * Schedules a new recognition in the same turn if the error is recoverable and the retry policy and circuit breaker allow it
+	 * @return true if there will be a retry, false if the error must be processed
+	 */
+	private boolean retryAfterError(int errorCode){
+		if(!AsrRetryPolicy.isRecoverable(errorCode))
+			return false;
+		
+		long now = SystemClock.elapsedRealtime();
+		circuitBreaker.recordFailure(now);
+		if(firstFailureTime<0)
+			firstFailureTime = now;
+		
+		if(retryPolicy!=null) {
+			long delay = retryPolicy.getDelay(asrRetries);
+			if(retryPolicy.canRetry(asrRetries, now - turnStartTime, delay) && circuitBreaker.allowRequest(now + delay)) {
+				asrRetries++;
+				retryPolicy.recordRetry();
+				Log.d(LIB_LOGTAG, "Recognition error " + errorCode + ", retry " + asrRetries + " in " + delay + " ms");
+				cancelBackend();		//A busy recognizer must be released before starting again
+				retryError = errorCode;
+				mainHandler.postDelayed(retry, delay);
+				return true;
+			}
+			retryPolicy.recordGiveUp();
+			Log.d(LIB_LOGTAG, "Recognition error " + errorCode + ", no more retries. " + retryPolicy);
+		}
+		return false;
+	}
+	
+	/**
+	 * Records that the recognizer has worked in the current turn (it has provided results or has not heard anything)
+	 */
+	private void recognizerWorked(){
+		circuitBreaker.recordSuccess();
+		if(asrRetries>0 && retryPolicy!=null) {
+			retryPolicy.recordRecovery(SystemClock.elapsedRealtime() - firstFailureTime);
+			Log.d(LIB_LOGTAG, "Recognizer recovered. " + retryPolicy);
+		}
+		asrRetries = 0;
+		firstFailureTime = -1;
+	}
+	
+	/**
+	 * Enables or disables the race between an offline-preferred recognition and a network recognition. When it is
+	 * enabled, both recognitions are started at the same time, and the first result that reaches the confidence
+	 * bar is processed, cancelling the other recognition. Without network, only the offline-preferred recognition 
+	 * is started. It must be invoked after <code>initSpeechInputOutput</code>.
+	 * 
+	 * @param enabled true to race the recognizers
+	 * @param confidenceBar confidence from which a result is accepted without waiting for the other recognizer
+	 * @see RecognizerRace.java
+	 */
+	public void setRecognizerRace(boolean enabled, float confidenceBar){
+		if(enabled && race==null) {
+			race = new RecognizerRace(ctx, this, new RecognizerRace.Listener() {
+				@Override
+				public void onRaceResults(ArrayList<String> nBestList, float[] nBestConfidences, String engine) {
+					deliverAsrResults(buildLattice(nBestList, nBestConfidences));
+					rearmIfContinuous();
+				}
+
+				@Override
+				public void onRaceError(int errorCode) {
+					onError(errorCode);
+				}
+			}, confidenceBar);
+		}
+		else if(enabled)
+			race.setConfidenceBar(confidenceBar);
+		else if(race!=null) {
+			race.destroy();
+			race = null;
+		}
+	}
+	
+	/**
+	 * Uses a self-hosted streaming recognition server instead of the platform recognizer for single-language recognition.
+	 * The audio is recorded by the library and streamed to the server while the user speaks, and the results are processed
+	 * with the same <code>processAsr*</code> methods. The end of the utterance is decided locally, so an endpointer
+	 * should be set (see <code>setEndpointer</code>). It must be invoked from the main thread.
+	 * 
+	 * @param host address of the server, or null to go back to the platform recognizer
+	 * @param port port of the server
+	 * @see StreamingAsrClient.java
+	 * @see StreamingAsrProtocol.java
+	 */
+	public void setStreamingAsrServer(String host, int port){
+		if(streamingAsr!=null)
+			streamingAsr.destroy();
+		streamingAsr = host==null ? null : new StreamingAsrClient(host, port, this);
+	}
+	
+	/**
+	 * @return the client of the streaming recognition server, or null if it is not used (it can be used to obtain its statistics)
+	 */
+	public StreamingAsrClient getStreamingAsrClient(){
+		return streamingAsr;
+	}
+	
+	/**
+	 * @return the race between recognizers, or null if it is not enabled (it can be used to obtain its statistics)
+	 */
+	public RecognizerRace getRecognizerRace(){
+		return race;
+	}
+	
+	/**
+	 * Checks whether the device is connected to a network
+	 */
+	private boolean deviceConnectedToNetwork() {
+		ConnectivityManager cm = (ConnectivityManager) ctx.getSystemService(Context.CONNECTIVITY_SERVICE);  
+	    NetworkInfo activeNetwork = cm.getActiveNetworkInfo();
+	    return (activeNetwork != null && activeNetwork.isConnectedOrConnecting());
+	}
+	
+	/**
+	 * Sets a stage that reorders the N-best results before they are processed. To take advantage of it,
+	 * more than one result must be requested in <code>listen</code>.
+	 * 
+	 * @param rescorer the rescorer, or null to process the results as they are provided by the recognizer
+	 * @param confidenceThreshold confidence of the best result (after rescoring) below which the results
+	 * are processed by <code>processAsrLowConfidence</code> instead of <code>processAsrResults</code>
+	 * @see AsrRescorer.java
+	 */
+	public void setAsrRescorer(AsrRescorer rescorer, float confidenceThreshold){
+		this.rescorer = rescorer;
+		this.confidenceThreshold = confidenceThreshold;
+	}
+	
+	/**
+	 * Enables or disables continuous listening. When it is enabled, after the first call to <code>listen</code>,
+	 * recognition is started again right after each result and after each error in which the user did not say
+	 * anything recognizable (<code>ERROR_NO_MATCH</code> and <code>ERROR_SPEECH_TIMEOUT</code>), reusing the same 
+	 * recognizer and recognition intent. The time between sessions is measured (see <code>getRearmGapAverage</code>).
+	 * 
+	 * @param enabled true to listen continuously
+	 */
+	public void setContinuousListening(boolean enabled){
+		continuousListening = enabled;
+		if(!enabled)
+			mainHandler.removeCallbacks(rearm);
+	}
+	
+	/**
+	 * @return true if continuous listening is enabled
+	 */
+	public boolean isContinuousListening(){
+		return continuousListening;
+	}
+	
+	/**
+	 * Starts a new recognition session if continuous listening is enabled
+	 */
+	private void rearmIfContinuous(){
+		if(continuousListening && (asrIntent!=null || multiLocaleIntents!=null) && (myASR!=null || streamingAsr!=null)) {
+			rearmRequested = SystemClock.elapsedRealtime();
+			mainHandler.post(rearm);
+		}
+	}
+	
+	/**
+	 * @return number of times that recognition has been started again in continuous listening
+	 */
+	public int getRearmCount(){
+		return rearmCount;
+	}
+	
+	/**
+	 * @return average time (ms) from the end of a recognition session to the recognizer being ready 
+	 * again in continuous listening
+	 */
+	public long getRearmGapAverage(){
+		return rearmCount==0 ? 0 : rearmGapTotal / rearmCount;
+	}
+	
+	/**
+	 * @return maximum time (ms) from the end of a recognition session to the recognizer being ready
+	 * again in continuous listening
+	 */
+	public long getRearmGapMax(){
+		return rearmGapMax;
+	}
+	
+	/**
+	 * Enables or disables the partial recognition results. When they are enabled, the incremental
+	 * hypotheses are passed to <code>processAsrPartialResults</code> while the user is speaking.
+	 * It takes effect in the next call to <code>listen</code>.
+	 * 
+	 * @param enabled true to receive partial results
+	 * @see #processAsrPartialResults(PartialHypothesis)
+	 */
+	public void setPartialResultsEnabled(boolean enabled){
+		partialResultsEnabled = enabled;
+	}
+	
+	/**
+	 * Enables the capture of the audio that the recognizer passes to <code>onBufferReceived</code>. The most recent
+	 * audio is kept in a buffer of fixed size, which can be read with <code>getAudioBuffer</code> (e.g. to replay 
+	 * the user input after a network error).
+	 * Not all the recognizers provide the audio, so the buffer may remain empty.
+	 * 
+	 * @param capacityBytes size of the buffer (e.g. 16000 Hz * 2 bytes * 10 seconds), or 0 to disable the capture
+	 * @see AudioRingBuffer.java
+	 */
+	public void setAudioCapture(int capacityBytes){
+		if(capacityBytes>0)
+			audioBuffer = new AudioRingBuffer(capacityBytes);
+		else
+			audioBuffer = null;
+	}
+	
+	/**
+	 * @return the buffer with the most recent audio, or null if audio capture is not enabled
+	 */
+	public AudioRingBuffer getAudioBuffer(){
+		return audioBuffer;
+	}
+	
+	/**
+	 * @return the position in the audio buffer where the audio of the current (or last) recognition starts
+	 */
+	public long getTurnAudioStart(){
+		return turnAudioStart;
+	}
+	
+	/**
+	 * Copies the audio of the current (or last) recognition that is still in the audio buffer
+	 * @return 16-bit PCM samples, or null if audio capture is not enabled or no audio has been received
+	 */
+	public short[] getTurnAudio(){
+		AudioRingBuffer capture = audioBuffer;
+		if(capture==null)
+			return null;
+		long start = Math.max(turnAudioStart, capture.getOldestPosition());
+		long end = capture.getWritePosition();
+		if(end - start < 2)
+			return null;
+		short[] samples = new short[(int) ((end - start) / 2)];
+		for(int i=0; i<samples.length; i++)
+			samples[i] = capture.getSample(start + 2 * i);
+		return capture.isAvailable(start) ? samples : null;	//Null if it was overwritten while copying
+	}
+	
+	/**
+	 * Sets the on-device recognizer of frequent commands. When the end of speech is detected, the audio captured
+	 * is recognized with it and, if the result is confident, the cloud recognition is cancelled and the command is 
+	 * passed to <code>processLocalCommand</code>. Otherwise the cloud results are processed as usual, and the audio 
+	 * is learnt as a template if the best cloud result is a phrase of its grammar with high confidence.
+	 * It requires audio capture (see <code>setAudioCapture</code>), so it only works with recognizers that provide the audio.
+	 * The recognition and the learning are done in a separate thread, so that the main thread is not blocked.
+	 * 
+	 * @param recognizer recognizer with the grammar of the commands, or null to disable on-device recognition
+	 * @param learningConfidence confidence of the cloud result from which its audio is learnt (e.g. 0.8)
+	 * @see CommandRecognizer.java
+	 */
+	public void setCommandRecognizer(CommandRecognizer recognizer, float learningConfidence){
+		commandRecognizer = recognizer;
+		commandLearningConfidence = learningConfidence;
+		if(recognizer!=null && commandHandler==null) {
+			HandlerThread thread = new HandlerThread("CommandRecognizer");
+			thread.start();
+			commandHandler = new Handler(thread.getLooper());
+		}
+		else if(recognizer==null && commandHandler!=null) {
+			commandHandler.getLooper().quit();
+			commandHandler = null;
+		}
+	}
+	
+	/**
+	 * @return average time (ms) from the end of speech to the processing of the commands recognized on the device
+	 */
+	public long getLocalCommandLatencyAverage(){
+		return localCommandCount==0 ? 0 : localCommandLatencyTotal / localCommandCount;
+	}
+	
+	/**
+	 * @return average time (ms) from the end of speech to the results of the cloud recognition
+	 */
+	public long getCloudLatencyAverage(){
+		return cloudResultCount==0 ? 0 : cloudLatencyTotal / cloudResultCount;
+	}
+	
+	/**
+	 * Recognizes the audio of the turn with the on-device recognizer in its thread, so that the main thread
+	 * and the callbacks of the cloud recognizer are not delayed, and processes the command if it is confident
+	 */
+	private void recognizeLocalCommand(){
+		final short[] audio = getTurnAudio();
+		if(audio==null)
+			return;
+		final CommandRecognizer recognizer = commandRecognizer;
+		final long recognition = asrStartTime;	//Identifies the recognition, the result is ignored if it has finished meanwhile
+		commandHandler.post(new Runnable() {
+			public void run() {
+				final CommandRecognizer.Result result = recognizer.recognize(audio, 0, audio.length);
+				if(result==null || !result.isConfident())
+					return;
+				mainHandler.post(new Runnable() {
+					public void run() {
+						if(listening && asrStartTime==recognition && commandRecognizer==recognizer)
+							deliverLocalCommand(result);
+					}
+				});
+			}
+		});
+	}
+	
+	/**
+	 * Processes a confident result of the on-device recognizer, cancelling the cloud recognition
+	 */
+	private void deliverLocalCommand(CommandRecognizer.Result result){
+		cancelRecognition();
+		long latency = SystemClock.elapsedRealtime() - endOfSpeechTime;
+		localCommandCount++;
+		localCommandLatencyTotal += latency;
+		Log.d(LIB_LOGTAG, "Command '" + result.getCommand() + "' recognized on the device in " + latency 
+				+ " ms (average " + getLocalCommandLatencyAverage() + " ms, cloud average " + getCloudLatencyAverage() + " ms)");
+		processLocalCommand(result.getCommand(), result.getConfidence());
+		rearmIfContinuous();
+	}
+	
+	/**
+	 * Learns the audio of the turn as a template of the best cloud result, if it is a confident phrase of the grammar.
+	 * The audio is copied in the main thread, before the next turn overwrites it, and learnt in the thread of the recognizer.
+	 */
+	private void learnLocalCommand(RecognitionLattice lattice){
+		if(lattice.size()==0 || !lattice.hasConfidences() 
+				|| lattice.getConfidence(0)<commandLearningConfidence || !commandRecognizer.accepts(lattice.getText(0)))
+			return;
+		final short[] audio = getTurnAudio();
+		if(audio==null)
+			return;
+		final CommandRecognizer recognizer = commandRecognizer;
+		final String text = lattice.getText(0);
+		commandHandler.post(new Runnable() {
+			public void run() {
+				if(recognizer.learn(text, audio, 0, audio.length))
+					Log.d(LIB_LOGTAG, "Learnt a new template of '" + text + "'");
+			}
+		});
+	}
+	
+	/**
+	 * Enables the local detection of the end of speech. When the endpointer detects that the user has
+	 * finished speaking, recognition is stopped without waiting for the recognizer's own timeout.
+	 * 
+	 * @param endpointer endpointer configured with the desired thresholds, or null to disable local endpointing
+	 * @see RmsEndpointer.java
+	 */
+	public void setEndpointer(RmsEndpointer endpointer){
+		this.endpointer = endpointer;
+	}
+	
+	/**
+	 * Sets an object that shows the sound level in the UI (e.g. a level meter). It receives the level in the main thread
+	 * at most once per display frame, with the latest level reported by the recognizer, so the UI work does not grow with
+	 * the rate at which the level is reported. It must be invoked from the main thread.
+	 * 
+	 * @param listener object that receives the level, or null to stop publishing it
+	 * @see LevelMeter.java
+	 */
+	public void setLevelListener(LevelMeter.Listener listener){
+		if(levelMeter!=null)
+			levelMeter.cancel();
+		levelMeter = listener==null ? null : new LevelMeter(listener);
+	}
+	
+	/**
+	 * @return the object that publishes the sound level (it can be used to obtain its statistics), or null if there is no listener
+	 */
+	public LevelMeter getLevelMeter(){
+		return levelMeter;
+	}
+	
+	
+	/**
+	 * Stops listening to the user
+	 */
+	public void stopListening(){
+		if(retryError>=0) {		//No recognizer is running while waiting for a retry, so the turn ends with the last error
+			int errorCode = retryError;
+			boolean armed = bargeInArmed && !bargedIn;
+			cancelRecognition();
+			if(!armed)
+				processAsrError(errorCode);
+			return;
+		}
+		if(waitingForMicrophone) {		//Nor while waiting for the microphone, so the recognition is just not started
+			cancelRecognition();
+			return;
+		}
+		if(multiLocaleIntents!=null)
+			multiLocale.stopListening();
+		else if(streamingAsr!=null)
+			streamingAsr.stopListening();
+		else if(race!=null)
+			race.stopListening();
+		else
+			myASR.stopListening();
+	}
+	
+	/********************************************************************************************************
+	 * This class implements the {@link android.speech.RecognitionListener} interface, 
+	 * thus it implement its methods. However not all of them were interesting to us:
+	 * ******************************************************************************************************
+	 */
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Invoked when the ASR provides recognition results
+	 * 
+	 * @see android.speech.RecognitionListener#onResults(android.os.Bundle)
+	 */
+	@Override
+	public void onResults(Bundle results) {
+		if(results!=null){
+			//Processes the recognition results and their confidences
+			deliverAsrResults(buildLattice(results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION), getConfidenceScores(results)));
+			//											Attention: It is not RecognizerIntent.EXTRA_RESULTS, that is for intents (see the ASRWithIntent app)
+		}
+		else
+			//Processes recognition errors
+			processAsrError(SpeechRecognizer.ERROR_NO_MATCH);
+		
+		rearmIfContinuous();
+	}
+	
+	/**
+	 * Obtains the confidences of the recognition results, if they are available
+	 * @param results bundle with the recognition results
+	 * @return the confidences, or null if they are not available
+	 */
+	@SuppressLint("InlinedApi")
+	static float[] getConfidenceScores(Bundle results) {
+		if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH)  //Checks the API level because the confidence scores are supported only from API level 14: 
+																				//http://developer.android.com/reference/android/speech/SpeechRecognizer.html#CONFIDENCE_SCORES
+			return results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES);
+		else
+			return null;
+	}
+
+	/**
+	 * Builds the word-level lattice of the recognition results, with the vocabulary shared by all the results
+	 * @param nBestList recognition results (it can be null)
+	 * @param nBestConfidences their confidences (null if they are not available)
+	 * @see RecognitionLattice.java
+	 */
+	protected RecognitionLattice buildLattice(List<String> nBestList, float[] nBestConfidences) {
+		return RecognitionLattice.fromResults(vocabulary, nBestList, nBestConfidences);
+	}
+	
+	/**
+	 * @return the vocabulary of the word ids of the recognition lattices, e.g. to obtain the ids of the words to spot in them
+	 */
+	public TokenVocabulary getTokenVocabulary() {
+		return vocabulary;
+	}
+
+	/**
+	 * Passes the recognition results through the rescorer (if any) and then to <code>processAsrResults</code>,
+	 * or to <code>processAsrLowConfidence</code> if the confidence of the best result is below the threshold
+	 */
+	private void deliverAsrResults(RecognitionLattice lattice){
+		recognizerWorked();
+		listening = false;
+		resumeWakeWordListener();
+		if(bargeInArmed && !bargedIn) {		//The user has not spoken over the prompts, so it is the TTS that was recognized
+			bargeInArmed = false;
+			if(isTTSSpeaking())
+				mainHandler.post(armBargeIn);	//It keeps listening while the prompts last
+			return;
+		}
+		if(endOfSpeechTime>=0) {
+			cloudResultCount++;
+			cloudLatencyTotal += SystemClock.elapsedRealtime() - endOfSpeechTime;
+		}
+		if(commandRecognizer!=null)
+			learnLocalCommand(lattice);
+		if(rescorer!=null && lattice.size()>0) {
+			rescorer.rescore(lattice);
+			if(lattice.hasConfidences() && lattice.getConfidence(0)<confidenceThreshold) {
+				processAsrLowConfidence(lattice);
+				return;
+			}
+		}
+		processAsrResults(lattice);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Invoked when the ASR is ready to start listening
+	 * 
+	 * @see android.speech.RecognitionListener#onReadyForSpeech(android.os.Bundle)
+	 */
+	@Override
+	public void onReadyForSpeech(Bundle arg0) {
+		if(rearmRequested>=0) {	//Measures the gap between sessions in continuous listening
+			long gap = SystemClock.elapsedRealtime() - rearmRequested;
+			rearmRequested = -1;
+			rearmCount++;
+			rearmGapTotal += gap;
+			rearmGapMax = Math.max(rearmGapMax, gap);
+			Log.d(LIB_LOGTAG, "Listening again after " + gap + " ms (average " + getRearmGapAverage() + " ms)");
+		}
+		PresynthesisCache cache = presynthesis;
+		if(cache!=null) {
+			cache.clearFailures();				//The prompts that failed are tried again once per recognition
+			mainHandler.post(presynthesize);	//The TTS is idle while the user speaks
+		}
+		processAsrReadyForSpeech();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Invoked when the ASR encounters an error
+	 * 
+	 * @see android.speech.RecognitionListener#onError(int)
+	 */
+	@Override
+	public void onError(int errorCode) {
+		// Transient errors are retried before bothering the user
+		if(retryAfterError(errorCode))
+			return;
+		circuitBreaker.recordAbort();	//Unless it is recorded below that the recognizer worked
+		listening = false;
+		resumeWakeWordListener();
+		
+		boolean silence = errorCode==SpeechRecognizer.ERROR_NO_MATCH || errorCode==SpeechRecognizer.ERROR_SPEECH_TIMEOUT;
+		if(bargeInArmed && !bargedIn) {
+			// The user has not spoken over the prompts, so the error is not processed, and it keeps listening while they last
+			bargeInArmed = false;
+			if(silence && isTTSSpeaking())
+				mainHandler.post(armBargeIn);
+			return;
+		}
+		if(bargedIn && silence)
+			bargeInFalseTriggers++;
+		
+		processAsrError(errorCode);
+		
+		// The user did not say anything recognizable, so keep on listening
+		if(errorCode==SpeechRecognizer.ERROR_NO_MATCH || errorCode==SpeechRecognizer.ERROR_SPEECH_TIMEOUT) {
+			recognizerWorked();
+			rearmIfContinuous();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.speech.RecognitionListener#onBeginningOfSpeech()
+	 */
+	@Override
+	public void onBeginningOfSpeech() {	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Invoked when the ASR provides audio. It is kept if audio capture is enabled.
+	 * 
+	 * @see android.speech.RecognitionListener#onBufferReceived(byte[])
+	 */
+	@Override
+	public void onBufferReceived(byte[] buffer) {
+		AudioRingBuffer capture = audioBuffer;
+		if(capture!=null && buffer!=null)
+			capture.write(buffer);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Invoked when the user stops speaking. If an on-device command recognizer has been set, the audio
+	 * is recognized with it in a separate thread while the cloud recognizer finishes.
+	 * 
+	 * @see android.speech.RecognitionListener#onEndOfSpeech()
+	 */
+	@Override
+	public void onEndOfSpeech() {
+		if(endOfSpeechTime<0)
+			endOfSpeechTime = SystemClock.elapsedRealtime();
+		if(commandRecognizer!=null && listening && (!bargeInArmed || bargedIn))
+			recognizeLocalCommand();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * @see android.speech.RecognitionListener#onEvent(int, android.os.Bundle)
+	 */
+	@Override
+	public void onEvent(int arg0, Bundle arg1) {}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Invoked when the ASR provides partial results (only if they have been enabled).
+	 * Each hypothesis is compared with the previous one to find out whether it is stable.
+	 * 
+	 * @see android.speech.RecognitionListener#onPartialResults(android.os.Bundle)
+	 */
+	@Override
+	public void onPartialResults(Bundle partialResults) {
+		if(!partialResultsEnabled || partialResults==null)
+			return;
+		
+		ArrayList<String> hypotheses = partialResults.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+		if(hypotheses==null || hypotheses.size()==0 || hypotheses.get(0)==null)
+			return;
+		
+		String text = hypotheses.get(0).trim();
+		long now = SystemClock.elapsedRealtime();
+		boolean stable = text.equals(lastPartialText);
+		if(!stable)
+			lastPartialFirstSeen = now;
+		String stablePrefix = PartialHypothesis.commonPrefix(lastPartialText, text);
+		lastPartialText = text;
+		
+		processAsrPartialResults(new PartialHypothesis(text, stablePrefix, stable, now, lastPartialFirstSeen, asrStartTime));
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * Invoked when the sound level changes. It is used to detect the end of speech locally
+	 * if an endpointer has been set.
+	 * 
+	 * @see android.speech.RecognitionListener#onRmsChanged(float)
+	 */
+	@Override
+	public void onRmsChanged(float rmsdB) {
+		if(levelMeter!=null)
+			levelMeter.publish(rmsdB);
+		if(bargeInArmed && !bargedIn && bargeInDetector!=null) {
+			bargeInDetector.process(rmsdB, SystemClock.elapsedRealtime());
+			long onset = bargeInDetector.getSpeechStart();
+			if(onset>=0 && bargeInDetector.getLastSpeech() - onset >= bargeInMinSpeech)
+				bargeIn(onset);
+		}
+		//While the user has not spoken over the prompts, the echo of the TTS would look like speech followed by silence
+		if(endpointer!=null && (!bargeInArmed || bargedIn) && endpointer.process(rmsdB, SystemClock.elapsedRealtime())) {
+			Log.d(LIB_LOGTAG, "Local end of speech, " + (endpointer.getEndpointTime() - endpointer.getLastSpeech()) + " ms after the last speech");
+			stopListening();
+		}
+	}
+	
+	/**
+	 * Processes the ASR recognition results 
+	 * @param nBestList	List of the N recognition results
+	 * @param nBestConfidences List of the N corresponding confidences
+	 */
+	public abstract void processAsrResults(ArrayList<String> nBestList, float [] nBestConfidences);	
+
+	/**
+	 * Processes the ASR recognition results as a word-level lattice. By default, they are passed to
+	 * <code>processAsrResults(ArrayList, float[])</code> as strings; subclasses that spot words or phrases
+	 * in the results can override it to work with the word ids instead.
+	 * @param lattice recognition results, after rescoring
+	 */
+	public void processAsrResults(RecognitionLattice lattice) {
+		processAsrResults(lattice.getNBestList(), lattice.getConfidences());
+	}
+
+	/**
+	 * Processes the partial recognition results received while the user is speaking. They are
+	 * only received if they have been enabled with <code>setPartialResultsEnabled</code>, so
+	 * it does nothing by default. Subclasses interested in them must override it.
+	 * @param partial last hypothesis, along with its stability and timing information
+	 */
+	public void processAsrPartialResults(PartialHypothesis partial) { }
+
+	/**
+	 * Invoked in multi-language recognition when the device cannot recognize several languages at the same time
+	 * and the previous ones were not confident enough, so the next language is tried with a new utterance.
+	 * It does nothing by default; subclasses can override it, e.g. to ask the user to repeat.
+	 * @param locale language with which the next utterance is recognized
+	 */
+	public void processAsrNextLocale(Locale locale) { }
+
+	/**
+	 * Processes the recognition results whose best confidence is below the threshold set with <code>setAsrRescorer</code>,
+	 * e.g. asking the user to confirm the best result. By default they are processed as any other result.
+	 * @param nBestList	List of the N recognition results, after rescoring
+	 * @param nBestConfidences List of the N corresponding confidences, after rescoring
+	 */
+	public void processAsrLowConfidence(ArrayList<String> nBestList, float [] nBestConfidences) {
+		processAsrResults(nBestList, nBestConfidences);
+	}
+
+	/**
+	 * Processes the recognition results whose best confidence is below the threshold set with <code>setAsrRescorer</code>
+	 * as a word-level lattice. By default, they are passed to <code>processAsrLowConfidence(ArrayList, float[])</code>.
+	 * @param lattice recognition results, after rescoring
+	 */
+	public void processAsrLowConfidence(RecognitionLattice lattice) {
+		processAsrLowConfidence(lattice.getNBestList(), lattice.getConfidences());
+	}
+
+	/**
+	 * Processes a command recognized on the device (see <code>setCommandRecognizer</code>). The cloud recognition
+	 * has been cancelled. By default, the command is processed as if it were the only result of the cloud recognition.
+	 * @param command phrase of the grammar recognized
+	 * @param confidence confidence of the result
+	 */
+	public void processLocalCommand(String command, float confidence) {
+		ArrayList<String> nBestList = new ArrayList<String>();
+		nBestList.add(command);
+		processAsrResults(buildLattice(nBestList, new float[]{confidence}));
+	}
+
+	/**
+	 * Processes the detection of the wake word in the hands-free mode (see <code>setWakeWordSpotter</code>).
+	 * By default, it starts listening with the parameters of the last <code>listen</code>, if any. Subclasses
+	 * that need to give some feedback or use other parameters must override it.
+	 */
+	public void processWakeWord() {
+		if(asrIntent!=null || multiLocaleIntents!=null)
+			startRecognition();
+	}
+
+	/**
+	 * Processes the situation in which the user has interrupted the TTS (only if barge-in has been enabled with 
+	 * <code>setBargeInEnabled</code>). The TTS has already been stopped and the user is being listened to. 
+	 * It does nothing by default.
+	 */
+	public void processBargeIn() { }
+
+	/**
+	 * Processes the situation in which the ASR engine is ready to listen
+	 */
+	public abstract void processAsrReadyForSpeech();
+	
+	/**
+	 * Processes ASR error situations. Recoverable errors are only received when the retries are abandoned 
+	 * (see <code>setAsrRetryPolicy</code>), or while the recognizer is not used because it keeps failing.
+	 * @param errorCode code of the error (constant of the {@link android.speech.SpeechRecognizer} class
+	 */
+	public abstract void processAsrError(int errorCode);
+	
+	
+	
+	
+/**********************************************************************************************************************************************************************
+ **********************************************************************************************************************************************************************
+ * 
+ * 					TEXT TO SPEECH
+ * 
+ **********************************************************************************************************************************************************************
+ **********************************************************************************************************************************************************************/
+	
+	/**
+	 * Starts the TTS engine. It is work-around to avoid implementing the UtteranceProgressListener abstract class.
+	 * 
+	 * @author Method by Greg Milette (comments incorporated by us). Source: https://github.com/gast-lib/gast-lib/blob/master/library/src/root/gast/speech/voiceaction/VoiceActionExecutor.java
+	 * @see See the problem here: http://stackoverflow.com/questions/11703653/why-is-utteranceprogresslistener-not-an-interface
+	 */
+	public void setTTS()
+    {
+		if(Build.VERSION.SDK_INT < 15)
+			scheduler.setMaxInFlight(Integer.MAX_VALUE);	//The errors of the utterances are not notified, so the prompts are passed to the TTS at once
+		ttsGate.close();		//The calls made until onInit are held
+		mainHandler.removeCallbacks(abandonTTSGate);
+		mainHandler.postDelayed(abandonTTSGate, ttsGate.getTimeout());
+		myTTS = new TextToSpeech(ctx,(OnInitListener) this);
+		setUtteranceListener(myTTS);
+    }
+	
+	/**
+	 * Sets the listener for the events of the utterances of an instance of the TTS (the main one or one of the pool)
+	 */
+	@SuppressLint("NewApi")
+	@SuppressWarnings("deprecation")
+	private void setUtteranceListener(final TextToSpeech tts)
+	{
+		/*
+		 * The listener for the TTS events varies depending on the Android version used:
+		 * the most updated one is UtteranceProgressListener, but in SKD versions
+		 * 15 or earlier, it is necessary to use the deprecated OnUtteranceCompletedListener
+		 */
+		
+        if (Build.VERSION.SDK_INT >= 15)
+        {
+            tts.setOnUtteranceProgressListener(new UtteranceProgressListener()
+            {
+                @Override
+                public void onDone(String utteranceId) //TTS finished synthesizing
+                {
+                	utteranceFinished(tts);
+                	utteranceEnded(utteranceId, true);
+                }
+
+                @Override
+                public void onError(String utteranceId) //TTS encountered an error while synthesizing
+                {
+                	utteranceFinished(tts);
+                	utteranceEnded(utteranceId, false);
+                }
+
+                @Override
+                public void onStart(String utteranceId) //TTS has started synthesizing
+                {
+                	if(utteranceId!=null && utteranceId.startsWith(PREFIX_UTTERANCE))
+                		utteranceId = utteranceId.substring(PREFIX_UTTERANCE.length());		//The prompt starts with its pre-synthesized beginning
+                	UtteranceScheduler.Utterance utterance = scheduler.started(utteranceId);
+                	if(utterance==null)
+                		return;		//Synthesis to a cache, prompt already started or prompt already discarded
+                	promptStarted(utteranceId);
+                	replyStarted(utteranceId);
+                	onTTSStart(utterance.getId().toString());
+                }
+            });
+        }
+        else
+        {
+            tts.setOnUtteranceCompletedListener(new OnUtteranceCompletedListener()
+            {
+                @Override
+                public void onUtteranceCompleted(final String utteranceId)
+                {
+                	utteranceFinished(tts);
+                	utteranceEnded(utteranceId, true);		//Earlier SDKs only consider the onTTSDone event
+                }
+            });
+        }
+	}
+	
+	/**
+	 * Invoked when the utterance uttId has successfully completed processing
+	 */
+	public abstract void onTTSDone(String uttId);
+
+
+	/**
+	 * Invoked when an error has occurred while processing the utterance uttId
+	 */
+	public abstract void onTTSError(String uttId);
+
+	/**
+	 * Invoked when the utterance uttId "starts" as perceived by the user
+	 */
+	public abstract void onTTSStart(String uttId);
+	
+	/**
+	 * Sets the locale for speech synthesis taking into account the language and country codes
+	 * If the <code>countryCode</code> is null, it just sets the language, if the 
+	 * <code>languageCode</code> is null, it uses the default language of the device
+	 * If any of the codes are not valid, it uses the default language
+	 * 
+	 * @param languageCode a String representing the language code, e.g. EN
+	 * @param countryCode a String representing the country code for the language used, e.g. US. 
+	 * @throws Exception when the codes supplied cannot be used and the default locale is selected
+	 */
+	public void setLocale(final String languageCode, final String countryCode) throws Exception{
+		if(ttsGate.defer(new TTSCall() { void call() throws Exception { setLocale(languageCode, countryCode); } }))
+			return;		//The TTS is not initialized yet
+		
+	    if(languageCode==null)
+	    {
+	    	setLocale();
+	    	throw new Exception("Language code was not provided, using default locale");
+	    }
+	    else{
+	    	if(countryCode==null)
+	    		setLocale(languageCode);
+	    	else {
+	    		Locale lang = new Locale(languageCode, countryCode);
+	    		int availability = getTTSAvailability(lang);
+		    	if (availability == TextToSpeech.LANG_COUNTRY_AVAILABLE || availability == TextToSpeech.LANG_COUNTRY_VAR_AVAILABLE)
+		    		applyLocale(lang);
+		    	else
+		    	{
+		    		setLocale();
+		    		throw new Exception("Language or country code not supported, using default locale");
+		    	}
+	    	}
+	    }
+	}
+	
+	/**
+	 * Sets the locale for speech synthesis taking into account the language code
+	 * If the code is null or not valid, it uses the default language of the device
+	 * 
+	 * @param languageCode a String representing the language code, e.g. EN
+	 * @throws Exception when the code supplied cannot be used and the default locale is selected
+	 */
+	public void setLocale(final String languageCode) throws Exception{
+		if(ttsGate.defer(new TTSCall() { void call() throws Exception { setLocale(languageCode); } }))
+			return;		//The TTS is not initialized yet
+		
+		if(languageCode==null)
+		{
+			setLocale();
+			throw new Exception("Language code was not provided, using default locale");
+		}
+		else {
+			Locale lang = new Locale(languageCode);
+			int availability = getTTSAvailability(lang);
+			if (availability != TextToSpeech.LANG_MISSING_DATA && availability != TextToSpeech.LANG_NOT_SUPPORTED)
+				applyLocale(lang);
+			else
+			{
+				setLocale();
+				throw new Exception("Language code not supported, using default locale");
+			}
+		}
+	}
+
+	/**
+	 * Sets the default language of the device as locale for speech synthesis
+	 */
+	public void setLocale(){
+		if(ttsGate.defer(new TTSCall() { void call() { setLocale(); } }))
+			return;		//The TTS is not initialized yet
+		
+		applyLocale(Locale.getDefault());
+	}
+	
+	/**
+	 * Sets the locales that are going to be used for speech synthesis, so that their availability is checked
+	 * once, when the TTS is initialized, instead of when they are first used. It must be invoked before 
+	 * <code>initSpeechInputOutput</code>.
+	 * 
+	 * @param locales locales used in <code>speak</code> (e.g. new Locale("EN"), new Locale("ES"))
+	 */
+	public void setTTSLocales(Locale... locales){
+		ttsLocales = locales;
+	}
+	
+	/**
+	 * Obtains the availability of a locale in the TTS, asking the engine only the first time
+	 * @return the result of <code>TextToSpeech.isLanguageAvailable</code>
+	 */
+	private int getTTSAvailability(Locale locale){
+		synchronized(ttsAvailability) {
+			Integer availability = ttsAvailability.get(locale);
+			if(availability==null) {
+				availability = myTTS.isLanguageAvailable(locale);
+				ttsAvailability.put(locale, availability);
+			}
+			return availability;
+		}
+	}
+	
+	/**
+	 * Selects the locale of the next prompts. It is set in the TTS when a prompt is played, as the prompt may be played by
+	 * an instance of the pool instead of the main instance.
+	 */
+	private void applyLocale(Locale locale){
+		synchronized(ttsAvailability) {
+			speakLocale = locale;
+		}
+	}
+	
+	/**
+	 * Sets the locale in the main instance of the TTS, unless it is already set (setting it again may reload the voice in some engines)
+	 */
+	private void setMainLocale(Locale locale){
+		synchronized(ttsAvailability) {
+			if(locale.equals(ttsLocale))
+				return;
+			myTTS.setLanguage(locale);
+			ttsLocale = locale;
+			localeSwitches++;
+		}
+	}
+	
+	/**
+	 * @return number of prompts for which a locale has been set for synthesis (e.g. in each <code>speak</code>)
+	 */
+	public int getLocaleRequestCount(){
+		synchronized(ttsAvailability) {
+			return localeRequests;
+		}
+	}
+	
+	/**
+	 * @return number of times that the locale of the main instance of the TTS has actually been changed
+	 */
+	public int getLocaleSwitchCount(){
+		synchronized(ttsAvailability) {
+			return localeSwitches;
+		}
+	}
+	
+	/**
+	 * Synthesizes a text in the language indicated (or in the default language of the device
+	 * it it is not available) 
+	 * 
+	 * @param languageCode language for the TTS, e.g. EN
+	 * @param countryCode country for the TTS, e.g. US
+	 * @param text string to be synthesized
+	 * @param id integer that identifies the prompt in <code>onTTSDone</code>, <code>onTTSError</code> and <code>onTTSStart</code>
+	 * @throws Exception when the codes supplied cannot be used and the default locale is selected
+	 */
+	public void speak(final String text, final String languageCode, final String countryCode, final Integer id) throws Exception{
+		if(ttsGate.defer(new TTSCall() { void call() throws Exception { speak(text, languageCode, countryCode, id); } }))
+			return;		//The TTS is not initialized yet
+		
+		setLocale(languageCode, countryCode);
+		speakText(text, id, UtteranceScheduler.PRIORITY_NORMAL, null);
+	}
+	
+	/**
+	 * Synthesizes a text in the language indicated (or in the default language of the device
+	 * if it is not available)
+	 * 
+	 * @param languageCode language for the TTS, e.g. EN
+	 * @param text string to be synthesized
+	 * @param id integer that identifies the prompt in <code>onTTSDone</code>, <code>onTTSError</code> and <code>onTTSStart</code>
+	 * @throws Exception when the code supplied cannot be used and the default locale is selected
+	 */
+	public void speak(final String text, final String languageCode, final Integer id) throws Exception{
+		if(ttsGate.defer(new TTSCall() { void call() throws Exception { speak(text, languageCode, id); } }))
+			return;		//The TTS is not initialized yet
+		
+		setLocale(languageCode);
+		speakText(text, id, UtteranceScheduler.PRIORITY_NORMAL, null);
+	}
+	
+	/**
+	 * Synthesizes a text in the language indicated (or in the default language of the device
+	 * if it is not available) with a priority in the queue of prompts
+	 * 
+	 * @param languageCode language for the TTS, e.g. EN
+	 * @param text string to be synthesized
+	 * @param id integer that identifies the prompt in <code>onTTSDone</code>, <code>onTTSError</code> and <code>onTTSStart</code>
+	 * @param priority <code>UtteranceScheduler.PRIORITY_INFO</code> (it supersedes the informative prompts not played yet), 
+	 * <code>PRIORITY_NORMAL</code> or <code>PRIORITY_URGENT</code>
+	 * @param callback object notified when this prompt finishes or is discarded, or null
+	 * @return unique id of the utterance, or null if the TTS is not initialized yet (the prompt is played when it is)
+	 * @throws Exception when the code supplied cannot be used and the default locale is selected
+	 * @see UtteranceScheduler.java
+	 */
+	public String speak(final String text, final String languageCode, final Integer id, final int priority, final UtteranceScheduler.Callback callback) throws Exception{
+		if(ttsGate.defer(new TTSCall() { void call() throws Exception { speak(text, languageCode, id, priority, callback); } }))
+			return null;		//The TTS is not initialized yet
+		
+		setLocale(languageCode);
+		return speakText(text, id, priority, callback);
+	}
+	
+	/**
+	 * Synthesizes a text using the default language of the device
+	 * 
+	 * @param text string to be synthesized
+	 * @param id integer that identifies the prompt in <code>onTTSDone</code>, <code>onTTSError</code> and <code>onTTSStart</code>
+	 */
+	public void speak(final String text, final Integer id){
+		if(ttsGate.defer(new TTSCall() { void call() { speak(text, id); } }))
+			return;		//The TTS is not initialized yet
+		
+		setLocale();
+		speakText(text, id, UtteranceScheduler.PRIORITY_NORMAL, null);
+	}
+	
+	/**
+	 * Synthesizes a long text (e.g. the reply of a chatbot) in the language indicated, either whole or split into chunks that are 
+	 * queued one after the other. The time from this call to the start of the first prompt is measured separately for each option,
+	 * so that they can be compared with <code>getFirstAudioAverage</code>.
+	 * 
+	 * @param languageCode language for the TTS, e.g. EN
+	 * @param text string to be synthesized
+	 * @param id integer that identifies the prompts in <code>onTTSDone</code>, <code>onTTSError</code> and <code>onTTSStart</code>
+	 * @param chunker object that splits the text, or null to synthesize it whole
+	 * @throws Exception when the code supplied cannot be used and the default locale is selected
+	 * @see SentenceChunker.java
+	 */
+	public void speakReply(String text, String languageCode, Integer id, SentenceChunker chunker) throws Exception{
+		synchronized(ttsAvailability) {
+			replyRequested = true;		//The first prompt queued from now on, even if the TTS is not initialized yet
+			replyUtterance = null;
+			replyTime = SystemClock.elapsedRealtime();
+			replyChunked = chunker!=null;
+		}
+		if(chunker==null) {
+			speak(text, languageCode, id);
+			return;
+		}
+		for(String chunk: chunker.split(text))
+			speak(chunk, languageCode, id);		//The first one is synthesized at once, and the rest are queued behind it
+	}
+	
+	/**
+	 * Measures the time to start the first prompt of a reply requested with <code>speakReply</code>
+	 */
+	private void replyStarted(String utteranceId){
+		synchronized(ttsAvailability) {
+			if(replyUtterance==null || !replyUtterance.equals(utteranceId))
+				return;
+			long firstAudio = SystemClock.elapsedRealtime() - replyTime;
+			replyUtterance = null;
+			if(replyChunked) {
+				chunkedReplyCount++;
+				chunkedFirstAudioTotal += firstAudio;
+			}
+			else {
+				wholeReplyCount++;
+				wholeFirstAudioTotal += firstAudio;
+			}
+			Log.d(LIB_LOGTAG, "Reply started " + firstAudio + " ms after it was requested (" + (replyChunked ? "by sentences" : "whole") 
+					+ "), average by sentences " + getFirstAudioAverage(true) + " ms, whole " + getFirstAudioAverage(false) + " ms");
+		}
+	}
+	
+	/**
+	 * @param chunked true for the replies split into chunks, false for the replies synthesized whole
+	 * @return average time (ms) from <code>speakReply</code> to the start of the first prompt of the reply
+	 */
+	public long getFirstAudioAverage(boolean chunked){
+		synchronized(ttsAvailability) {
+			if(chunked)
+				return chunkedReplyCount==0 ? 0 : chunkedFirstAudioTotal / chunkedReplyCount;
+			return wholeReplyCount==0 ? 0 : wholeFirstAudioTotal / wholeReplyCount;
+		}
+	}
+	
+	/**
+	 * @param chunked true for the replies split into chunks, false for the replies synthesized whole
+	 * @return number of replies requested with <code>speakReply</code> whose first prompt has started
+	 */
+	public int getReplyCount(boolean chunked){
+		synchronized(ttsAvailability) {
+			return chunked ? chunkedReplyCount : wholeReplyCount;
+		}
+	}
+	
+	/**
+	 * Queues a text in the locale selected, and passes the prompts to the TTS if it can take them
+	 * @return unique id of the utterance
+	 */
+	private String speakText(String text, Integer id, int priority, UtteranceScheduler.Callback callback){
+		Locale locale;
+		synchronized(ttsAvailability) {
+			locale = speakLocale;
+		}
+		UtteranceScheduler.Utterance utterance = scheduler.add(id, text, locale, priority, callback);
+		synchronized(ttsAvailability) {
+			if(replyRequested) {
+				replyRequested = false;
+				replyUtterance = utterance.getUtteranceId();
+			}
+		}
+		dispatchUtterances();
+		
+		if(bargeInEnabled)
+			mainHandler.post(armBargeIn);		//The user can speak over the prompt
+		return utterance.getUtteranceId();
+	}
+	
+	/**
+	 * Passes the next prompts of the scheduler to the TTS, while there are not too many prompts unfinished in it.
+	 * If the prompts of another instance of the TTS have not finished, the next one waits for them, so that they are played in order.
+	 */
+	private void dispatchUtterances(){
+		ArrayList<String> failed = null;
+		synchronized(scheduler) {		//The prompt is marked as dispatched before its events can be processed
+			UtteranceScheduler.Utterance next;
+			while((next = scheduler.peek())!=null) {
+				TextToSpeech tts = selectEngine(next);
+				if(tts==null)
+					break;
+				scheduler.dispatched(next);
+				if(!speakText(tts, next.getText(), next.getUtteranceId())) {
+					if(failed==null)
+						failed = new ArrayList<String>();
+					failed.add(next.getUtteranceId());
+				}
+			}
+		}
+		if(failed!=null)
+			for(String utteranceId: failed)
+				utteranceEnded(utteranceId, false);
+	}
+	
+	/**
+	 * Selects the instance that plays a prompt: the instance of the pool for its locale, or the main instance if there is no pool, 
+	 * the main instance already has the locale set or the instance of the pool is not ready
+	 * @return the instance, or null if the prompt must wait because another instance has prompts that have not finished
+	 */
+	private TextToSpeech selectEngine(UtteranceScheduler.Utterance utterance){
+		TtsEnginePool pool = enginePool;
+		Locale locale = utterance.getLocale();
+		TextToSpeech tts = null;
+		synchronized(ttsAvailability) {
+			if(pool!=null && !locale.equals(ttsLocale))
+				tts = pool.acquire(locale);
+			if(tts==null)
+				tts = myTTS;
+			if(pool!=null && pool.isBusyExcept(tts))
+				return null;
+			
+			localeRequests++;
+			if(tts==myTTS)
+				setMainLocale(locale);
+			//The time to start a prompt in another locale is measured when the TTS is idle (otherwise it includes the previous prompts)
+			if(lastPromptLocale!=null && !locale.equals(lastPromptLocale) && scheduler.getInFlightCount()==0) {
+				switchUtterance = utterance.getUtteranceId();
+				switchTime = SystemClock.elapsedRealtime();
+				switchPooled = tts!=myTTS;
+			}
+			lastPromptLocale = locale;
+		}
+		return tts;
+	}
+	
+	/**
+	 * Synthesizes a text with an instance of the TTS, playing it from the prompt cache if it is a cached prompt
+	 * @return false if the TTS did not accept the prompt
+	 */
+	@SuppressLint("NewApi")
+	@SuppressWarnings("deprecation")
+	private boolean speakText(TextToSpeech tts, String text, String utteranceId){
+		HashMap<String, String> params = new HashMap<String, String>();
+		params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, utteranceId);
+		TtsEnginePool pool = enginePool;
+		int result;
+		
+		PresynthesisCache cache = presynthesis;
+		if(cache!=null) {
+			//The longest likely prompt that has been synthesized and with which the text starts is played directly
+			String voice = Build.VERSION.SDK_INT >= 14 ? tts.getDefaultEngine() : "";
+			String prefix = null;
+			String prefixKey = null;
+			File prefixAudio = null;
+			boolean likelyText = false;		//The text starts with a likely prompt, even if its audio is not ready
+			synchronized(likelyPrompts) {
+				for(String likely: likelyPrompts) {
+					if(!startsWithWords(text, likely))
+						continue;
+					likelyText = true;
+					if(prefix==null || likely.length()>prefix.length()) {
+						String key = PromptCache.getKey(likely, tts.getLanguage(), voice);
+						File audio = cache.get(key);
+						if(audio!=null) {
+							prefix = likely;
+							prefixKey = key;
+							prefixAudio = audio;
+						}
+					}
+				}
+			}
+			boolean played = false;
+			String rest = null;
+			if(prefixAudio!=null) {
+				rest = text.substring(prefix.length()).trim();
+				HashMap<String, String> prefixParams = new HashMap<String, String>();
+				prefixParams.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, rest.length()==0 ? utteranceId : PREFIX_UTTERANCE + utteranceId);
+				if(pool!=null)
+					pool.queued(tts);
+				tts.addEarcon(prefixKey, prefixAudio.getAbsolutePath());
+				played = tts.playEarcon(prefixKey, TextToSpeech.QUEUE_ADD, prefixParams)==TextToSpeech.SUCCESS;
+				if(!played && pool!=null)
+					pool.finished(tts);
+			}
+			if(likelyText)
+				cache.recordUse(prefixKey, played);
+			if(played) {
+				if(rest.length()==0)
+					return true;
+				text = rest;		//Only the rest is synthesized
+			}
+			//Otherwise the whole text is synthesized, including the words of the likely prompt
+		}
+		
+		if(pool!=null)
+			pool.queued(tts);
+		if(promptCache!=null && promptCache.isPrompt(text)) {
+			String voice = Build.VERSION.SDK_INT >= 14 ? tts.getDefaultEngine() : "";
+			String key = PromptCache.getKey(text, tts.getLanguage(), voice);
+			File audio = promptCache.get(key);
+			if(audio!=null) {
+				//The earcon is named after the key, so that it cannot be confused with the audio of other locales
+				tts.addEarcon(key, audio.getAbsolutePath());
+				result = tts.playEarcon(key, TextToSpeech.QUEUE_ADD, params);
+			}
+			else {
+				result = tts.speak(text, TextToSpeech.QUEUE_ADD, params);
+				File file = promptCache.reserve(key);
+				if(file!=null) {		//Synthesized after the prompt, to be played from the file next time
+					HashMap<String, String> fileParams = new HashMap<String, String>();
+					fileParams.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, PROMPT_CACHE_UTTERANCE + key);
+					if(pool!=null)
+						pool.queued(tts);
+					if(tts.synthesizeToFile(text, fileParams, file.getAbsolutePath())!=TextToSpeech.SUCCESS) {
+						promptCache.abort(key);
+						if(pool!=null)
+							pool.finished(tts);
+					}
+				}
+			}
+		}
+		else
+			result = tts.speak(text, TextToSpeech.QUEUE_ADD, params);
+		if(result!=TextToSpeech.SUCCESS && pool!=null)
+			pool.finished(tts);
+		return result==TextToSpeech.SUCCESS;
+	}
+	
+	/**
+	 * Records the end of an utterance of an instance of the TTS in the pool
+	 */
+	private void utteranceFinished(TextToSpeech tts){
+		TtsEnginePool pool = enginePool;
+		if(pool!=null)
+			pool.finished(tts);
+	}
+	
+	/**
+	 * Processes the end of an utterance, passing the next prompts to the TTS and notifying the subclass with the id of the prompt
+	 */
+	private void utteranceEnded(String utteranceId, boolean success){
+		if(promptCached(utteranceId, success) || presynthesized(utteranceId, success)) {
+			mainHandler.post(dispatchUtterances);	//The prompts of another instance may be waiting for it
+			return;
+		}
+		if(utteranceId!=null && utteranceId.startsWith(PREFIX_UTTERANCE)) {
+			if(!success)
+				Log.e(LIB_LOGTAG, "The pre-synthesized beginning of a prompt could not be played");
+			return;		//The prompt finishes with the rest of its text
+		}
+		UtteranceScheduler.Utterance utterance = scheduler.finished(utteranceId, success);
+		mainHandler.post(dispatchUtterances);
+		if(utterance==null)
+			return;		//Discarded when the TTS was stopped
+		if(success) {
+			mainHandler.post(disarmBargeIn);
+			onTTSDone(utterance.getId().toString());
+		}
+		else
+			onTTSError(utterance.getId().toString());
+	}
+	
+	/**
+	 * @return the queue of prompts (it can be used to change its policies or to obtain its statistics)
+	 * @see UtteranceScheduler.java
+	 */
+	public UtteranceScheduler getUtteranceScheduler(){
+		return scheduler;
+	}
+	
+	/**
+	 * @return the gate that holds the calls made before the TTS is initialized (it can be used to change its timeout or to obtain
+	 * the time spent waiting for the initialization)
+	 * @see TtsReadinessGate.java
+	 */
+	public TtsReadinessGate getTTSReadinessGate(){
+		return ttsGate;
+	}
+	
+	/**
+	 * Measures the time to start a prompt in a locale different from the previous one
+	 */
+	private void promptStarted(String utteranceId){
+		synchronized(ttsAvailability) {
+			if(switchUtterance==null || !switchUtterance.equals(utteranceId))
+				return;
+			long latency = SystemClock.elapsedRealtime() - switchTime;
+			switchUtterance = null;
+			if(switchPooled) {
+				pooledSwitchCount++;
+				pooledSwitchLatencyTotal += latency;
+			}
+			else {
+				mainSwitchCount++;
+				mainSwitchLatencyTotal += latency;
+			}
+			Log.d(LIB_LOGTAG, "Prompt in another locale started after " + latency + " ms (" + (switchPooled ? "pool" : "setLanguage") 
+					+ "), average with setLanguage " + getLocaleSwitchLatencyAverage() + " ms, with the pool " + getPooledSwitchLatencyAverage() + " ms");
+		}
+	}
+	
+	/**
+	 * @return average time (ms) to start a prompt in a locale different from the previous one, when it was played by the main instance 
+	 * of the TTS after changing its locale
+	 */
+	public long getLocaleSwitchLatencyAverage(){
+		synchronized(ttsAvailability) {
+			return mainSwitchCount==0 ? 0 : mainSwitchLatencyTotal / mainSwitchCount;
+		}
+	}
+	
+	/**
+	 * @return average time (ms) to start a prompt in a locale different from the previous one, when it was played by an instance of the pool
+	 */
+	public long getPooledSwitchLatencyAverage(){
+		synchronized(ttsAvailability) {
+			return pooledSwitchCount==0 ? 0 : pooledSwitchLatencyTotal / pooledSwitchCount;
+		}
+	}
+	
+	/**
+	 * Enables a pool with an instance of the TTS for each locale in use, so that alternating locales does not reload the voice
+	 * of the main instance. The instances for the locales set with <code>setTTSLocales</code> are created in advance.
+	 * It must be invoked after <code>initSpeechInputOutput</code>, and it requires Android 4.0.3 (API 15), as it needs the
+	 * errors of the utterances to know when the prompts of each instance have finished.
+	 * 
+	 * @param maxBytes memory budget for the voices of the pool (each voice is estimated in <code>TtsEnginePool.DEFAULT_VOICE_BYTES</code>), 
+	 * or 0 to disable it
+	 * @see TtsEnginePool.java
+	 */
+	public void setTTSEnginePool(long maxBytes){
+		if(enginePool!=null) {
+			TtsEnginePool pool = enginePool;
+			enginePool = null;
+			pool.shutdown();
+		}
+		if(maxBytes<=0)
+			return;
+		if(Build.VERSION.SDK_INT < 15) {
+			Log.w(LIB_LOGTAG, "The TTS engine pool is not supported in this version, using a single instance");
+			return;
+		}
+		enginePool = new TtsEnginePool(ctx, maxBytes, TtsEnginePool.DEFAULT_VOICE_BYTES, new TtsEnginePool.EngineSetup() {
+			@Override
+			public void setUp(TextToSpeech tts) {
+				setUtteranceListener(tts);
+			}
+		});
+		for(Locale locale: ttsLocales)
+			enginePool.warm(locale);
+	}
+	
+	/**
+	 * @return the pool of instances of the TTS (it can be used to obtain its statistics), or null if it is not enabled
+	 */
+	public TtsEnginePool getTTSEnginePool(){
+		return enginePool;
+	}
+	
+	/**
+	 * @return true if any instance of the TTS is playing or has prompts waiting to be played
+	 */
+	private boolean isTTSSpeaking(){
+		if(myTTS==null)
+			return false;
+		if(myTTS.isSpeaking())
+			return true;
+		//Without the errors of the utterances (before API 15), the prompts that fail would never finish
+		if(Build.VERSION.SDK_INT >= 15 ? !scheduler.isIdle() : scheduler.getQueuedCount()>0)
+			return true;
+		TtsEnginePool pool = enginePool;
+		return pool!=null && pool.isSpeaking();
+	}
+	
+	/**
+	 * Stops all the instances of the TTS and flushes the prompts queued and waiting
+	 */
+	private void stopTTS(){
+		scheduler.clear();
+		myTTS.stop();
+		PresynthesisCache cache = presynthesis;
+		if(cache!=null)
+			cache.abortPending();		//Its synthesis may have been flushed
+		PromptCache prompts = promptCache;
+		if(prompts!=null)
+			prompts.abortPending();
+		TtsEnginePool pool = enginePool;
+		if(pool!=null)
+			pool.stop();
+	}
+	
+	/**
+	 * Enables the cache of the audio of the fixed prompts, which are synthesized once and played back directly afterwards.
+	 * The prompts to be cached must be registered with <code>addCachedPrompt</code>. It must be invoked after
+	 * <code>initSpeechInputOutput</code>.
+	 * 
+	 * The files are kept in the external cache directory of the application, as the TTS engine writes and reads them 
+	 * from its own process, which cannot access the internal one. The cache is not enabled if the external storage is 
+	 * not available. Before API level 19, the application needs the WRITE_EXTERNAL_STORAGE permission to manage the files.
+	 * 
+	 * @param maxBytes maximum size of the audio files, or 0 to disable the cache (the files are kept)
+	 * @see PromptCache.java
+	 */
+	public void setPromptCache(long maxBytes){
+		File directory = maxBytes>0 ? getEngineDirectory("prompts") : null;
+		promptCache = directory!=null ? new PromptCache(directory, maxBytes) : null;
+	}
+	
+	/**
+	 * Obtains a directory in which the TTS engine can write and read audio files. The cache directory of the application
+	 * is private, so the engine, which runs in its own process, cannot use it; the external cache directory is used instead.
+	 * @param name name of the directory
+	 * @return the directory, or null if the external storage is not available
+	 */
+	private File getEngineDirectory(String name){
+		File external = Environment.MEDIA_MOUNTED.equals(Environment.getExternalStorageState()) ? ctx.getExternalCacheDir() : null;
+		if(external==null) {
+			Log.w(LIB_LOGTAG, "External storage not available, the audio of the prompts is not kept in files");
+			return null;
+		}
+		return new File(external, name);
+	}
+	
+	/**
+	 * Registers fixed texts, so that their audio is cached (only if the cache is enabled with <code>setPromptCache</code>)
+	 */
+	public void addCachedPrompts(String... texts){
+		if(promptCache!=null)
+			for(String text: texts)
+				promptCache.addPrompt(text);
+	}
+	
+	/**
+	 * @return the cache of the prompts (it can be used to obtain its statistics), or null if it is not enabled
+	 */
+	public PromptCache getPromptCache(){
+		return promptCache;
+	}
+	
+	/**
+	 * Enables the synthesis of the likely prompts (see <code>setLikelyPrompts</code>) while the user speaks. It must be invoked 
+	 * after <code>initSpeechInputOutput</code>.
+	 * 
+	 * As with <code>setPromptCache</code>, the files are kept in the external cache directory of the application, so that the
+	 * TTS engine can write and read them, and it is not enabled if the external storage is not available.
+	 * 
+	 * @param capacity maximum number of prompts whose audio is kept, or 0 to disable it
+	 * @see PresynthesisCache.java
+	 */
+	public void setPresynthesis(int capacity){
+		if(presynthesis!=null)
+			presynthesis.clear();
+		File directory = capacity>0 ? getEngineDirectory("presynthesis") : null;
+		presynthesis = directory!=null ? new PresynthesisCache(directory, capacity) : null;
+	}
+	
+	/**
+	 * Sets the prompts (or beginnings of prompts) that are likely to be played after the user speaks, replacing the previous ones
+	 * for the same language. They are synthesized during the recognition, one at a time and only when the TTS is idle and its 
+	 * current voice can be used, so when the next prompt starts with one of them (followed by a space or punctuation), 
+	 * it starts playing at once. It has no effect unless <code>setPresynthesis</code> has been invoked.
+	 * 
+	 * @param languageCode language of the prompts, e.g. EN
+	 * @param texts the prompts, e.g. "Searching for"
+	 */
+	public void setLikelyPrompts(String languageCode, String... texts){
+		Locale locale = new Locale(languageCode);
+		synchronized(likelyPrompts) {
+			for(int i = likelyLocales.size() - 1; i>=0; i--) {
+				if(likelyLocales.get(i).equals(locale)) {
+					likelyLocales.remove(i);
+					likelyPrompts.remove(i);
+				}
+			}
+			for(String text: texts) {
+				likelyLocales.add(locale);
+				likelyPrompts.add(text.trim());
+			}
+		}
+		if(listening && presynthesis!=null)
+			mainHandler.post(presynthesize);
+	}
+	
+	/**
+	 * @return the cache of the likely prompts (it can be used to obtain its statistics), or null if it is not enabled
+	 */
+	public PresynthesisCache getPresynthesisCache(){
+		return presynthesis;
+	}
+	
+	/**
+	 * Synthesizes the next likely prompt that is not in the cache, if the user is being listened to and the TTS is idle.
+	 * Only one prompt is synthesized at a time, so a prompt requested meanwhile waits for a short synthesis at most.
+	 */
+	@SuppressLint("NewApi")
+	@SuppressWarnings("deprecation")
+	private void presynthesizeNext(){
+		PresynthesisCache cache = presynthesis;
+		if(cache==null || !listening || !ttsGate.isOpen() || isTTSSpeaking() || cache.hasPending())
+			return;
+		TtsEnginePool pool = enginePool;
+		synchronized(likelyPrompts) {
+			for(int i = 0; i<likelyPrompts.size(); i++) {
+				Locale locale = likelyLocales.get(i);
+				TextToSpeech tts = null;
+				synchronized(ttsAvailability) {		//The locale of the main instance is not changed, as it could reload the voice
+					if(locale.equals(ttsLocale))
+						tts = myTTS;
+					else if(pool!=null)
+						tts = pool.acquire(locale);
+				}
+				if(tts==null)
+					continue;
+				String text = likelyPrompts.get(i);
+				String voice = Build.VERSION.SDK_INT >= 14 ? tts.getDefaultEngine() : "";
+				String key = PromptCache.getKey(text, tts.getLanguage(), voice);
+				File file = cache.reserve(key);
+				if(file==null)
+					continue;		//Already synthesized
+				HashMap<String, String> params = new HashMap<String, String>();
+				params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, PRESYNTHESIS_UTTERANCE + key);
+				if(pool!=null)
+					pool.queued(tts);
+				if(tts.synthesizeToFile(text, params, file.getAbsolutePath())!=TextToSpeech.SUCCESS) {
+					cache.abort(key);
+					if(pool!=null)
+						pool.finished(tts);
+					continue;
+				}
+				return;
+			}
+		}
+	}
+	
+	/**
+	 * Processes the end of the synthesis of a likely prompt, synthesizing the next one
+	 * @return true if the utterance was a synthesis of a likely prompt, which must not be notified to the subclasses
+	 */
+	private boolean presynthesized(String utteranceId, boolean success){
+		if(utteranceId==null || !utteranceId.startsWith(PRESYNTHESIS_UTTERANCE))
+			return false;
+		PresynthesisCache cache = presynthesis;
+		if(cache!=null) {
+			String key = utteranceId.substring(PRESYNTHESIS_UTTERANCE.length());
+			if(success)
+				cache.commit(key);
+			else
+				cache.abort(key);
+			mainHandler.post(presynthesize);
+		}
+		return true;
+	}
+	
+	/**
+	 * Checks whether a text starts with a prompt followed by a space or punctuation
+	 */
+	private static boolean startsWithWords(String text, String prompt){
+		if(prompt.length()==0 || !text.startsWith(prompt))
+			return false;
+		return text.length()==prompt.length() || !Character.isLetterOrDigit(text.charAt(prompt.length()))
+				|| !Character.isLetterOrDigit(prompt.charAt(prompt.length() - 1));
+	}
+	
+	/**
+	 * Processes the end of the synthesis of a prompt to the cache
+	 * @return true if the utterance was a synthesis to the cache, which must not be notified to the subclasses
+	 */
+	private boolean promptCached(String utteranceId, boolean success){
+		if(utteranceId==null || !utteranceId.startsWith(PROMPT_CACHE_UTTERANCE))
+			return false;
+		PromptCache cache = promptCache;
+		if(cache!=null) {
+			String key = utteranceId.substring(PROMPT_CACHE_UTTERANCE.length());
+			if(success)
+				cache.commit(key);
+			else
+				cache.abort(key);
+		}
+		return true;
+	}
+	
+	/**
+	 * Stops the synthesizer if it is speaking 
+	 */
+	public void stop(){
+		if(isTTSSpeaking())
+			stopTTS();
+	}
+	
+	/**
+	 * Stops the speech synthesis engine and the wake word listener. It is important to call it, as
+	 * it releases the native resources used.
+	 */
+	public void shutdown(){
+		setWakeWordSpotter(null);
+		setCommandRecognizer(null, commandLearningConfidence);
+		setLevelListener(null);
+		setStreamingAsrServer(null, 0);
+		setRecognizerRace(false, 0);
+		if(multiLocale!=null) {
+			multiLocale.destroy();
+			multiLocale = null;
+			multiLocaleIntents = null;
+		}
+		stopTTS();
+		setTTSEnginePool(0);
+		setPresynthesis(0);
+		myTTS.shutdown();
+		myTTS=null;			/*
+		 						This is necessary in order to force the creation of a new TTS instance after shutdown. 
+		 						It is useful for handling runtime changes such as a change in the orientation of the device,
+		 						as it is necessary to create a new instance with the new context.
+		 						See here: http://developer.android.com/guide/topics/resources/runtime-changes.html
+							*/
+	}
+	
+	/*
+	 * A <code>TextToSpeech</code> instance can only be used to synthesize text once 
+	 * it has completed its initialization. 
+	 * (non-Javadoc)
+	 * @see android.speech.tts.TextToSpeech.OnInitListener#onInit(int)
+	 */
+	@Override
+	public void onInit(int status) {
+		mainHandler.removeCallbacks(abandonTTSGate);
+		if(status != TextToSpeech.ERROR){
+			//The availability of the locales is checked once, so that speak does not have to ask the engine
+			synchronized(ttsAvailability) {
+				ttsAvailability.clear();
+				ttsLocale = null;
+			}
+			getTTSAvailability(Locale.getDefault());
+			for(Locale locale: ttsLocales)
+				getTTSAvailability(locale);
+			setMainLocale(Locale.getDefault());
+			applyLocale(Locale.getDefault());
+			
+			//The prompts requested before the TTS was ready are played now, in order
+			ttsGate.open();
+			Log.d(LIB_LOGTAG, "TTS ready. " + ttsGate);
+	    }
+		else
+		{
+			Log.e(LIB_LOGTAG, "Error creating the TTS");
+			ttsGate.abandon();
+		}
+		
+	}
+
+}
@@ -0,0 +1,253 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+/**
+ * Runs a {@link WakeWordSpotter} over the microphone in a background thread, and notifies the listener
+ * in the main thread when the wake word is detected. The microphone is released on detection, so that
+ * the speech recognizer can use it, and the listener must be started again afterwards. When it is stopped,
+ * the microphone is released by the background thread, without blocking the caller, and the caller can
+ * be notified once it is free.
+ *
+ * To save power it works with a duty cycle: while the spotter gate is closed (silence), the audio is read
+ * in blocks of 200 ms, so the thread only wakes up 5 times per second and only computes the energy of the
+ * frames. When there may be speech, it reads blocks of 20 ms to detect the wake word without delay.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see VoiceActivity#setWakeWordSpotter(WakeWordSpotter)
+ */
+public class WakeWordListener implements Runnable {
+
+	/**
+	 * Receives the detections of the wake word
+	 */
+	public interface Listener {
+		public void onWakeWord();
+	}
+
+	private static final String LIB_LOGTAG = "WAKEWORDLISTENER";
+
+	private static final int SAMPLE_RATE = WakeWordSpotter.SAMPLE_RATE;
+	private static final int IDLE_BLOCK = SAMPLE_RATE / 5;		//200 ms
+	private static final int ACTIVE_BLOCK = SAMPLE_RATE / 50;	//20 ms
+
+	private final WakeWordSpotter spotter;
+	private final Listener listener;
+	private final Handler mainHandler = new Handler(Looper.getMainLooper());
+	private final short[] buffer = new short[IDLE_BLOCK];
+
+	private Thread thread = null;
+	private volatile boolean running = false;
+	private AudioRecord record = null;
+	private Thread releasing = null;		//Thread stopped that has not released the microphone yet
+	private Runnable onReleased = null;		//Posted to the main thread once the microphone is released
+	private boolean restart = false;		//Started again while the microphone was being released
+
+	private long idleReads = 0;
+	private long activeReads = 0;
+
+	private final Runnable notifyDetection = new Runnable() {
+		public void run() {
+			listener.onWakeWord();
+		}
+	};
+
+	private final Runnable startAgain = new Runnable() {
+		public void run() {
+			start();
+		}
+	};
+
+	/**
+	 * @param spotter spotter with the templates of the wake word
+	 * @param listener object notified in the main thread when the wake word is detected
+	 */
+	public WakeWordListener(WakeWordSpotter spotter, Listener listener) {
+		this.spotter = spotter;
+		this.listener = listener;
+	}
+
+	/**
+	 * Starts listening for the wake word, it does nothing if it is already listening
+	 */
+	public synchronized void start() {
+		if(running)
+			return;
+		if(releasing!=null) {		//It starts as soon as the microphone is released
+			restart = true;
+			return;
+		}
+		record = createRecord();
+		if(record==null)
+			return;
+		spotter.reset();
+		running = true;
+		thread = new Thread(this, "WakeWordListener");
+		thread.start();
+	}
+
+	/**
+	 * Stops listening. The microphone is released by the background thread shortly afterwards.
+	 */
+	public void stop() {
+		stop(null);
+	}
+
+	/**
+	 * Stops listening without waiting for the background thread, which releases the microphone shortly afterwards
+	 * @param onReleased action posted to the main thread once the microphone is released (e.g. starting the recognizer)
+	 * @return true if onReleased will be posted, false if the microphone is not in use, so there is nothing to wait for
+	 */
+	public synchronized boolean stop(Runnable onReleased) {
+		running = false;
+		restart = false;
+		if(thread!=null) {
+			releasing = thread;
+			thread = null;
+			if(record!=null)
+				record.stop();		//Ends the read in progress, so that the microphone is released without waiting for the block
+		}
+		if(releasing==null || releasing==Thread.currentThread())
+			return false;
+		this.onReleased = onReleased;
+		return true;
+	}
+
+	/**
+	 * @return true while it is listening for the wake word
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return proportion of the reads done with the short blocks used when there may be speech
+	 */
+	public float getActiveRatio() {
+		long reads = idleReads + activeReads;
+		return reads==0 ? 0 : (float) activeReads / reads;
+	}
+
+	@Override
+	public void run() {
+		AudioRecord current = record;
+		boolean detected = false;
+		try {
+			current.startRecording();
+			while(running && !detected) {
+				int block = spotter.isGateOpen() ? ACTIVE_BLOCK : IDLE_BLOCK;
+				int read = current.read(buffer, 0, block);
+				if(read<0) {
+					if(running)		//Otherwise the read was ended by stop
+						Log.e(LIB_LOGTAG, "Error reading the audio: " + read);
+					break;
+				}
+				if(block==ACTIVE_BLOCK)
+					activeReads++;
+				else
+					idleReads++;
+				detected = spotter.process(buffer, 0, read);
+			}
+		} finally {
+			Runnable released;
+			boolean again;
+			synchronized(this) {
+				current.stop();
+				current.release();
+				if(record==current)
+					record = null;
+				if(thread==Thread.currentThread()) {
+					thread = null;
+					running = false;
+				}
+				if(releasing==Thread.currentThread())
+					releasing = null;
+				released = onReleased;
+				onReleased = null;
+				again = restart;
+				restart = false;
+			}
+			if(released!=null)
+				mainHandler.post(released);
+			if(again)
+				mainHandler.post(startAgain);
+		}
+
+		if(detected) {
+			Log.d(LIB_LOGTAG, "Wake word detected, score " + spotter.getLastScore());
+			mainHandler.post(notifyDetection);
+		}
+	}
+
+	/**
+	 * Records audio from the microphone, e.g. to add a template of the wake word to the spotter.
+	 * It blocks, so it must not be invoked from the main thread, and it must not be invoked while listening.
+	 * @param duration ms to record
+	 * @return 16 kHz 16-bit mono audio, or null if the microphone could not be used
+	 */
+	public static short[] record(long duration) {
+		AudioRecord recorder = createRecord();
+		if(recorder==null)
+			return null;
+		short[] samples = new short[(int) (duration * SAMPLE_RATE / 1000)];
+		try {
+			recorder.startRecording();
+			int offset = 0;
+			while(offset<samples.length) {
+				int read = recorder.read(samples, offset, Math.min(IDLE_BLOCK, samples.length - offset));
+				if(read<0)
+					return null;
+				offset += read;
+			}
+		} finally {
+			recorder.stop();
+			recorder.release();
+		}
+		return samples;
+	}
+
+	/**
+	 * Creates the recorder, with room for two blocks of 200 ms
+	 * @return the recorder, or null if the microphone could not be used
+	 */
+	private static AudioRecord createRecord() {
+		int minSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+		int size = Math.max(minSize, 2 * IDLE_BLOCK * 2);
+		AudioRecord recorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION, SAMPLE_RATE, 
+				AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, size);
+		if(recorder.getState()!=AudioRecord.STATE_INITIALIZED) {
+			Log.e(LIB_LOGTAG, "The microphone could not be initialized");
+			recorder.release();
+			return null;
+		}
+		return recorder;
+	}
+}
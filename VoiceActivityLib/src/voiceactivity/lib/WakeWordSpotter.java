@@ -0,0 +1,398 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.util.List;
+
+/**
+ * Small keyword spotter that detects a wake word in a stream of 16 kHz 16-bit mono audio, so that the user
+ * can start talking to the app without pressing a button.
+ *
+ * The wake word is learnt from a few recordings of the user saying it (templates). The audio is processed
+ * in frames of 25 ms every 10 ms: an energy gate adapted to the background noise decides whether there may be
+ * speech, and only then the cepstral coefficients of the frame are computed and matched against the templates
+ * with a dynamic time warping that can start at any frame. The wake word is detected when the average distance
+ * of the best match is below a threshold.
+ *
+ * Once the templates have been added, processing the audio does not allocate any memory. It does not depend on
+ * Android, so it can be evaluated off the device with {@link #evaluate(WakeWordSpotter, List, List)} on WAV recordings
+ * read with {@link WavReader}.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ *
+ * @see WakeWordListener.java
+ */
+public class WakeWordSpotter {
+
+	public static final int SAMPLE_RATE = FeatureExtractor.DEFAULT_SAMPLE_RATE;
+
+	private static final int NUM_CEPS = FeatureExtractor.DEFAULT_NUM_CEPS;
+	private static final int FRAME_LENGTH = FeatureExtractor.DEFAULT_FRAME_LENGTH;
+	private static final int FRAME_SHIFT = FeatureExtractor.DEFAULT_FRAME_SHIFT;
+	private static final float INFINITE = Float.MAX_VALUE / 4;
+
+	private final FeatureExtractor extractor = new FeatureExtractor();
+	private final float[] frame = new float[FRAME_LENGTH];		//Last FRAME_LENGTH samples
+	private final float[] features = new float[NUM_CEPS];
+	private int filled = 0;
+
+	private volatile Template[] templates = new Template[0];	//Replaced (not modified) when a template is added, so that it can be read without locking
+
+	private float threshold = 15f;			//Maximum average distance to the templates to detect the wake word
+	private float gateMargin = 6f;			//dB above the noise floor considered possible speech
+	private int gateHangover = 30;			//Frames that the gate remains open after the last loud frame
+	private int refractory = 100;			//Minimum frames between two detections
+	private float adaptationRate = 0.02f;	//Speed at which the noise floor follows the level when it rises
+
+	private boolean started;
+	private float noiseFloor;
+	private int gateFrames;					//Frames left until the gate closes
+	private long frameCount;
+	private long activeFrames;				//Frames in which the templates were matched
+	private long lastDetection;
+	private float lastScore;
+
+	public WakeWordSpotter() {
+		reset();
+	}
+
+	/**
+	 * Sets how similar the audio must be to a template to detect the wake word
+	 * @param threshold maximum average distance between the frames of the audio and of the template (15 by default, 
+	 * lower values give less false accepts and more false rejects)
+	 */
+	public void setThreshold(float threshold) {
+		this.threshold = threshold;
+	}
+
+	/**
+	 * Sets when the templates are matched. In silence only the energy of the frames is computed, which saves most of the processing.
+	 * @param gateMargin dB above the noise floor from which a frame may be speech
+	 * @param gateHangover ms that the templates are still matched after the last frame that may be speech
+	 */
+	public void setGate(float gateMargin, long gateHangover) {
+		this.gateMargin = gateMargin;
+		this.gateHangover = (int) (gateHangover * SAMPLE_RATE / 1000 / FRAME_SHIFT);
+	}
+
+	/**
+	 * @param refractory minimum ms between two detections
+	 */
+	public void setRefractoryPeriod(long refractory) {
+		this.refractory = (int) (refractory * SAMPLE_RATE / 1000 / FRAME_SHIFT);
+	}
+
+	/**
+	 * Adds a recording of the wake word. The silence before and after it is removed. It can be invoked from any thread.
+	 * @param samples 16 kHz 16-bit mono audio
+	 * @return false if no speech has been found in the recording
+	 */
+	public boolean addTemplate(short[] samples, int offset, int length) {
+		float[] templateFeatures = new FeatureExtractor().speechMfcc(samples, offset, length, gateMargin);
+		if(templateFeatures==null)
+			return false;
+
+		Template template = new Template(templateFeatures, templateFeatures.length / NUM_CEPS);
+		synchronized(this) {
+			Template[] extended = new Template[templates.length + 1];
+			System.arraycopy(templates, 0, extended, 0, templates.length);
+			extended[templates.length] = template;
+			templates = extended;
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of templates of the wake word
+	 */
+	public int getTemplateCount() {
+		return templates.length;
+	}
+
+	/**
+	 * Removes all the templates
+	 */
+	public synchronized void clearTemplates() {
+		templates = new Template[0];
+	}
+
+	/**
+	 * Prepares the spotter for a new stream of audio
+	 */
+	public void reset() {
+		filled = 0;
+		started = false;
+		noiseFloor = 0;
+		gateFrames = 0;
+		frameCount = 0;
+		activeFrames = 0;
+		lastDetection = -refractory;
+		lastScore = INFINITE;
+		resetTemplates();
+	}
+
+	/**
+	 * Processes a block of audio
+	 * @param samples 16 kHz 16-bit mono audio
+	 * @return true if the wake word has been detected in the block
+	 */
+	public boolean process(short[] samples, int offset, int length) {
+		boolean detected = false;
+		for(int i=offset; i<offset+length; i++) {
+			frame[filled++] = samples[i] / 32768f;
+			if(filled==FRAME_LENGTH) {
+				if(processFrame())
+					detected = true;
+				System.arraycopy(frame, FRAME_SHIFT, frame, 0, FRAME_LENGTH - FRAME_SHIFT);
+				filled = FRAME_LENGTH - FRAME_SHIFT;
+			}
+		}
+		return detected;
+	}
+
+	private boolean processFrame() {
+		frameCount++;
+		float energy = extractor.logEnergy(frame, 0);
+		if(!started) {
+			noiseFloor = energy;
+			started = true;
+		}
+
+		if(energy > noiseFloor + gateMargin)
+			gateFrames = gateHangover;
+		else {
+			//The floor follows the level immediately when it drops and slowly when it rises
+			if(energy < noiseFloor)
+				noiseFloor = energy;
+			else
+				noiseFloor += adaptationRate * (energy - noiseFloor);
+
+			if(gateFrames>0 && --gateFrames==0) {
+				resetTemplates();
+			}
+		}
+		if(gateFrames==0)
+			return false;
+
+		activeFrames++;
+		extractor.mfcc(frame, 0, features, 0);
+		float best = INFINITE;
+		Template[] current = templates;
+		for(int t=0; t<current.length; t++)
+			best = Math.min(best, current[t].advance(features));
+
+		if(best < threshold && frameCount - lastDetection >= refractory) {
+			lastDetection = frameCount;
+			lastScore = best;
+			resetTemplates();
+			return true;
+		}
+		return false;
+	}
+
+	private void resetTemplates() {
+		Template[] current = templates;
+		for(int t=0; t<current.length; t++)
+			current[t].reset();
+	}
+
+	/**
+	 * @return true if the last frame may contain speech, i.e. the templates are being matched
+	 */
+	public boolean isGateOpen() {
+		return gateFrames>0;
+	}
+
+	/**
+	 * @return average distance of the last detection to the closest template
+	 */
+	public float getLastScore() {
+		return lastScore;
+	}
+
+	/**
+	 * @return time (ms from the start of the stream) at which the wake word was detected last time, or -1
+	 */
+	public long getLastDetectionTime() {
+		return lastDetection<0 ? -1 : lastDetection * FRAME_SHIFT * 1000 / SAMPLE_RATE;
+	}
+
+	/**
+	 * @return proportion of the frames in which the templates have been matched since the last reset
+	 */
+	public float getActiveRatio() {
+		return frameCount==0 ? 0 : (float) activeFrames / frameCount;
+	}
+
+	/**
+	 * Recording of the wake word, with the state of its match against the audio
+	 */
+	private static class Template {
+		private final float[] features;
+		private final int frames;
+		private float[] previous, current;		//Accumulated distance of the best path ending in each frame of the template
+		private int[] previousLength, currentLength;
+
+		Template(float[] features, int frames) {
+			this.features = features;
+			this.frames = frames;
+			previous = new float[frames];
+			current = new float[frames];
+			previousLength = new int[frames];
+			currentLength = new int[frames];
+			reset();
+		}
+
+		void reset() {
+			for(int j=0; j<frames; j++) {
+				current[j] = INFINITE;
+				currentLength[j] = 0;
+			}
+		}
+
+		/**
+		 * Extends the paths with a new frame of audio. Each frame of audio advances 0, 1 or 2 frames
+		 * in the template, and the match can start at any frame of audio.
+		 * @return average distance of the best path that has reached the end of the template
+		 */
+		float advance(float[] x) {
+			float[] swap = previous;
+			previous = current;
+			current = swap;
+			int[] swapLength = previousLength;
+			previousLength = currentLength;
+			currentLength = swapLength;
+
+			for(int j=0; j<frames; j++) {
+				float d = 0;
+				int base = j * NUM_CEPS;
+				for(int c=0; c<NUM_CEPS; c++) {
+					float diff = x[c] - features[base + c];
+					d += diff * diff;
+				}
+				d = (float) Math.sqrt(d);
+
+				float best = 0;		//A new path starting in this frame (only for the first frame of the template)
+				int length = 0;
+				float bestAverage = j==0 ? d : INFINITE;
+				for(int step=0; step<=2 && step<=j; step++) {
+					float accumulated = previous[j - step];
+					if(accumulated<INFINITE) {
+						float average = (accumulated + d) / (previousLength[j - step] + 1);
+						if(average < bestAverage) {
+							bestAverage = average;
+							best = accumulated;
+							length = previousLength[j - step];
+						}
+					}
+				}
+				if(bestAverage<INFINITE) {
+					current[j] = best + d;
+					currentLength[j] = length + 1;
+				}
+				else {
+					current[j] = INFINITE;
+					currentLength[j] = 0;
+				}
+			}
+			return current[frames-1]<INFINITE ? current[frames-1] / currentLength[frames-1] : INFINITE;
+		}
+	}
+
+	/**
+	 * Runs the spotter on recordings with and without the wake word, e.g. read from WAV files with {@link WavReader}
+	 * @param spotter spotter with the templates of the wake word
+	 * @param positives recordings that contain the wake word once
+	 * @param negatives recordings that do not contain the wake word
+	 * @return false accept and false reject rates, and processing time
+	 */
+	public static Evaluation evaluate(WakeWordSpotter spotter, List<short[]> positives, List<short[]> negatives) {
+		Evaluation evaluation = new Evaluation();
+		for(short[] audio: positives) {
+			if(run(spotter, audio, evaluation)>0)
+				evaluation.accepted++;
+			evaluation.positives++;
+		}
+		for(short[] audio: negatives) {
+			evaluation.falseAccepts += run(spotter, audio, evaluation);
+			evaluation.negatives++;
+		}
+		return evaluation;
+	}
+
+	/**
+	 * Feeds a recording to the spotter in blocks of 10 ms, as it would be received from the microphone
+	 * @return number of detections
+	 */
+	private static int run(WakeWordSpotter spotter, short[] audio, Evaluation evaluation) {
+		spotter.reset();
+		int detections = 0;
+		long start = System.nanoTime();
+		for(int offset=0; offset<audio.length; offset+=FRAME_SHIFT) {
+			if(spotter.process(audio, offset, Math.min(FRAME_SHIFT, audio.length - offset)))
+				detections++;
+		}
+		evaluation.processingTime += System.nanoTime() - start;
+		evaluation.audioTime += audio.length * 1000000000L / SAMPLE_RATE;
+		return detections;
+	}
+
+	/**
+	 * Results of the evaluation of the spotter
+	 */
+	public static class Evaluation {
+		private int positives = 0;
+		private int accepted = 0;
+		private int negatives = 0;
+		private int falseAccepts = 0;
+		private long processingTime = 0;	//ns
+		private long audioTime = 0;			//ns
+
+		/**
+		 * @return proportion of the recordings with the wake word in which it was not detected
+		 */
+		public float getFalseRejectRate() {
+			return positives==0 ? 0 : 1 - (float) accepted / positives;
+		}
+
+		/**
+		 * @return detections per recording without the wake word
+		 */
+		public float getFalseAcceptRate() {
+			return negatives==0 ? 0 : (float) falseAccepts / negatives;
+		}
+
+		/**
+		 * @return ms of processing per second of audio
+		 */
+		public float getProcessingPerSecond() {
+			return audioTime==0 ? 0 : processingTime * 1000f / audioTime;
+		}
+
+		@Override
+		public String toString() {
+			return "False rejects: " + getFalseRejectRate() + " (" + positives + " recordings), false accepts: " + falseAccepts 
+					+ " (" + negatives + " recordings), " + getProcessingPerSecond() + " ms of processing per second of audio";
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package voiceactivity.lib;
+/*
+ *  Copyright 2014 Zoraida Callejas and Michael McTear
+ *
+ *  Shared in GitHub: <https://github.com/zoraidacallejas/talk-to-your-assistant>
+ *
+ *  This program is free software: you can redistribute it and/or modify
+ *  it under the terms of the GNU General Public License as published by
+ *  the Free Software Foundation, either version 3 of the License, or
+ *  (at your option) any later version.
+
+ *  This program is distributed in the hope that it will be useful,
+ *  but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *  MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ *  GNU General Public License for more details.
+
+ *  You should have received a copy of the GNU General Public License
+ *   along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the audio of WAV files, e.g. the recordings used to evaluate the on-device audio processing
+ * off the device. Only 16-bit PCM mono audio is supported.
+ *
+ * @author Zoraida Callejas
+ * @author Michael McTear
+ * @version 1.0, 10/17/26
+ */
+public class WavReader {
+
+	private WavReader() { }
+
+	/**
+	 * Reads a WAV file
+	 * @param file 16-bit PCM mono WAV file
+	 * @param sampleRate sample rate expected (e.g. 16000)
+	 * @return the samples
+	 * @throws IOException if the file cannot be read or its format is not the expected one
+	 */
+	public static short[] read(File file, int sampleRate) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file));
+		try {
+			return read(in, sampleRate);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads a WAV stream
+	 * @param stream 16-bit PCM mono WAV data
+	 * @param sampleRate sample rate expected (e.g. 16000)
+	 * @return the samples
+	 * @throws IOException if the stream cannot be read or its format is not the expected one
+	 */
+	public static short[] read(InputStream stream, int sampleRate) throws IOException {
+		DataInputStream in = new DataInputStream(stream);
+		if(readInt(in)!=0x46464952 /*RIFF*/) 
+			throw new IOException("Not a RIFF file");
+		readInt(in);
+		if(readInt(in)!=0x45564157 /*WAVE*/)
+			throw new IOException("Not a WAVE file");
+
+		boolean format = false;
+		while(true) {
+			int tag;
+			try {
+				tag = readInt(in);
+			} catch (EOFException e) {
+				throw new IOException("No audio data found");
+			}
+			int size = readInt(in);
+
+			if(tag==0x20746d66 /*fmt */) {
+				int encoding = readShort(in);
+				int channels = readShort(in);
+				int rate = readInt(in);
+				readInt(in);	//Byte rate
+				readShort(in);	//Block align
+				int bits = readShort(in);
+				if(encoding!=1 || channels!=1 || bits!=16)
+					throw new IOException("Only 16-bit PCM mono audio is supported");
+				if(rate!=sampleRate)
+					throw new IOException("Sample rate " + rate + " found, " + sampleRate + " expected");
+				in.skipBytes(size - 16);
+				format = true;
+			}
+			else if(tag==0x61746164 /*data*/) {
+				if(!format)
+					throw new IOException("Audio data found before its format");
+				short[] samples = new short[size / 2];
+				for(int i=0; i<samples.length; i++)
+					samples[i] = (short) readShort(in);
+				return samples;
+			}
+			else
+				in.skipBytes(size + (size & 1));	//Chunks are aligned to 2 bytes
+		}
+	}
+
+	private static int readInt(DataInputStream in) throws IOException {
+		return Integer.reverseBytes(in.readInt());	//WAV files are little-endian
+	}
+
+	private static int readShort(DataInputStream in) throws IOException {
+		return Short.reverseBytes(in.readShort()) & 0xffff;
+	}
+}